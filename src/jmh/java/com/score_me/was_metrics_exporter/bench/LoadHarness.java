@@ -0,0 +1,142 @@
+package com.score_me.was_metrics_exporter.bench;
+
+import com.score_me.was_metrics_exporter.WasMetricsExporterApplication;
+import com.score_me.was_metrics_exporter.service.MetricsService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * End-to-end load test of the exporter against a {@link MockNiFiServer}: boots the application in scrape collection
+ * mode (no background polling), runs {@link MetricsService#refresh()} repeatedly and reports
+ * <ul>
+ *     <li>refresh latency percentiles</li>
+ *     <li>API calls and response bytes per refresh</li>
+ *     <li>heap used by the exporter after each refresh, and after a final GC</li>
+ * </ul>
+ * Run with the jmh profile:
+ * {@code mvn -Pjmh -DskipTests compile exec:exec -Dbench.main=com.score_me.was_metrics_exporter.bench.LoadHarness
+ * -Djmh.args="--processors=10000 --depth=6 --fan-out=2 --latency-ms=5 --error-rate=0.01 --refreshes=50"}
+ * <p>
+ * With {@code --replay=api-recording.gz} no mock server is started and the API responses, with their original latencies,
+ * are served from a recording made by the exporter with monitor.api-recording.mode=record against a real instance.
+ * {@code --virtual-threads} runs the exporter with spring.threads.virtual.enabled.
+ */
+public final class LoadHarness {
+
+    private LoadHarness() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args);
+        int processors = Integer.parseInt(options.getOrDefault("processors", "1000"));
+        int depth = Integer.parseInt(options.getOrDefault("depth", "4"));
+        int fanOut = Integer.parseInt(options.getOrDefault("fan-out", "2"));
+        int padding = Integer.parseInt(options.getOrDefault("padding", "0"));
+        long latencyMs = Long.parseLong(options.getOrDefault("latency-ms", "0"));
+        double jitter = Double.parseDouble(options.getOrDefault("latency-jitter", "0.2"));
+        double errorRate = Double.parseDouble(options.getOrDefault("error-rate", "0"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int refreshes = Integer.parseInt(options.getOrDefault("refreshes", "30"));
+
+        String replay = options.get("replay");
+
+        SyntheticFlow flow = replay == null ? new SyntheticFlow(processors, depth, fanOut, padding) : null;
+        try (MockNiFiServer server = replay == null ? new MockNiFiServer(flow, 0, latencyMs, jitter, errorRate) : null;
+             // command line arguments, so they override application.yaml
+             ConfigurableApplicationContext context = new SpringApplicationBuilder(WasMetricsExporterApplication.class)
+                     .run("--HOST_URL=" + (server == null ? "http://127.0.0.1:9" : server.getBaseUrl()),
+                             "--monitor.api-recording.mode=" + (replay == null ? "off" : "replay"),
+                             "--monitor.api-recording.file=" + (replay == null ? "" : replay),
+                             "--HOST_USERNAME=bench",
+                             "--HOST_PASSWORD=bench",
+                             "--server.port=0",
+                             "--monitor.collection-mode=scrape",
+                             "--monitor.backfill.enabled=false",
+                             "--monitor.warm-start.file=",
+                             "--monitor.history.file=",
+                             "--monitor.refresh-budget-ms=" + options.getOrDefault("budget-ms", "60000"),
+                             "--spring.threads.virtual.enabled=" + options.getOrDefault("virtual-threads", "false"),
+                             "--logging.level.root=WARN")) {
+            MetricsService metricsService = context.getBean(MetricsService.class);
+            MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+            for (int i = 0; i < warmup; i++) {
+                refresh(metricsService);
+            }
+
+            long[] nanos = new long[refreshes];
+            long[] heap = new long[refreshes];
+            int failed = 0;
+            long calls = server == null ? 0 : server.getCalls();
+            long bytes = server == null ? 0 : server.getBytes();
+            long errors = server == null ? 0 : server.getErrors();
+            for (int i = 0; i < refreshes; i++) {
+                long start = System.nanoTime();
+                if (!refresh(metricsService)) failed++;
+                nanos[i] = System.nanoTime() - start;
+                heap[i] = memory.getHeapMemoryUsage().getUsed();
+            }
+            if (server != null) {
+                calls = server.getCalls() - calls;
+                bytes = server.getBytes() - bytes;
+                errors = server.getErrors() - errors;
+            }
+            System.gc();
+            long retained = memory.getHeapMemoryUsage().getUsed();
+
+            Arrays.sort(nanos);
+            if (server == null) {
+                System.out.printf("%nflow and api: replayed from %s%n", replay);
+            } else {
+                System.out.printf("%nflow: %d processors, %d process groups, %d connections, depth %d, fan-out %d, padding %d%n",
+                        processors, flow.getGroupCount(), flow.getConnectionCount(), depth, fanOut, padding);
+                System.out.printf("api: latency %d ms +/- %.0f%%, error rate %.3f%n", latencyMs, jitter * 100, errorRate);
+            }
+            System.out.printf("refresh (%d runs, %d failed): p50 %.1f ms, p90 %.1f ms, p99 %.1f ms, max %.1f ms%n",
+                    refreshes, failed, percentile(nanos, 0.50), percentile(nanos, 0.90), percentile(nanos, 0.99),
+                    nanos[refreshes - 1] / 1e6);
+            if (server != null) {
+                System.out.printf("per refresh: %.1f API calls, %.1f KB, %.2f injected errors%n",
+                        (double) calls / refreshes, bytes / 1024.0 / refreshes, (double) errors / refreshes);
+            }
+            System.out.printf("heap: %.1f MB average and %.1f MB max after a refresh, %.1f MB retained after GC%n",
+                    Arrays.stream(heap).average().orElse(0) / (1024 * 1024),
+                    Arrays.stream(heap).max().orElse(0) / (1024.0 * 1024),
+                    retained / (1024.0 * 1024));
+        }
+    }
+
+    private static boolean refresh(MetricsService metricsService) {
+        try {
+            metricsService.refresh();
+            return true;
+        } catch (Exception e) {
+            return false;
+        }
+    }
+
+    private static double percentile(long[] sorted, double p) {
+        int index = (int) Math.ceil(p * sorted.length) - 1;
+        return sorted[Math.max(0, Math.min(index, sorted.length - 1))] / 1e6;
+    }
+
+    /**
+     * @return --key=value arguments by key
+     */
+    static Map<String, String> parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if (!arg.startsWith("--")) continue;
+            int eq = arg.indexOf('=');
+            if (eq < 0) options.put(arg.substring(2), "true");
+            else options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        return options;
+    }
+}
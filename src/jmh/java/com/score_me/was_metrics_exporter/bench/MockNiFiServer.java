@@ -0,0 +1,145 @@
+package com.score_me.was_metrics_exporter.bench;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process stand-in for the WAS API, serving a {@link SyntheticFlow} over HTTP on the JDK's built-in server.
+ * Serves every endpoint {@link com.score_me.was_metrics_exporter.client.FlowApiClient} is used with: /access/token,
+ * the process group, processor, connection and port listings, /flow/status, the recursive status and /system-diagnostics.
+ * <p>
+ * Every GET is delayed by 'latencyMs' (+/- 'latencyJitter') and fails with a 500 with probability 'errorRate'.
+ * Requests are handled on virtual threads, so injected latency does not limit concurrency.
+ * Run standalone with {@code --port=8089 --processors=10000 --depth=6 --fan-out=2 --latency-ms=20 --error-rate=0.01 --padding=0}.
+ */
+public final class MockNiFiServer implements AutoCloseable {
+
+    private final SyntheticFlow flow;
+    private final long latencyMs;
+    private final double latencyJitter;
+    private final double errorRate;
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong bytes = new AtomicLong();
+
+    public MockNiFiServer(SyntheticFlow flow, int port, long latencyMs, double latencyJitter, double errorRate) throws IOException {
+        this.flow = flow;
+        this.latencyMs = latencyMs;
+        this.latencyJitter = latencyJitter;
+        this.errorRate = errorRate;
+        this.server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public String getBaseUrl() {
+        return "http://127.0.0.1:" + getPort();
+    }
+
+    public long getCalls() {
+        return calls.get();
+    }
+
+    public long getErrors() {
+        return errors.get();
+    }
+
+    /**
+     * @return bytes of response bodies served so far
+     */
+    public long getBytes() {
+        return bytes.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            String path = exchange.getRequestURI().getPath();
+            if ("POST".equals(exchange.getRequestMethod()) && path.endsWith("/access/token")) {
+                send(exchange, 200, "text/plain", "mock-token".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            calls.incrementAndGet();
+            delay();
+            if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+                errors.incrementAndGet();
+                send(exchange, 500, "text/plain", "injected error".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            byte[] body = "/system-diagnostics".equals(path) ? systemDiagnostics() : flow.body(path);
+            if (body == null) {
+                send(exchange, 404, "text/plain", new byte[0]);
+                return;
+            }
+            send(exchange, 200, "application/json", body);
+        }
+    }
+
+    private void delay() {
+        if (latencyMs <= 0) return;
+        double factor = 1.0 + latencyJitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        try {
+            Thread.sleep(Math.max(0L, Math.round(latencyMs * factor)));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static byte[] systemDiagnostics() {
+        long max = 1024L * 1024 * 1024;
+        long used = ThreadLocalRandom.current().nextLong(max / 8, max / 2);
+        return ("{\"systemDiagnostics\":{\"aggregateSnapshot\":{\"usedHeapBytes\":" + used + ",\"maxHeapBytes\":" + max + "}}}")
+                .getBytes(StandardCharsets.UTF_8);
+    }
+
+    private void send(HttpExchange exchange, int status, String contentType, byte[] body) throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+        if (body.length > 0) {
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+            bytes.addAndGet(body.length);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = LoadHarness.parse(args);
+        SyntheticFlow flow = new SyntheticFlow(
+                Integer.parseInt(options.getOrDefault("processors", "1000")),
+                Integer.parseInt(options.getOrDefault("depth", "4")),
+                Integer.parseInt(options.getOrDefault("fan-out", "2")),
+                Integer.parseInt(options.getOrDefault("padding", "0")));
+        MockNiFiServer server = new MockNiFiServer(flow,
+                Integer.parseInt(options.getOrDefault("port", "8089")),
+                Long.parseLong(options.getOrDefault("latency-ms", "0")),
+                Double.parseDouble(options.getOrDefault("latency-jitter", "0.2")),
+                Double.parseDouble(options.getOrDefault("error-rate", "0")));
+        System.out.printf("Mock WAS API on %s: %d process groups, %d connections%n",
+                server.getBaseUrl(), flow.getGroupCount(), flow.getConnectionCount());
+        Thread.currentThread().join();
+    }
+}
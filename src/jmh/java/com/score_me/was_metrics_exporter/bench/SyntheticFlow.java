@@ -0,0 +1,223 @@
+package com.score_me.was_metrics_exporter.bench;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.*;
+
+/**
+ * Generated flow of a given size and shape, served as canned API responses.
+ * <ul>
+ *     <li>processors are spread evenly over one process group per 50 processors</li>
+ *     <li>the group hierarchy has exactly 'depth' levels below the root, extra groups hang off random non-leaf levels</li>
+ *     <li>each processor connects to the next 'fanOut' processors of its group; one in ten is a scripted processor</li>
+ *     <li>every group has one input port connected to its first processor</li>
+ *     <li>every connection holds between 0 and 99 queued flow files</li>
+ *     <li>processors and connections carry a 'comments' field of 'padding' characters, to model verbose flows</li>
+ * </ul>
+ * Responses are kept as bytes and parsed on every call, like the WebClient decodes them, so the parse is part of what
+ * a benchmark measures. Generation is seeded, so every fork sees the same flow.
+ */
+public final class SyntheticFlow {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    public static final String ROOT_ID = "pg-0";
+
+    private final Map<String, byte[]> responses = new HashMap<>();
+    private final int groupCount;
+    private final int connectionCount;
+
+    public SyntheticFlow(int processors, int depth, int fanOut) {
+        this(processors, depth, fanOut, 0);
+    }
+
+    public SyntheticFlow(int processors, int depth, int fanOut, int padding) {
+        Random random = new Random(42);
+        String comments = "x".repeat(Math.max(0, padding));
+        int groups = Math.max(depth + 1, processors / 50);
+        int[] level = new int[groups];
+        List<List<String>> children = new ArrayList<>();
+        List<List<String>> procs = new ArrayList<>();
+        for (int g = 0; g < groups; g++) {
+            children.add(new ArrayList<>());
+            procs.add(new ArrayList<>());
+        }
+        for (int g = 1; g < groups; g++) {
+            int parent;
+            if (g <= depth) {
+                parent = g - 1;
+            } else {
+                do {
+                    parent = random.nextInt(g);
+                } while (level[parent] >= depth - 1 && depth > 1);
+            }
+            level[g] = level[parent] + 1;
+            children.get(parent).add("pg-" + g);
+        }
+        for (int p = 0; p < processors; p++) {
+            procs.get(p % groups).add("proc-" + p);
+        }
+
+        int connections = 0;
+        for (int g = 0; g < groups; g++) {
+            String id = "pg-" + g;
+            ObjectNode self = MAPPER.createObjectNode().put("id", id);
+            self.putObject("component").put("id", id).put("name", "Group " + g);
+            responses.put("/process-groups/" + id, bytes(self));
+            if (g == 0) responses.put("/process-groups/root", bytes(self));
+
+            ObjectNode subGroups = MAPPER.createObjectNode();
+            ArrayNode pgs = subGroups.putArray("processGroups");
+            for (String child : children.get(g)) {
+                ObjectNode c = pgs.addObject().put("id", child);
+                c.putObject("component").put("id", child).put("name", "Group " + child.substring(3));
+            }
+            responses.put("/process-groups/" + id + "/process-groups", bytes(subGroups));
+
+            List<String> ids = procs.get(g);
+            ObjectNode processorList = MAPPER.createObjectNode();
+            ArrayNode ps = processorList.putArray("processors");
+            for (int i = 0; i < ids.size(); i++) {
+                ObjectNode entry = ps.addObject().put("id", ids.get(i));
+                if (padding > 0) entry.putObject("component").put("comments", comments);
+                entry.putObject("status").putObject("aggregateSnapshot")
+                        .put("id", ids.get(i)).put("name", "Processor " + ids.get(i))
+                        .put("type", i % 10 == 0 ? "org.apache.nifi.processors.script.ExecuteScript" : "org.apache.nifi.processors.standard.LogAttribute")
+                        .put("activeThreadCount", i % 3);
+            }
+            responses.put("/process-groups/" + id + "/processors", bytes(processorList));
+
+            ObjectNode connectionList = MAPPER.createObjectNode();
+            ArrayNode cs = connectionList.putArray("connections");
+            String inputPort = id + "-in";
+            if (!ids.isEmpty()) cs.add(connection(id + "-c-in", inputPort, ids.getFirst(), comments));
+            for (int i = 0; i < ids.size() && ids.size() > 1; i++) {
+                for (int f = 1; f <= fanOut; f++) {
+                    cs.add(connection(id + "-c" + i + "-" + f, ids.get(i), ids.get((i + f) % ids.size()), comments));
+                }
+            }
+            connections += cs.size();
+            responses.put("/process-groups/" + id + "/connections", bytes(connectionList));
+
+            ObjectNode in = MAPPER.createObjectNode();
+            in.putArray("inputPorts").addObject().put("id", inputPort);
+            responses.put("/process-groups/" + id + "/input-ports", bytes(in));
+            ObjectNode out = MAPPER.createObjectNode();
+            out.putArray("outputPorts");
+            responses.put("/process-groups/" + id + "/output-ports", bytes(out));
+        }
+
+        ObjectNode status = MAPPER.createObjectNode();
+        ArrayNode connectionStatus = status.putArray("connectionStatus");
+        for (int i = 0; i < connections; i++) {
+            connectionStatus.addObject().putObject("component")
+                    .put("queuedCount", i % 7 == 0 ? 10000 : i)
+                    .put("backPressureObjectThreshold", 10000);
+        }
+        responses.put("/flow/status", bytes(status));
+
+        ObjectNode recursive = MAPPER.createObjectNode();
+        recursive.putObject("processGroupStatus").set("aggregateSnapshot", groupStatus(0, children, procs));
+        byte[] recursiveBytes = bytes(recursive);
+        responses.put("/flow/process-groups/root/status", recursiveBytes);
+        responses.put("/flow/process-groups/" + ROOT_ID + "/status", recursiveBytes);
+
+        this.groupCount = groups;
+        this.connectionCount = connections;
+    }
+
+    public int getGroupCount() {
+        return groupCount;
+    }
+
+    public int getConnectionCount() {
+        return connectionCount;
+    }
+
+    /**
+     * @return a client answering every GET from the canned responses, without a network or a token
+     */
+    public FlowApiClient client() {
+        return new FlowApiClient(WebClient.create()) {
+            @Override
+            public Mono<JsonNode> getAsync(String uri) {
+                return Mono.fromCallable(() -> parse(uri));
+            }
+        };
+    }
+
+    /**
+     * @param path request path, without the query string
+     * @return the canned response body, null if the flow has no such resource
+     */
+    public byte[] body(String path) {
+        return responses.get(path);
+    }
+
+    public JsonNode parse(String uri) {
+        int query = uri.indexOf('?');
+        byte[] body = responses.get(query < 0 ? uri : uri.substring(0, query));
+        if (body == null) throw new IllegalArgumentException("No canned response for " + uri);
+        try {
+            return MAPPER.readTree(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static ObjectNode groupStatus(int g, List<List<String>> children, List<List<String>> procs) {
+        // iterative, so deep hierarchies do not overflow the stack
+        ObjectNode root = MAPPER.createObjectNode();
+        Deque<Object[]> stack = new ArrayDeque<>();
+        stack.push(new Object[]{g, root});
+        while (!stack.isEmpty()) {
+            Object[] top = stack.pop();
+            int group = (Integer) top[0];
+            ObjectNode node = (ObjectNode) top[1];
+            node.put("id", "pg-" + group);
+            ArrayNode ps = node.putArray("processorStatusSnapshots");
+            List<String> ids = procs.get(group);
+            for (int i = 0; i < ids.size(); i++) {
+                ps.addObject().putObject("processorStatusSnapshot").put("id", ids.get(i)).put("name", "Processor " + ids.get(i))
+                        .put("activeThreadCount", i % 3).put("tasksDurationNanos", (long) i * 1_000_000L);
+            }
+            ArrayNode connections = node.putArray("connectionStatusSnapshots");
+            for (int i = 0; i < ids.size(); i++) {
+                connections.addObject().putObject("connectionStatusSnapshot")
+                        .put("destinationId", ids.get(i)).put("destinationName", "Processor " + ids.get(i))
+                        .put("flowFilesQueued", Math.floorMod(ids.get(i).hashCode(), 100));
+            }
+            ArrayNode cs = node.putArray("processGroupStatusSnapshots");
+            for (String child : children.get(group)) {
+                ObjectNode childNode = cs.addObject().putObject("processGroupStatusSnapshot");
+                stack.push(new Object[]{Integer.parseInt(child.substring(3)), childNode});
+            }
+        }
+        return root;
+    }
+
+    private static ObjectNode connection(String id, String source, String destination, String comments) {
+        ObjectNode c = MAPPER.createObjectNode().put("id", id);
+        ObjectNode component = c.putObject("component");
+        if (!comments.isEmpty()) component.put("comments", comments);
+        component.putObject("source").put("id", source);
+        component.putObject("destination").put("id", destination);
+        c.putObject("status").putObject("aggregateSnapshot").put("flowFilesQueued", Math.floorMod(id.hashCode(), 100));
+        return c;
+    }
+
+    private static byte[] bytes(JsonNode node) {
+        try {
+            return MAPPER.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
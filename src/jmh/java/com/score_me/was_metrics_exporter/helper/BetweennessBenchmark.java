@@ -0,0 +1,84 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * {@link Betweenness} on the pipeline of {@link PathStatsBenchmark#chain(int)}: every source searched on one thread,
+ * every source searched on the common fork-join pool, and 'samples' sampled sources on the pool.
+ * The setup checks that the single-threaded and the fork-join scores agree and prints how many of the top 10
+ * processors of the sample are also in the exact top 10.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 3, time = 2)
+@Fork(1)
+public class BetweennessBenchmark {
+
+    @Param({"2000", "20000"})
+    private int processors;
+
+    @Param({"1000"})
+    private int samples;
+
+    private ProcessorGraph graph;
+    private ForkJoinPool single;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        graph = ProcessorGraph.of(PathStatsBenchmark.chain(processors), "root");
+        single = new ForkJoinPool(1);
+        pool = ForkJoinPool.commonPool();
+
+        double[] sequential = Betweenness.compute(graph, 0, 42, single);
+        double[] parallel = Betweenness.compute(graph, 0, 42, pool);
+        for (int v = 0; v < sequential.length; v++) {
+            if (Math.abs(sequential[v] - parallel[v]) > 1e-9 * Math.max(1.0, sequential[v])) {
+                throw new IllegalStateException("Scores of vertex " + v + " differ: " + sequential[v] + " " + parallel[v]);
+            }
+        }
+        Set<Integer> exact = top(sequential, 10);
+        Set<Integer> sampled = top(Betweenness.compute(graph, samples, 42, pool), 10);
+        sampled.retainAll(exact);
+        System.out.printf("%n%d vertices, %d edges: %d of the exact top 10 in the top 10 of %d sampled sources%n",
+                graph.size(), graph.edgeCount(), sampled.size(), samples);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        single.shutdown();
+    }
+
+    @Benchmark
+    public double[] exactSingleThread() {
+        return Betweenness.compute(graph, 0, 42, single);
+    }
+
+    @Benchmark
+    public double[] exactParallel() {
+        return Betweenness.compute(graph, 0, 42, pool);
+    }
+
+    @Benchmark
+    public double[] sampledParallel() {
+        return Betweenness.compute(graph, samples, 42, pool);
+    }
+
+    private static Set<Integer> top(double[] scores, int k) {
+        List<Integer> vertices = IntStream.range(0, scores.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer v) -> scores[v]).reversed())
+                .limit(k)
+                .toList();
+        return vertices.stream().collect(Collectors.toSet());
+    }
+}
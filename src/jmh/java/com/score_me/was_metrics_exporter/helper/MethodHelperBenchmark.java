@@ -0,0 +1,80 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.bench.SyntheticFlow;
+import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.utils.Deadline;
+import com.score_me.was_metrics_exporter.utils.GraphBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Metric computations of {@link MethodHelper} over a captured snapshot, and the back pressure parse of the status response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodHelperBenchmark {
+
+    private static final Set<FlowMetric> FAN_OUT = EnumSet.of(FlowMetric.AVG_FAN_OUT);
+    private static final Set<FlowMetric> IPD = EnumSet.of(FlowMetric.IPD);
+    private static final Set<FlowMetric> SCRIPTED = EnumSet.of(FlowMetric.SCRIPTED_PCT);
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int processors;
+
+    @Param({"2", "8"})
+    private int depth;
+
+    @Param({"1", "3"})
+    private int fanOut;
+
+    private FlowApiClient client;
+    private MethodHelper methodHelper;
+    private FlowSnapshot snapshot;
+    private Map<String, ProcessGroupNodeEntity> processGroupMap;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticFlow flow = new SyntheticFlow(processors, depth, fanOut);
+        client = flow.client();
+        GraphBuilder graphBuilder = new GraphBuilder(client);
+        methodHelper = new MethodHelper(client, graphBuilder);
+        snapshot = graphBuilder.buildSnapshot("root");
+        processGroupMap = snapshot.processGroupMap("root");
+    }
+
+    @Benchmark
+    public int computeMaxDepth() {
+        return MethodHelper.computeMaxDepth(processGroupMap);
+    }
+
+    @Benchmark
+    public Map<String, Double> fanOut() {
+        return methodHelper.getMetrics(snapshot, "root", FAN_OUT);
+    }
+
+    @Benchmark
+    public Map<String, Double> ipd() {
+        return methodHelper.getMetrics(snapshot, "root", IPD);
+    }
+
+    @Benchmark
+    public Map<String, Double> scriptedPct() {
+        return methodHelper.getMetrics(snapshot, "root", SCRIPTED);
+    }
+
+    @Benchmark
+    public double backPressurePercent() {
+        return methodHelper.computeBackPressurePercent(client, Deadline.after(60_000));
+    }
+}
@@ -0,0 +1,74 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.bench.SyntheticFlow;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import com.score_me.was_metrics_exporter.utils.GraphBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The per-processor metrics of {@link MethodHelper#getMetrics}: one stream pass per metric, as before {@link NodeStats},
+ * against the fused sequential pass and the fused fork-join pass. The setup checks that all three agree.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NodeStatsBenchmark {
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    private int processors;
+
+    private Collection<ProcessorNodeEntity> nodes;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticFlow flow = new SyntheticFlow(processors, 4, 2);
+        nodes = new GraphBuilder(flow.client()).buildSnapshot("root").processorMap("root").values();
+        pool = ForkJoinPool.commonPool();
+
+        NodeStats sequential = NodeStats.sequential(nodes, true);
+        NodeStats parallel = NodeStats.parallel(nodes, true, pool);
+        double[] passes = separatePasses(nodes);
+        double[] fused = {sequential.avgFanOut(), sequential.getIpd(), sequential.getActiveThreads(), sequential.getScripted()};
+        double[] forked = {parallel.avgFanOut(), parallel.getIpd(), parallel.getActiveThreads(), parallel.getScripted()};
+        if (!java.util.Arrays.equals(passes, fused) || !java.util.Arrays.equals(passes, forked)) {
+            throw new IllegalStateException("Fused results differ: " + java.util.Arrays.toString(passes) + " "
+                    + java.util.Arrays.toString(fused) + " " + java.util.Arrays.toString(forked));
+        }
+    }
+
+    @Benchmark
+    public void separate(Blackhole bh) {
+        bh.consume(separatePasses(nodes));
+    }
+
+    @Benchmark
+    public NodeStats fusedSequential() {
+        return NodeStats.sequential(nodes, true);
+    }
+
+    @Benchmark
+    public NodeStats fusedParallel() {
+        return NodeStats.parallel(nodes, true, pool);
+    }
+
+    /**
+     * @return fan-out, IPD, active threads and scripted count, computed like MethodHelper did before the fused pass
+     */
+    private static double[] separatePasses(Collection<ProcessorNodeEntity> nodes) {
+        double avgF = nodes.stream().mapToInt(n -> n.getOutgoing().size()).average().orElse(0.0);
+        double ipd = nodes.stream().filter(n -> (n.getIncoming().size() + n.getOutgoing().size()) > 2).count();
+        double threads = nodes.stream().mapToInt(ProcessorNodeEntity::getActiveThreadCount).sum();
+        double scripted = nodes.stream().filter(n -> MethodHelper.isScriptedType(n.getType()) || MethodHelper.containsEL(n.getName())).count();
+        return new double[]{avgF, ipd, threads, scripted};
+    }
+}
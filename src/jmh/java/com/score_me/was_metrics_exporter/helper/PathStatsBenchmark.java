@@ -0,0 +1,87 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.bench.SyntheticFlow;
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import com.score_me.was_metrics_exporter.utils.GraphBuilder;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link PathStats} on two shapes of flow, to check that its cost grows linearly with the size of the graph:
+ * <ul>
+ *     <li>flow: a {@link SyntheticFlow}, in which every process group is one cycle of 50 processors</li>
+ *     <li>chain: a single pipeline through every processor with two extra forward connections per processor,
+ *     the worst case for a recursive search</li>
+ * </ul>
+ * The graph is built once; buildAndAnalyze adds the conversion from the snapshot, as {@link MethodHelper} runs it.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathStatsBenchmark {
+
+    @Param({"10000", "100000"})
+    private int processors;
+
+    @Param({"flow", "chain"})
+    private String shape;
+
+    private FlowSnapshot snapshot;
+    private ProcessorGraph graph;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        snapshot = "chain".equals(shape) ? chain(processors)
+                : new GraphBuilder(new SyntheticFlow(processors, 4, 2).client()).buildSnapshot("root");
+        graph = ProcessorGraph.of(snapshot, "root");
+        PathStats stats = PathStats.of(graph);
+        System.out.printf("%n%d vertices, %d edges: %d components, %d cycles, longest path %d, critical path %d queued%n",
+                graph.size(), graph.edgeCount(), stats.getComponents(), stats.getCycles(), stats.getLongestPath(),
+                stats.getCriticalPathQueued());
+    }
+
+    @Benchmark
+    public PathStats analyze() {
+        return PathStats.of(graph);
+    }
+
+    @Benchmark
+    public PathStats buildAndAnalyze() {
+        return PathStats.of(ProcessorGraph.of(snapshot, "root"));
+    }
+
+    /**
+     * @return one process group holding a pipeline through every processor, each also connected to two of the next 50
+     */
+    static FlowSnapshot chain(int processors) {
+        Random random = new Random(42);
+        FlowSnapshot snapshot = new FlowSnapshot("pg-0");
+        snapshot.getProcessGroups().put("pg-0", new ProcessGroupNodeEntity("pg-0", "Chain"));
+        List<ProcessorNodeEntity> nodes = new ArrayList<>(processors);
+        List<ConnectionEntity> connections = new ArrayList<>(processors * 3);
+        for (int p = 0; p < processors; p++) {
+            nodes.add(new ProcessorNodeEntity("proc-" + p, "Processor " + p, "org.apache.nifi.processors.standard.LogAttribute"));
+            if (p + 1 < processors) {
+                connections.add(new ConnectionEntity("c-" + p, "proc-" + p, "proc-" + (p + 1), random.nextInt(100)));
+            }
+            for (int f = 0; f < 2 && p + 2 < processors; f++) {
+                int to = p + 2 + random.nextInt(Math.min(50, processors - p - 2));
+                connections.add(new ConnectionEntity("c-" + p + "-" + f, "proc-" + p, "proc-" + to, random.nextInt(100)));
+            }
+        }
+        snapshot.getProcessorsByGroup().put("pg-0", nodes);
+        snapshot.getConnectionsByGroup().put("pg-0", connections);
+        return snapshot;
+    }
+}
@@ -0,0 +1,49 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Rewriting the metrics workbook, as done after every refresh
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ExportToFileBenchmark {
+
+    @Param({"18", "200"})
+    private int metrics;
+
+    private final Map<String, Double> values = new LinkedHashMap<>();
+    private Path dir;
+    private String file;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        for (int i = 0; i < metrics; i++) {
+            values.put("metric_" + i, i * 1.5);
+        }
+        dir = Files.createTempDirectory("export-bench");
+        file = dir.resolve("metrics.xlsx").toString();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(Path.of(file));
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public void exportToExcel() throws IOException {
+        ExportToFile.exportToExcel(values, file);
+    }
+}
@@ -0,0 +1,57 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import com.score_me.was_metrics_exporter.bench.SyntheticFlow;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a {@link FlowSnapshot} from canned API responses, and the processor and process group maps derived from it
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBuilderBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    private int processors;
+
+    @Param({"2", "8"})
+    private int depth;
+
+    @Param({"1", "3"})
+    private int fanOut;
+
+    private GraphBuilder graphBuilder;
+    private FlowSnapshot snapshot;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        SyntheticFlow flow = new SyntheticFlow(processors, depth, fanOut);
+        graphBuilder = new GraphBuilder(flow.client());
+        snapshot = graphBuilder.buildSnapshot("root");
+    }
+
+    @Benchmark
+    public FlowSnapshot buildSnapshot() throws IOException {
+        return graphBuilder.buildSnapshot("root");
+    }
+
+    @Benchmark
+    public Map<String, ProcessorNodeEntity> processorMap() {
+        return snapshot.processorMap("root");
+    }
+
+    @Benchmark
+    public Map<String, ProcessGroupNodeEntity> processGroupMap() {
+        return snapshot.processGroupMap("root");
+    }
+}
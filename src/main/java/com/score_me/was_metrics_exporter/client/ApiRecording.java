@@ -0,0 +1,144 @@
+package com.score_me.was_metrics_exporter.client;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Gzip-compressed archive of API exchanges, written by {@link FlowApiClient} in record mode and served back in replay mode.
+ * Each entry holds the URI, the HTTP status (0 for a failure without a response), the latency and the body,
+ * or the error message for failed exchanges. The stream is flushed after every entry, so an archive cut short by
+ * a crash is still readable up to its last complete entry.
+ */
+@Slf4j
+public final class ApiRecording implements Closeable {
+
+    /**
+     * One recorded request and its outcome
+     */
+    public record Exchange(String uri, int status, long latencyMs, byte[] body) {
+    }
+
+    private static final int MAGIC = 0x41504952; // "APIR"
+    private static final int VERSION = 1;
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final Path path;
+    private final DataOutputStream out;
+    private long count = 0;
+
+    private ApiRecording(Path path, DataOutputStream out) {
+        this.path = path;
+        this.out = out;
+    }
+
+    /**
+     * Method to start a new archive, replacing any existing file
+     * @param path archive to write
+     * @return the open archive
+     * @throws IOException if the file cannot be created
+     */
+    public static ApiRecording create(Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        DataOutputStream out = new DataOutputStream(new GZIPOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(path)), 64 * 1024, true));
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.flush();
+        return new ApiRecording(path, out);
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getCount() {
+        return count;
+    }
+
+    /**
+     * Method to append a successful exchange
+     * @param body parsed response, null for an empty one
+     */
+    public void success(String uri, long latencyMs, JsonNode body) {
+        try {
+            append(new Exchange(uri, 200, latencyMs, body == null ? new byte[0] : MAPPER.writeValueAsBytes(body)));
+        } catch (IOException e) {
+            log.warn("Failed to record response of {}: {}", uri, e.getMessage());
+        }
+    }
+
+    /**
+     * Method to append a failed exchange
+     * @param status HTTP status of the response, 0 if there was none
+     */
+    public void failure(String uri, long latencyMs, int status, String message) {
+        append(new Exchange(uri, status, latencyMs, String.valueOf(message).getBytes(java.nio.charset.StandardCharsets.UTF_8)));
+    }
+
+    private synchronized void append(Exchange exchange) {
+        try {
+            out.writeUTF(exchange.uri());
+            out.writeShort(exchange.status());
+            out.writeLong(exchange.latencyMs());
+            out.writeInt(exchange.body().length);
+            out.write(exchange.body());
+            out.flush();
+            count++;
+        } catch (IOException e) {
+            log.warn("Failed to record response of {}: {}", exchange.uri(), e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+
+    /**
+     * Method to read every exchange of an archive
+     * @param path archive to read
+     * @return the exchanges of each URI, in recording order
+     * @throws IOException if the file cannot be read or is not an archive
+     */
+    public static Map<String, List<Exchange>> read(Path path) throws IOException {
+        Map<String, List<Exchange>> exchanges = new LinkedHashMap<>();
+        try (DataInputStream in = new DataInputStream(new GZIPInputStream(new BufferedInputStream(Files.newInputStream(path))))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not an API recording: " + path);
+            int version = in.readInt();
+            if (version != VERSION) throw new IOException("Unsupported API recording version " + version + ": " + path);
+            while (true) {
+                String uri;
+                try {
+                    uri = in.readUTF();
+                } catch (EOFException e) {
+                    break;
+                }
+                int status = in.readUnsignedShort();
+                long latencyMs = in.readLong();
+                byte[] body = new byte[in.readInt()];
+                in.readFully(body);
+                exchanges.computeIfAbsent(uri, u -> new ArrayList<>()).add(new Exchange(uri, status, latencyMs, body));
+            }
+        } catch (EOFException e) {
+            log.warn("API recording {} ends with an incomplete entry, replaying the complete ones", path);
+        }
+        return exchanges;
+    }
+
+    /**
+     * Method to parse the body of a successful exchange
+     * @return the parsed body, null if it was empty
+     */
+    public static JsonNode parse(Exchange exchange) throws IOException {
+        return exchange.body().length == 0 ? null : MAPPER.readTree(exchange.body());
+    }
+}
@@ -1,17 +1,41 @@
 package com.score_me.was_metrics_exporter.client;
 
 import com.fasterxml.jackson.databind.JsonNode;
-import org.apache.tomcat.websocket.AuthenticationException;
+import com.score_me.was_metrics_exporter.exceptions.AuthenticationException;
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import com.score_me.was_metrics_exporter.utils.Deadline;
+import com.score_me.was_metrics_exporter.utils.FlightEvents;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
 import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientRequestException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+import reactor.util.context.ContextView;
+
+import java.io.IOException;
+import java.net.URI;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 @Component
 public class FlowApiClient {
@@ -23,50 +47,223 @@ public class FlowApiClient {
     @Value("${monitor.password:admin}")
     private String password;
 
+    /**
+     * off, record (every GET response is appended to 'file') or replay (GETs are answered from 'file', without a network)
+     */
+    @Value("${monitor.api-recording.mode:off}")
+    private String recordingMode = "off";
+    @Value("${monitor.api-recording.file:api-recording.gz}")
+    private String recordingFile = "api-recording.gz";
+
+    private ApiRecording recording;
+    private Map<String, List<ApiRecording.Exchange>> replay;
+    private final Map<String, AtomicInteger> replayPosition = new ConcurrentHashMap<>();
+
     private String token;
     private Instant tokenExpiry = Instant.EPOCH;
+    private Mono<String> tokenRequest;
 
     public FlowApiClient(WebClient webClient) {
-        this.wc = webClient;
-    }
-
-    private synchronized void ensureToken() {
-        if (token == null || Instant.now().isAfter(tokenExpiry.minusSeconds(30))) {
-            log.info("Refreshing API token...");
-            try {
-                String body = "username=" + URLEncoder.encode(user, StandardCharsets.UTF_8) +
-                        "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
-
-                String resp = wc.post()
-                        .uri("/access/token")
-                        .contentType(MediaType.APPLICATION_FORM_URLENCODED)
-                        .bodyValue(body)
-                        .retrieve()
-                        .bodyToMono(String.class)
-                        .block();
-
-                if (resp == null) throw new AuthenticationException("Could not fetch API token");
-
-                // NiFi typically returns the token as plain text
-                token = resp.trim().replaceAll("^\"|\"$", "");
-
-                tokenExpiry = Instant.now().plus(6, ChronoUnit.HOURS);
-                log.info("Obtained token (len={})", token.length());
-            } catch (Exception e) {
-                log.error("Failed to obtain token", e);
-                throw new RuntimeException(e);
+        this.wc = webClient.mutate().filter(this::countReceivedBytes).build();
+    }
+
+    /**
+     * Filter adding the size of every response body to the {@link Deadline} and the API call event in the subscriber
+     * context, if any
+     */
+    private Mono<ClientResponse> countReceivedBytes(ClientRequest request, ExchangeFunction next) {
+        return Mono.deferContextual(ctx -> {
+            if (!ctx.hasKey(Deadline.CONTEXT_KEY) && !ctx.hasKey(FlightEvents.ApiCall.class)) return next.exchange(request);
+            return next.exchange(request).map(response -> response.mutate()
+                    .body(body -> body.doOnNext(buffer -> countReceivedBytes(ctx, buffer.readableByteCount())))
+                    .build());
+        });
+    }
+
+    private static void countReceivedBytes(ContextView ctx, long bytes) {
+        Deadline deadline = ctx.getOrDefault(Deadline.CONTEXT_KEY, null);
+        if (deadline != null) deadline.countReceivedBytes(bytes);
+        FlightEvents.ApiCall event = ctx.getOrDefault(FlightEvents.ApiCall.class, null);
+        if (event != null) event.countReceivedBytes(bytes);
+    }
+
+    @PostConstruct
+    void openRecording() throws IOException {
+        switch (recordingMode.trim().toLowerCase()) {
+            case "off", "" -> {
+            }
+            case "record" -> {
+                recording = ApiRecording.create(Path.of(recordingFile));
+                log.info("Recording API responses to {}", recordingFile);
+            }
+            case "replay" -> {
+                replay = ApiRecording.read(Path.of(recordingFile));
+                log.info("Replaying API responses of {} URIs from {}", replay.size(), recordingFile);
             }
+            default -> throw new IllegalArgumentException("Unknown monitor.api-recording.mode: " + recordingMode);
         }
     }
 
+    @PreDestroy
+    void closeRecording() throws IOException {
+        if (recording != null) {
+            recording.close();
+            log.info("Recorded {} API responses to {}", recording.getCount(), recordingFile);
+        }
+    }
+
+    /**
+     * Returns the current API token, fetching a new one when it is missing or about to expire.
+     * Concurrent callers share a single in-flight token request.
+     */
+    private synchronized Mono<String> ensureToken() {
+        if (token != null && Instant.now().isBefore(tokenExpiry.minusSeconds(30))) {
+            return Mono.just(token);
+        }
+        if (tokenRequest == null) {
+            tokenRequest = fetchToken()
+                    .doFinally(signal -> clearTokenRequest())
+                    .cache();
+        }
+        return tokenRequest;
+    }
+
+    private synchronized void clearTokenRequest() {
+        tokenRequest = null;
+    }
+
+    private Mono<String> fetchToken() {
+        log.info("Refreshing API token...");
+        String body = "username=" + URLEncoder.encode(user, StandardCharsets.UTF_8) +
+                "&password=" + URLEncoder.encode(password, StandardCharsets.UTF_8);
+
+        return wc.post()
+                .uri("/access/token")
+                .contentType(MediaType.APPLICATION_FORM_URLENCODED)
+                .bodyValue(body)
+                .retrieve()
+                .bodyToMono(String.class)
+                .switchIfEmpty(Mono.error(() -> new AuthenticationException("Could not fetch API token")))
+                .map(resp -> {
+                    // NiFi typically returns the token as plain text
+                    String fresh = resp.trim().replaceAll("^\"|\"$", "");
+                    synchronized (this) {
+                        token = fresh;
+                        tokenExpiry = Instant.now().plus(6, ChronoUnit.HOURS);
+                    }
+                    log.info("Obtained token (len={})", fresh.length());
+                    return fresh;
+                })
+                .doOnError(e -> log.error("Failed to obtain token", e))
+                .onErrorMap(e -> !(e instanceof AuthenticationException),
+                        e -> new AuthenticationException("Failed to obtain token", e));
+    }
+
     public JsonNode get(String uri) {
-        ensureToken();
-        return wc.get()
+        return getAsync(uri).block();
+    }
+
+    /**
+     * Variant of {@link #get(String)} that gives up when the deadline passes
+     * @throws DeadlineExceededException if no response arrived in time
+     */
+    public JsonNode get(String uri, Deadline deadline) {
+        return deadline.bound(getAsync(uri), "GET " + uri).block();
+    }
+
+    /**
+     * Non-blocking variant of {@link #get(String)}.
+     * Nothing is sent until the returned Mono is subscribed, and cancelling it aborts the request.
+     * If the subscriber context carries a {@link Deadline}, the request, including any token refresh, is bounded by it
+     * and counted against it.
+     * In record mode the response is also appended to the recording, in replay mode it is served from the recording.
+     * Every call is reported as a {@link FlightEvents.ApiCall} flight recorder event.
+     * @param uri path relative to the configured API base URL
+     * @return Mono emitting the parsed JSON response
+     */
+    public Mono<JsonNode> getAsync(String uri) {
+        return Mono.deferContextual(ctx -> {
+            Mono<JsonNode> call = replay != null ? replay(uri) : request(uri);
+            Deadline deadline = ctx.getOrDefault(Deadline.CONTEXT_KEY, null);
+            if (deadline != null) {
+                deadline.countCall();
+                call = deadline.bound(call, "GET " + uri);
+            }
+            return traced(uri, call);
+        });
+    }
+
+    private static Mono<JsonNode> traced(String uri, Mono<JsonNode> call) {
+        FlightEvents.ApiCall event = new FlightEvents.ApiCall();
+        if (!event.isEnabled()) return call;
+        event.begin();
+        return call
+                .doOnSuccess(body -> event.finish(uri, 200))
+                .doOnError(e -> event.finish(uri, statusOf(e)))
+                .doOnCancel(() -> event.finish(uri, -1))
+                .contextWrite(Context.of(FlightEvents.ApiCall.class, event));
+    }
+
+    /**
+     * @return HTTP status of a failed call, 0 if it failed without a response
+     */
+    private static int statusOf(Throwable e) {
+        return e instanceof WebClientResponseException r ? r.getStatusCode().value() : 0;
+    }
+
+    private Mono<JsonNode> request(String uri) {
+        Mono<JsonNode> call = Mono.defer(this::ensureToken).flatMap(t -> wc.get()
                 .uri(uri)
-                .headers(h -> h.setBearerAuth(token))
+                .headers(h -> h.setBearerAuth(t))
                 .accept(MediaType.APPLICATION_JSON)
                 .retrieve()
-                .bodyToMono(JsonNode.class)
-                .block();
+                .bodyToMono(JsonNode.class));
+        return recording != null ? record(uri, call) : call;
+    }
+
+    /**
+     * Method to append the outcome of a call to the recording, with its latency.
+     * Calls cancelled before completing, e.g. by a deadline, are not recorded.
+     */
+    private Mono<JsonNode> record(String uri, Mono<JsonNode> call) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return call
+                    .doOnSuccess(body -> recording.success(uri, elapsedMs(start), body))
+                    .doOnError(e -> recording.failure(uri, elapsedMs(start), statusOf(e), e.getMessage()));
+        });
+    }
+
+    /**
+     * Method to serve a call from the recording after its recorded latency.
+     * Repeated calls of a URI go through its recorded responses in order and start over after the last one.
+     */
+    private Mono<JsonNode> replay(String uri) {
+        List<ApiRecording.Exchange> exchanges = replay.get(uri);
+        if (exchanges == null) {
+            return Mono.error(WebClientResponseException.create(404, "Not in recording: " + uri,
+                    HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8));
+        }
+        int position = replayPosition.computeIfAbsent(uri, u -> new AtomicInteger()).getAndIncrement();
+        ApiRecording.Exchange exchange = exchanges.get(Math.floorMod(position, exchanges.size()));
+        Mono<JsonNode> response;
+        if (exchange.status() == 200) {
+            response = Mono.deferContextual(ctx -> {
+                countReceivedBytes(ctx, exchange.body().length);
+                return Mono.fromCallable(() -> ApiRecording.parse(exchange));
+            });
+        } else {
+            String message = new String(exchange.body(), StandardCharsets.UTF_8);
+            response = Mono.error(exchange.status() > 0
+                    ? WebClientResponseException.create(exchange.status(), message, HttpHeaders.EMPTY, new byte[0], StandardCharsets.UTF_8)
+                    : new WebClientRequestException(new IOException(message), HttpMethod.GET, URI.create(uri), HttpHeaders.EMPTY));
+        }
+        return exchange.latencyMs() > 0
+                ? Mono.delay(Duration.ofMillis(exchange.latencyMs())).then(response)
+                : response;
+    }
+
+    private static long elapsedMs(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
     }
-}
\ No newline at end of file
+}
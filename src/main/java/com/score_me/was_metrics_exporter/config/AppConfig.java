@@ -3,13 +3,18 @@ package com.score_me.was_metrics_exporter.config;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.util.InsecureTrustManagerFactory;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.scheduler.Scheduler;
+import reactor.core.scheduler.Schedulers;
 import reactor.netty.http.client.HttpClient;
 
+import java.util.concurrent.Executors;
+
 @Configuration
 public class AppConfig {
 
@@ -19,6 +24,37 @@ public class AppConfig {
     @Value("${monitor.verify-ssl:true}")
     private boolean verifySsl;
 
+    @Value("${spring.threads.virtual.enabled:false}")
+    private boolean virtualThreads;
+
+    /**
+     * The scheduler of virtual threads created by this configuration, null when the shared bounded elastic one is used
+     */
+    private Scheduler virtualScheduler;
+
+    /**
+     * Scheduler for blocking work, such as blocking API calls, waiting for a refresh and the Excel exports.
+     * With 'spring.threads.virtual.enabled' every task gets its own virtual thread, so the number of tasks blocked
+     * at once is not limited by a pool size; otherwise it is Reactor's bounded elastic scheduler.
+     */
+    @Bean
+    public Scheduler blockingScheduler() {
+        if (virtualThreads) {
+            virtualScheduler = Schedulers.fromExecutorService(
+                    Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-", 0).factory()), "virtual");
+            return virtualScheduler;
+        }
+        return Schedulers.boundedElastic();
+    }
+
+    /**
+     * Method to shut down the virtual thread scheduler; Reactor's shared bounded elastic scheduler is left alone
+     */
+    @PreDestroy
+    public void disposeBlockingScheduler() {
+        if (virtualScheduler != null) virtualScheduler.dispose();
+    }
+
     @Bean
     public WebClient webClient(WebClient.Builder b) {
         if (!verifySsl) {
@@ -0,0 +1,55 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.service.FlightRecorderService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.DeleteOperation;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.boot.actuate.endpoint.annotation.WriteOperation;
+import org.springframework.boot.actuate.endpoint.web.WebEndpointResponse;
+import org.springframework.boot.actuate.endpoint.web.annotation.WebEndpoint;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Actuator endpoint /actuator/jfr controlling the flight recordings of {@link FlightRecorderService}:
+ * <ul>
+ *     <li>POST starts an on-demand recording, for 'durationMs' (default 60000) capped by 'monitor.jfr.max-duration-ms'</li>
+ *     <li>GET downloads a dump of the on-demand recording, or of the continuous one, to open in JDK Mission Control</li>
+ *     <li>DELETE stops and discards the on-demand recording</li>
+ * </ul>
+ * The endpoint is not authenticated, so it is not exposed over HTTP unless 'jfr' is added to
+ * 'management.endpoints.web.exposure.include'.
+ */
+@Component
+@WebEndpoint(id = "jfr")
+@RequiredArgsConstructor
+public class FlightRecorderEndpoint {
+
+    private static final long DEFAULT_DURATION_MS = 60000;
+
+    private final FlightRecorderService flightRecorderService;
+
+    @WriteOperation
+    public Map<String, Object> start(@Nullable Long durationMs) throws IOException {
+        return flightRecorderService.startRecording(durationMs == null ? DEFAULT_DURATION_MS : durationMs);
+    }
+
+    @ReadOperation(produces = "application/octet-stream")
+    public WebEndpointResponse<Resource> dump() throws IOException {
+        Path dump = flightRecorderService.dump();
+        if (dump == null) return new WebEndpointResponse<>(WebEndpointResponse.STATUS_NOT_FOUND);
+        return new WebEndpointResponse<>(new FileSystemResource(dump));
+    }
+
+    @DeleteOperation
+    public WebEndpointResponse<Void> stop() {
+        return new WebEndpointResponse<>(flightRecorderService.stopRecording()
+                ? WebEndpointResponse.STATUS_NO_CONTENT : WebEndpointResponse.STATUS_NOT_FOUND);
+    }
+}
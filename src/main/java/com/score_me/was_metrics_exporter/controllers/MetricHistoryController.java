@@ -0,0 +1,92 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.dto.HistoryRangeDTO;
+import com.score_me.was_metrics_exporter.dto.HistorySeriesDTO;
+import com.score_me.was_metrics_exporter.dto.RollupRangeDTO;
+import com.score_me.was_metrics_exporter.service.MetricHistoryService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Range queries over the recorded metric history, raw or downsampled.
+ * Works on both the servlet and the reactive stack.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/metrics/history")
+public class MetricHistoryController {
+
+    /**
+     * Latest accepted timestamp, the end of year 9999
+     */
+    private static final long MAX_TIMESTAMP = 253402300799999L;
+
+    private final MetricHistoryService metricHistoryService;
+
+    /**
+     * @return the recorded series with their number of points and compressed size
+     */
+    @GetMapping
+    public List<HistorySeriesDTO> series() {
+        return metricHistoryService.describe();
+    }
+
+    /**
+     * @param metric metric name, as on /metrics/stream
+     * @param from first timestamp to include, epoch millis; defaults to 5 minutes before 'to'
+     * @param to last timestamp to include, epoch millis; defaults to now
+     */
+    @GetMapping("/{metric}")
+    public HistoryRangeDTO range(@PathVariable String metric,
+                                 @RequestParam(required = false) Long from,
+                                 @RequestParam(required = false) Long to) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 5 * 60 * 1000L;
+        validate(start, end);
+        try {
+            return metricHistoryService.query(metric, start, end);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    /**
+     * @param metric metric name, as on /metrics/stream
+     * @param from start of the range, epoch millis; defaults to 24 hours before 'to'
+     * @param to end of the range, epoch millis; defaults to now
+     * @param step requested resolution in ms; defaults to the range divided into 1000 buckets.
+     *             Served from the coarsest rollup tier whose resolution does not exceed it.
+     */
+    @GetMapping("/{metric}/rollup")
+    public RollupRangeDTO rollup(@PathVariable String metric,
+                                 @RequestParam(required = false) Long from,
+                                 @RequestParam(required = false) Long to,
+                                 @RequestParam(required = false) Long step) {
+        long end = to != null ? to : System.currentTimeMillis();
+        long start = from != null ? from : end - 24 * 60 * 60 * 1000L;
+        validate(start, end);
+        if (step != null && step <= 0) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'step' must be positive");
+        }
+        long stepMs = step != null ? step : Math.max(1L, (end - start) / 1000);
+        try {
+            return metricHistoryService.rollup(metric, start, end, stepMs);
+        } catch (NoSuchElementException e) {
+            throw new ResponseStatusException(HttpStatus.NOT_FOUND, e.getMessage());
+        }
+    }
+
+    private static void validate(long from, long to) {
+        if (from < 0 || to > MAX_TIMESTAMP) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' and 'to' must be between 0 and " + MAX_TIMESTAMP);
+        }
+        if (from > to) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "'from' must not be after 'to'");
+        }
+    }
+}
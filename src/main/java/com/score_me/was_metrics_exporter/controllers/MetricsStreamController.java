@@ -0,0 +1,33 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.service.MetricsStreamService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.MediaType;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Flux;
+
+import java.util.Map;
+
+/**
+ * Live stream of the flow metrics as server-sent events, pushed as soon as each refresh completes.
+ * Works on both the servlet and the reactive stack.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/metrics")
+public class MetricsStreamController {
+
+    private final MetricsStreamService metricsStreamService;
+
+    /**
+     * @param mode "full" to receive every refresh in full, "delta" to receive only changed values after the first event
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flux<ServerSentEvent<Map<String, Double>>> stream(@RequestParam(defaultValue = "full") String mode) {
+        return metricsStreamService.subscribe("delta".equalsIgnoreCase(mode));
+    }
+}
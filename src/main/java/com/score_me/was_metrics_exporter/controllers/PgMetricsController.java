@@ -1,22 +1,35 @@
 package com.score_me.was_metrics_exporter.controllers;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.score_me.was_metrics_exporter.dto.BatchMetricsRequestDTO;
 import com.score_me.was_metrics_exporter.dto.BulkMetricsDTO;
+import com.score_me.was_metrics_exporter.dto.PgMetricsResultDTO;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.helper.FlowMetric;
 import com.score_me.was_metrics_exporter.service.BulkExportMetrics;
 import com.score_me.was_metrics_exporter.service.PgMetricsService;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
 import org.springframework.core.io.ByteArrayResource;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.multipart.MultipartFile;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
 
 @RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.SERVLET)
 @Slf4j
 @RequiredArgsConstructor
 @RequestMapping("/pg-metrics")
@@ -24,16 +37,63 @@ public class PgMetricsController {
 
     private final PgMetricsService pgMetricsService;
     private final BulkExportMetrics bulkExportMetrics;
+    private final ObjectMapper objectMapper;
 
+    /**
+     * Computes metrics for one process group.
+     * The optional 'metrics' parameter (comma separated) limits the response, and the API calls made, to those metrics.
+     */
     @PostMapping
-    public ResponseEntity<?> getMetricsForPg(@RequestBody Map<String, String> body) throws IOException {
+    public ResponseEntity<?> getMetricsForPg(@RequestBody Map<String, String> body,
+                                             @RequestParam(value = "metrics", required = false) List<String> metricNames) throws IOException {
         String groupId = body.get("processGroupId");
         if (groupId == null || groupId.isBlank()) {
             return ResponseEntity.badRequest().body("Missing processGroupId");
         }
+        Set<FlowMetric> wanted;
+        try {
+            wanted = FlowMetric.parse(metricNames);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+
+        FlowSnapshot snapshot = pgMetricsService.currentSnapshot(wanted);
+        if (!snapshot.contains(groupId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).headers(SnapshotHeaders.of(snapshot)).body("Process group not found");
+        }
+        Map<String, Double> metrics = pgMetricsService.getMetricsForGroup(snapshot, groupId, wanted);
+        return ResponseEntity.ok().headers(SnapshotHeaders.of(snapshot)).body(metrics);
+    }
+
+    /**
+     * Computes metrics for many process groups from one snapshot of the flow.
+     * Results are streamed back as newline-delimited JSON, one line per requested group;
+     * a group that fails carries an error message instead of metrics.
+     */
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public ResponseEntity<StreamingResponseBody> getMetricsForPgs(@RequestBody BatchMetricsRequestDTO body) throws IOException {
+        List<String> groupIds = body.getProcessGroupIds();
+        if (groupIds == null || groupIds.isEmpty()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing processGroupIds");
+        }
+        Set<FlowMetric> wanted;
+        try {
+            wanted = FlowMetric.parse(body.getMetrics());
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
 
-        Map<String, Double> metrics = pgMetricsService.getMetricsForGroup(groupId);
-        return ResponseEntity.ok(metrics);
+        FlowSnapshot snapshot = pgMetricsService.currentSnapshot(wanted);
+        Stream<PgMetricsResultDTO> results = pgMetricsService.getMetricsForGroups(snapshot, groupIds, wanted);
+        StreamingResponseBody stream = out -> {
+            Iterator<PgMetricsResultDTO> it = results.iterator();
+            while (it.hasNext()) {
+                out.write(objectMapper.writeValueAsBytes(it.next()));
+                out.write('\n');
+                out.flush();
+            }
+        };
+        return ResponseEntity.ok().headers(SnapshotHeaders.of(snapshot)).contentType(MediaType.APPLICATION_NDJSON).body(stream);
     }
 
     @GetMapping("/exportMetricsToTarget")
@@ -0,0 +1,121 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.dto.BatchMetricsRequestDTO;
+import com.score_me.was_metrics_exporter.dto.PgMetricsResultDTO;
+import com.score_me.was_metrics_exporter.helper.FlowMetric;
+import com.score_me.was_metrics_exporter.service.BulkExportMetrics;
+import com.score_me.was_metrics_exporter.service.PgMetricsService;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.multipart.FilePart;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.InputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Reactive counterpart of {@link PgMetricsController}, active when the application runs on WebFlux
+ * ('spring.main.web-application-type: reactive').
+ * Metric lookups never block a server thread, and a client disconnect cancels the in-flight crawl.
+ * The Excel exports still use blocking POI calls and run on the blocking scheduler, see
+ * {@link com.score_me.was_metrics_exporter.config.AppConfig#blockingScheduler()}.
+ */
+@RestController
+@ConditionalOnWebApplication(type = ConditionalOnWebApplication.Type.REACTIVE)
+@Slf4j
+@RequiredArgsConstructor
+@RequestMapping("/pg-metrics")
+public class ReactivePgMetricsController {
+
+    private final PgMetricsService pgMetricsService;
+    private final BulkExportMetrics bulkExportMetrics;
+    private final Scheduler blockingScheduler;
+
+    @PostMapping
+    public Mono<ResponseEntity<?>> getMetricsForPg(@RequestBody Map<String, String> body,
+                                                   @RequestParam(value = "metrics", required = false) List<String> metricNames) {
+        String groupId = body.get("processGroupId");
+        if (groupId == null || groupId.isBlank()) {
+            return Mono.just(ResponseEntity.badRequest().body("Missing processGroupId"));
+        }
+        Set<FlowMetric> wanted;
+        try {
+            wanted = FlowMetric.parse(metricNames);
+        } catch (IllegalArgumentException e) {
+            return Mono.just(ResponseEntity.badRequest().body(e.getMessage()));
+        }
+
+        return pgMetricsService.currentSnapshotAsync(wanted)
+                .<ResponseEntity<?>>map(snapshot -> {
+                    if (!snapshot.contains(groupId)) {
+                        return ResponseEntity.status(HttpStatus.NOT_FOUND).headers(SnapshotHeaders.of(snapshot)).body("Process group not found");
+                    }
+                    return ResponseEntity.ok().headers(SnapshotHeaders.of(snapshot)).body(pgMetricsService.getMetricsForGroup(snapshot, groupId, wanted));
+                });
+    }
+
+    @PostMapping(value = "/batch", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Mono<ResponseEntity<Flux<PgMetricsResultDTO>>> getMetricsForPgs(@RequestBody BatchMetricsRequestDTO body) {
+        List<String> groupIds = body.getProcessGroupIds();
+        if (groupIds == null || groupIds.isEmpty()) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, "Missing processGroupIds"));
+        }
+        Set<FlowMetric> wanted;
+        try {
+            wanted = FlowMetric.parse(body.getMetrics());
+        } catch (IllegalArgumentException e) {
+            return Mono.error(new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage()));
+        }
+
+        return pgMetricsService.currentSnapshotAsync(wanted)
+                .map(snapshot -> ResponseEntity.ok()
+                        .headers(SnapshotHeaders.of(snapshot))
+                        .contentType(MediaType.APPLICATION_NDJSON)
+                        .body(Flux.fromStream(() -> pgMetricsService.getMetricsForGroups(snapshot, groupIds, wanted))));
+    }
+
+    @GetMapping("/exportMetricsToTarget")
+    public Mono<ResponseEntity<?>> getAllMetricsForPg() {
+        return Mono.fromCallable(bulkExportMetrics::exportMetricsBulk)
+                .subscribeOn(blockingScheduler)
+                .map(outputFilePath -> {
+                    log.info("Metrics exported successfully for group - {}", outputFilePath);
+                    return new ResponseEntity<>("Metrics exported successfully", HttpStatus.OK);
+                });
+    }
+
+    @PostMapping(value = "/exportFileMetrics", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
+    public Mono<ResponseEntity<?>> exportFileMetrics(@RequestPart("file") FilePart file) {
+        return DataBufferUtils.join(file.content())
+                .publishOn(blockingScheduler)
+                .flatMap(buffer -> Mono.fromCallable(() -> {
+                    try (InputStream inputStream = buffer.asInputStream(true)) {
+                        return bulkExportMetrics.exportMetricsToByteArray(inputStream);
+                    }
+                }))
+                .<ResponseEntity<?>>map(outputFile -> {
+                    log.info("Metrics exported successfully for file - {}", file.filename());
+                    return ResponseEntity.ok()
+                            .header("Content-Disposition", "attachment; filename=\"" + file.filename() + "\"")
+                            .contentType(MediaType.parseMediaType("application/vnd.openxmlformats-officedocument.spreadsheetml.sheet"))
+                            .contentLength(outputFile.contentLength())
+                            .body(outputFile);
+                })
+                .onErrorResume(e -> {
+                    log.error("Error exporting metrics", e);
+                    return Mono.just(ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
+                            .body("Failed to export metrics: " + e.getMessage()));
+                });
+    }
+}
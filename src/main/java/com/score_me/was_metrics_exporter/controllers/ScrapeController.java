@@ -0,0 +1,61 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.service.ScrapeCacheService;
+import com.score_me.was_metrics_exporter.service.ScrapeCollector;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+/**
+ * Prometheus scrape endpoint served from the per-refresh exposition cache.
+ * Unlike /actuator/prometheus the registry is rendered once per refresh; repeated scrapes get the same bytes,
+ * a 304 when they present the current ETag, and a pre-compressed body when they accept gzip.
+ * In 'scrape' collection mode a scrape of stale metrics first triggers a shared refresh, off the request thread.
+ */
+@RestController
+@RequiredArgsConstructor
+@RequestMapping("/metrics")
+public class ScrapeController {
+
+    private final ScrapeCacheService scrapeCacheService;
+    private final ScrapeCollector scrapeCollector;
+    private final Scheduler blockingScheduler;
+
+    @GetMapping("/prometheus")
+    public Mono<ResponseEntity<byte[]>> scrape(@RequestHeader(value = HttpHeaders.ACCEPT, required = false) String accept,
+                                               @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+                                               @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
+        Mono<Void> refresh = scrapeCollector.needsRefresh()
+                ? Mono.fromRunnable(scrapeCollector::ensureFresh).subscribeOn(blockingScheduler).then()
+                : Mono.empty();
+        return refresh.then(Mono.fromSupplier(() -> render(accept, acceptEncoding, ifNoneMatch)));
+    }
+
+    private ResponseEntity<byte[]> render(String accept, String acceptEncoding, String ifNoneMatch) {
+        boolean openMetrics = accept != null && accept.contains("application/openmetrics-text");
+        ScrapeCacheService.Exposition exposition = scrapeCacheService.current(openMetrics);
+
+        HttpHeaders headers = new HttpHeaders();
+        headers.setETag(exposition.getEtag());
+        headers.set(HttpHeaders.VARY, "Accept, Accept-Encoding");
+        if (ifNoneMatch != null && ifNoneMatch.contains(exposition.getEtag())) {
+            return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+        }
+
+        headers.set(HttpHeaders.CONTENT_TYPE, exposition.getContentType());
+        byte[] body = exposition.getBody();
+        if (acceptEncoding != null && acceptEncoding.contains("gzip")) {
+            body = exposition.getGzipBody();
+            headers.set(HttpHeaders.CONTENT_ENCODING, "gzip");
+        }
+        headers.setContentLength(body.length);
+        return new ResponseEntity<>(body, headers, HttpStatus.OK);
+    }
+}
@@ -0,0 +1,27 @@
+package com.score_me.was_metrics_exporter.controllers;
+
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import org.springframework.http.HttpHeaders;
+
+/**
+ * Response headers describing the flow snapshot a response was computed from,
+ * so callers can tell how fresh the data is.
+ */
+final class SnapshotHeaders {
+    static final String GENERATION = "X-Snapshot-Generation";
+    static final String TIMESTAMP = "X-Snapshot-Timestamp";
+    static final String AGE_MS = "X-Snapshot-Age-Ms";
+
+    private SnapshotHeaders() {
+    }
+
+    static HttpHeaders of(FlowSnapshot snapshot) {
+        long ageMs = snapshot.ageMillis();
+        HttpHeaders headers = new HttpHeaders();
+        headers.set(GENERATION, String.valueOf(snapshot.getGeneration()));
+        headers.set(TIMESTAMP, snapshot.getCapturedAt().toString());
+        headers.set(AGE_MS, String.valueOf(ageMs));
+        headers.set(HttpHeaders.AGE, String.valueOf(ageMs / 1000));
+        return headers;
+    }
+}
@@ -0,0 +1,11 @@
+package com.score_me.was_metrics_exporter.dto;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchMetricsRequestDTO {
+    private List<String> processGroupIds;
+    private List<String> metrics;
+}
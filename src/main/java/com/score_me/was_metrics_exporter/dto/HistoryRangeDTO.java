@@ -0,0 +1,18 @@
+package com.score_me.was_metrics_exporter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Samples of one metric within a time range, as parallel arrays of epoch millis and values
+ */
+@AllArgsConstructor
+@Getter
+public class HistoryRangeDTO {
+    private String metric;
+    private long from;
+    private long to;
+    private int blocksDecoded;
+    private long[] timestamps;
+    private double[] values;
+}
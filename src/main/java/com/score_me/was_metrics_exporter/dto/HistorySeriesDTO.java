@@ -0,0 +1,18 @@
+package com.score_me.was_metrics_exporter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Size and time span of the recorded history of one metric
+ */
+@AllArgsConstructor
+@Getter
+public class HistorySeriesDTO {
+    private String metric;
+    private long points;
+    private long bytes;
+    private int blocks;
+    private long from;
+    private long to;
+}
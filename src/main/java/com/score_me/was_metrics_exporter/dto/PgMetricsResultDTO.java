@@ -0,0 +1,24 @@
+package com.score_me.was_metrics_exporter.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.Map;
+
+@AllArgsConstructor
+@Getter
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class PgMetricsResultDTO {
+    private String processGroupId;
+    private Map<String, Double> metrics;
+    private String error;
+
+    public static PgMetricsResultDTO ok(String processGroupId, Map<String, Double> metrics) {
+        return new PgMetricsResultDTO(processGroupId, metrics, null);
+    }
+
+    public static PgMetricsResultDTO failed(String processGroupId, String error) {
+        return new PgMetricsResultDTO(processGroupId, null, error);
+    }
+}
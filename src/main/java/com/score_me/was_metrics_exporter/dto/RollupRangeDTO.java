@@ -0,0 +1,22 @@
+package com.score_me.was_metrics_exporter.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Downsampled history of one metric: per bucket of 'resolutionMs', its start (epoch millis) and the
+ * min, max, average and number of the samples it holds, as parallel arrays
+ */
+@AllArgsConstructor
+@Getter
+public class RollupRangeDTO {
+    private String metric;
+    private long from;
+    private long to;
+    private long resolutionMs;
+    private long[] timestamps;
+    private double[] min;
+    private double[] max;
+    private double[] avg;
+    private long[] count;
+}
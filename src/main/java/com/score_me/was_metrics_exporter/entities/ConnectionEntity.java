@@ -0,0 +1,28 @@
+package com.score_me.was_metrics_exporter.entities;
+
+import lombok.Getter;
+
+/**
+ * A single connection between two components of a process group, as seen at snapshot time.
+ */
+@Getter
+public class ConnectionEntity {
+    private final String id;
+    private final String sourceId;
+    private final String destinationId;
+    /**
+     * Flow files waiting in the connection's queue at snapshot time
+     */
+    private final int queuedCount;
+
+    public ConnectionEntity(String id, String sourceId, String destinationId) {
+        this(id, sourceId, destinationId, 0);
+    }
+
+    public ConnectionEntity(String id, String sourceId, String destinationId, int queuedCount) {
+        this.id = id;
+        this.sourceId = sourceId;
+        this.destinationId = destinationId;
+        this.queuedCount = queuedCount;
+    }
+}
@@ -0,0 +1,20 @@
+package com.score_me.was_metrics_exporter.entities;
+
+/**
+ * The kinds of data a {@link FlowSnapshot} crawl can fetch, one per API endpoint family.
+ * The process group hierarchy itself is always crawled.
+ */
+public enum FlowResource {
+    /** /process-groups/{id}/process-groups */
+    PROCESS_GROUPS,
+    /** /process-groups/{id}/processors */
+    PROCESSORS,
+    /** /process-groups/{id}/connections */
+    CONNECTIONS,
+    /** /process-groups/{id}/input-ports */
+    INPUT_PORTS,
+    /** /process-groups/{id}/output-ports */
+    OUTPUT_PORTS,
+    /** /flow/status, falling back to /process-groups/root/connections */
+    BACK_PRESSURE
+}
@@ -0,0 +1,157 @@
+package com.score_me.was_metrics_exporter.entities;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * FlowSnapshot holds everything fetched from the WAS API during a single crawl of the flow:
+ * the process group hierarchy and, per process group, its processors, connections and ports.
+ * Metrics for any process group inside the crawled hierarchy can be derived from one snapshot
+ * without calling the API again.
+ */
+@Getter
+public class FlowSnapshot {
+    private final String rootId;
+    private final Set<FlowResource> resources;
+    private final Instant capturedAt;
+    @Setter
+    private long generation = 0L;
+    private final Map<String, ProcessGroupNodeEntity> processGroups = new HashMap<>();
+    private final Map<String, List<ProcessorNodeEntity>> processorsByGroup = new HashMap<>();
+    private final Map<String, List<ConnectionEntity>> connectionsByGroup = new HashMap<>();
+    private final Map<String, Integer> inputPortsByGroup = new HashMap<>();
+    private final Map<String, Integer> outputPortsByGroup = new HashMap<>();
+    @Setter
+    private double backPressurePercent = 0.0;
+
+    public FlowSnapshot(String rootId) {
+        this(rootId, EnumSet.allOf(FlowResource.class));
+    }
+
+    /**
+     * @param rootId ID of the crawled root process group
+     * @param resources resources fetched by the crawl; data of other resources is absent from this snapshot
+     */
+    public FlowSnapshot(String rootId, Set<FlowResource> resources) {
+        this(rootId, resources, Instant.now());
+    }
+
+    /**
+     * @param rootId ID of the crawled root process group
+     * @param resources resources fetched by the crawl
+     * @param capturedAt time of the crawl, for a snapshot read back from disk
+     */
+    public FlowSnapshot(String rootId, Set<FlowResource> resources, Instant capturedAt) {
+        this.rootId = rootId;
+        this.resources = Collections.unmodifiableSet(EnumSet.copyOf(resources));
+        this.capturedAt = capturedAt;
+    }
+
+    public boolean has(Collection<FlowResource> required) {
+        return resources.containsAll(required);
+    }
+
+    /**
+     * Resolves the "root" alias accepted by the API to the id of the crawled root group.
+     * @param groupId
+     * @return the id under which the group is stored in this snapshot
+     */
+    public String resolve(String groupId) {
+        return "root".equals(groupId) ? rootId : groupId;
+    }
+
+    public long ageMillis() {
+        return Math.max(0L, Instant.now().toEpochMilli() - capturedAt.toEpochMilli());
+    }
+
+    public boolean contains(String groupId) {
+        return processGroups.containsKey(resolve(groupId));
+    }
+
+    /**
+     * Method to list the specified process group and all its descendants, depth first,
+     * in the same order the API crawl visits them.
+     * @param groupId
+     * @return List of process group ids, empty if the group is not part of this snapshot
+     */
+    public List<String> subtree(String groupId) {
+        List<String> out = new ArrayList<>();
+        String start = resolve(groupId);
+        if (!processGroups.containsKey(start)) return out;
+
+        Deque<String> stack = new ArrayDeque<>();
+        Set<String> seen = new HashSet<>();
+        stack.push(start);
+        while (!stack.isEmpty()) {
+            String pgId = stack.pop();
+            if (!seen.add(pgId)) continue;
+            out.add(pgId);
+            ProcessGroupNodeEntity node = processGroups.get(pgId);
+            if (node == null) continue;
+            List<String> children = node.getChildren();
+            for (int i = children.size() - 1; i >= 0; i--) {
+                stack.push(children.get(i));
+            }
+        }
+        return out;
+    }
+
+    /**
+     * Method to build the processor graph of the specified process group and its descendants.
+     * Connection endpoints that are not processors (ports, funnels) are added as placeholder nodes,
+     * matching {@code GraphBuilder.buildProcessorMap}.
+     * @param groupId
+     * @return Map of processor ID to a fresh {@link ProcessorNodeEntity}
+     */
+    public Map<String, ProcessorNodeEntity> processorMap(String groupId) {
+        Map<String, ProcessorNodeEntity> map = new HashMap<>();
+        List<String> pgIds = subtree(groupId);
+        for (String pgId : pgIds) {
+            for (ProcessorNodeEntity p : processorsByGroup.getOrDefault(pgId, Collections.emptyList())) {
+                ProcessorNodeEntity node = new ProcessorNodeEntity(p.getId(), p.getName(), p.getType());
+                node.setActiveThreadCount(p.getActiveThreadCount());
+                map.put(p.getId(), node);
+            }
+        }
+        for (String pgId : pgIds) {
+            for (ConnectionEntity c : connectionsByGroup.getOrDefault(pgId, Collections.emptyList())) {
+                map.computeIfAbsent(c.getSourceId(), id -> new ProcessorNodeEntity(id, "unknown-src", "unknown"));
+                map.computeIfAbsent(c.getDestinationId(), id -> new ProcessorNodeEntity(id, "unknown-dst", "unknown"));
+                map.get(c.getSourceId()).getOutgoing().add(c.getDestinationId());
+                map.get(c.getDestinationId()).getIncoming().add(c.getSourceId());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Method to get the process group hierarchy below (and including) the specified process group
+     * @param groupId
+     * @return Map of process group ID to ProcessGroupNodeEntity
+     */
+    public Map<String, ProcessGroupNodeEntity> processGroupMap(String groupId) {
+        Map<String, ProcessGroupNodeEntity> map = new HashMap<>();
+        for (String pgId : subtree(groupId)) {
+            map.put(pgId, processGroups.get(pgId));
+        }
+        return map;
+    }
+
+    /**
+     * Method to count the input or output ports of the specified process group and its descendants
+     * @param portType : "input" or "output"
+     * @param groupId
+     * @return number of ports
+     */
+    public int portCount(String portType, String groupId) {
+        Map<String, Integer> ports = "input".equals(portType) ? inputPortsByGroup : outputPortsByGroup;
+        int count = 0;
+        for (String pgId : subtree(groupId)) {
+            count += ports.getOrDefault(pgId, 0);
+        }
+        return count;
+    }
+}
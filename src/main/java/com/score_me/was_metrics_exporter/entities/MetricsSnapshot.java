@@ -0,0 +1,58 @@
+package com.score_me.was_metrics_exporter.entities;
+
+import lombok.Builder;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Immutable set of every value published by {@link com.score_me.was_metrics_exporter.service.MetricsService}.
+ * A refresh builds a new snapshot from the previous one and publishes it in one step, so gauges and
+ * REST responses reading a single snapshot never mix values of different refresh cycles.
+ * @param generation incremented with every published snapshot, 0 before the first refresh
+ * @param timestampMillis time the snapshot was published, 0 before the first refresh
+ */
+@Builder(toBuilder = true)
+public record MetricsSnapshot(long generation, long timestampMillis,
+                              double processorCount, double processorCountFinal, double maxPathDepth,
+                              double avgFanOut, double ipdCount, double scriptedPct,
+                              double inputPortCount, double outputPortCount,
+                              double cycleCount, double largestCycle, double longestPath, double criticalPathQueued,
+                              double activeThreads, double qbpPct,
+                              double heapUsedMb, double heapMaxMb, double avgHeapUtilization, double heapGrowthMbPerMin,
+                              double windowAvgCpuUsage, double instantaneousCpuUsage, double spikeRecoveryTimeMs,
+                              double fcsScore) {
+
+    public static final MetricsSnapshot EMPTY = MetricsSnapshot.builder().build();
+
+    /**
+     * Method to list the values under the names used in logs and on /metrics/stream
+     * @return Map of metric names to their values
+     */
+    public Map<String, Double> toMap() {
+        Map<String, Double> metrics = new LinkedHashMap<>();
+        metrics.put("processorCount", processorCount);
+        metrics.put("maxPathDepth", maxPathDepth);
+        metrics.put("avgF", avgFanOut);
+        metrics.put("activeThreads", activeThreads);
+        metrics.put("ipd", ipdCount);
+        metrics.put("scriptedPctVal", scriptedPct);
+        metrics.put("qbpPctVal", qbpPct);
+        metrics.put("inputPortCount", inputPortCount);
+        metrics.put("outputPortCount", outputPortCount);
+        metrics.put("processorCountFinal", processorCountFinal);
+        metrics.put("cycleCount", cycleCount);
+        metrics.put("largestCycle", largestCycle);
+        metrics.put("longestPath", longestPath);
+        metrics.put("criticalPathQueued", criticalPathQueued);
+        metrics.put("heapUsedMb", heapUsedMb);
+        metrics.put("heapMaxMb", heapMaxMb);
+        metrics.put("heapGrowthMbPerMin", heapGrowthMbPerMin);
+        metrics.put("windowAvgCpuUsage", windowAvgCpuUsage);
+        metrics.put("instantaneousCpuUsage", instantaneousCpuUsage);
+        metrics.put("fcsScore", fcsScore);
+        metrics.put("SpikeRecoveryTimeMs", spikeRecoveryTimeMs);
+        metrics.put("SpikeRecoveryTimeSec", spikeRecoveryTimeMs / 1000.0);
+        return metrics;
+    }
+}
@@ -0,0 +1,7 @@
+package com.score_me.was_metrics_exporter.exceptions;
+
+public class DeadlineExceededException extends RuntimeException {
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
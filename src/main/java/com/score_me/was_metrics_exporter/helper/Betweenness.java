@@ -0,0 +1,164 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Betweenness centrality of the vertices of a {@link ProcessorGraph} with Brandes' algorithm: a breadth-first search
+ * from every source counts the shortest paths through each vertex, then a pass back over the search order adds up
+ * the dependency of the source on every vertex. Connections are directed and unweighted.
+ * <p>
+ * The sources are split across a {@link ForkJoinPool}; each task keeps its own work arrays and score sums, and the sums
+ * are added up at the end. When 'samples' is less than the number of vertices only that many sources, drawn at random,
+ * are searched and the scores are scaled up by vertices / samples: an unbiased estimate, whose error shrinks with the
+ * square root of the samples. It separates clear chokepoints well; processors with close scores may swap places
+ * between samples.
+ */
+public final class Betweenness {
+
+    /**
+     * Fewest sources a fork-join task searches, so tasks stay large compared to their work arrays
+     */
+    private static final int MIN_SOURCES = 16;
+
+    private Betweenness() {
+    }
+
+    /**
+     * Method to compute the betweenness of every vertex, normalized by the (n - 1)(n - 2) ordered pairs of other
+     * vertices, so that it is the fraction of shortest paths between other vertices that pass through it
+     * @param graph processor graph
+     * @param samples number of sources to search, 0 or less, or at least the number of vertices, to search from all
+     * @param seed seed of the source sample
+     * @param pool pool the searches run on
+     * @return score of every vertex, by vertex number
+     */
+    public static double[] compute(ProcessorGraph graph, int samples, long seed, ForkJoinPool pool) {
+        int n = graph.size();
+        if (n < 3) return new double[n];
+        int[] sources = sources(n, samples, seed);
+        return compute(graph, sources, Math.max(MIN_SOURCES, sources.length / (4 * pool.getParallelism())), pool);
+    }
+
+    /**
+     * Method to search from the specified sources, splitting them into fork-join tasks of at most 'slice' sources
+     * @return the scores, scaled up by vertices / sources and normalized as those of {@link #compute(ProcessorGraph, int, long, ForkJoinPool)}
+     */
+    static double[] compute(ProcessorGraph graph, int[] sources, int slice, ForkJoinPool pool) {
+        int n = graph.size();
+        double[] scores = pool.invoke(new Search(graph, sources, 0, sources.length, slice));
+        double scale = (double) n / sources.length / ((double) (n - 1) * (n - 2));
+        for (int v = 0; v < n; v++) scores[v] *= scale;
+        return scores;
+    }
+
+    /**
+     * @return every vertex, or 'samples' distinct vertices drawn with a partial Fisher-Yates shuffle
+     */
+    static int[] sources(int n, int samples, long seed) {
+        int[] all = new int[n];
+        for (int v = 0; v < n; v++) all[v] = v;
+        if (samples <= 0 || samples >= n) return all;
+        Random random = new Random(seed);
+        for (int i = 0; i < samples; i++) {
+            int j = i + random.nextInt(n - i);
+            int t = all[i];
+            all[i] = all[j];
+            all[j] = t;
+        }
+        return Arrays.copyOf(all, samples);
+    }
+
+    private static final class Search extends RecursiveTask<double[]> {
+        private final ProcessorGraph graph;
+        private final int[] sources;
+        private final int from;
+        private final int to;
+        private final int slice;
+
+        private Search(ProcessorGraph graph, int[] sources, int from, int to, int slice) {
+            this.graph = graph;
+            this.sources = sources;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+        }
+
+        @Override
+        protected double[] compute() {
+            if (to - from <= slice) {
+                double[] scores = new double[graph.size()];
+                Work work = new Work(graph.size());
+                for (int i = from; i < to; i++) {
+                    work.accumulate(graph, sources[i], scores);
+                }
+                return scores;
+            }
+            int mid = (from + to) >>> 1;
+            Search left = new Search(graph, sources, from, mid, slice);
+            left.fork();
+            double[] right = new Search(graph, sources, mid, to, slice).compute();
+            double[] scores = left.join();
+            for (int v = 0; v < scores.length; v++) scores[v] += right[v];
+            return scores;
+        }
+    }
+
+    /**
+     * Work arrays of the searches of one task, reset after each search for the vertices it reached only
+     */
+    private static final class Work {
+        private final int[] dist;
+        private final double[] sigma;
+        private final double[] delta;
+        private final int[] order;
+
+        private Work(int n) {
+            dist = new int[n];
+            sigma = new double[n];
+            delta = new double[n];
+            order = new int[n];
+            Arrays.fill(dist, -1);
+        }
+
+        /**
+         * Method to add the dependencies of a source on every vertex to the scores
+         */
+        private void accumulate(ProcessorGraph graph, int source, double[] scores) {
+            // breadth-first search, 'order' doubling as the queue since vertices leave it in the order they entered
+            int head = 0;
+            int tail = 0;
+            dist[source] = 0;
+            sigma[source] = 1;
+            order[tail++] = source;
+            while (head < tail) {
+                int v = order[head++];
+                for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                    int w = graph.target(e);
+                    if (dist[w] < 0) {
+                        dist[w] = dist[v] + 1;
+                        order[tail++] = w;
+                    }
+                    if (dist[w] == dist[v] + 1) sigma[w] += sigma[v];
+                }
+            }
+            // farthest vertices first, so the dependency of every successor on a shortest path is complete
+            for (int i = tail - 1; i >= 0; i--) {
+                int w = order[i];
+                for (int e = graph.edgeStart(w); e < graph.edgeEnd(w); e++) {
+                    int v = graph.target(e);
+                    if (dist[v] == dist[w] + 1) delta[w] += sigma[w] / sigma[v] * (1 + delta[v]);
+                }
+                if (w != source) scores[w] += delta[w];
+            }
+            for (int i = 0; i < tail; i++) {
+                int w = order[i];
+                dist[w] = -1;
+                sigma[w] = 0;
+                delta[w] = 0;
+            }
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import lombok.Getter;
+
+import java.util.*;
+
+import static com.score_me.was_metrics_exporter.entities.FlowResource.*;
+
+/**
+ * The metrics {@link MethodHelper} can compute for a process group, each with the API resources it depends on.
+ * {@link #plan(Collection)} turns a set of requested metrics into the minimal set of resources to crawl.
+ */
+@Getter
+public enum FlowMetric {
+    // connection endpoints that are not processors are counted as nodes, so the graph metrics need connections too
+    PROCESSOR_COUNT("processorCount", PROCESSORS, CONNECTIONS),
+    MAX_PATH_DEPTH("maxPathDepth"),
+    AVG_FAN_OUT("avgF", PROCESSORS, CONNECTIONS),
+    BACK_PRESSURE_PCT("qbpPctVal", BACK_PRESSURE),
+    IPD("ipd", PROCESSORS, CONNECTIONS),
+    ACTIVE_THREADS("activeThreads", PROCESSORS),
+    SCRIPTED_PCT("scriptedPctVal", PROCESSORS, CONNECTIONS),
+    INPUT_PORT_COUNT("inputPortCount", INPUT_PORTS),
+    OUTPUT_PORT_COUNT("outputPortCount", OUTPUT_PORTS),
+    PROCESSOR_COUNT_FINAL("processorCountFinal", PROCESSORS, CONNECTIONS, INPUT_PORTS, OUTPUT_PORTS),
+    CYCLE_COUNT("cycleCount", PROCESSORS, CONNECTIONS),
+    LARGEST_CYCLE("largestCycle", PROCESSORS, CONNECTIONS),
+    LONGEST_PATH("longestPath", PROCESSORS, CONNECTIONS),
+    CRITICAL_PATH_QUEUED("criticalPathQueued", PROCESSORS, CONNECTIONS);
+
+    private final String key;
+    private final Set<FlowResource> resources;
+
+    FlowMetric(String key, FlowResource... resources) {
+        this.key = key;
+        EnumSet<FlowResource> set = EnumSet.of(PROCESS_GROUPS);
+        set.addAll(Arrays.asList(resources));
+        this.resources = Collections.unmodifiableSet(set);
+    }
+
+    private static final Map<String, FlowMetric> BY_KEY = new HashMap<>();
+
+    static {
+        for (FlowMetric m : values()) {
+            BY_KEY.put(m.key, m);
+        }
+    }
+
+    public boolean needs(FlowResource resource) {
+        return resources.contains(resource);
+    }
+
+    public static Set<String> keys() {
+        return Collections.unmodifiableSet(BY_KEY.keySet());
+    }
+
+    /**
+     * Method to parse metric names as used in requests and responses
+     * @param names metric names, all metrics if null or empty
+     * @return Set of metrics
+     * @throws IllegalArgumentException naming every unknown metric
+     */
+    public static Set<FlowMetric> parse(Collection<String> names) {
+        if (names == null || names.isEmpty()) return EnumSet.allOf(FlowMetric.class);
+        EnumSet<FlowMetric> metrics = EnumSet.noneOf(FlowMetric.class);
+        List<String> unknown = new ArrayList<>();
+        for (String name : names) {
+            FlowMetric m = BY_KEY.get(name == null ? null : name.trim());
+            if (m == null) unknown.add(name);
+            else metrics.add(m);
+        }
+        if (!unknown.isEmpty()) {
+            throw new IllegalArgumentException("Unknown metrics: " + unknown);
+        }
+        return metrics;
+    }
+
+    /**
+     * Method to plan the crawl for a set of metrics
+     * @param metrics requested metrics
+     * @return the union of the resources the metrics depend on
+     */
+    public static Set<FlowResource> plan(Collection<FlowMetric> metrics) {
+        EnumSet<FlowResource> resources = EnumSet.of(PROCESS_GROUPS);
+        for (FlowMetric m : metrics) {
+            resources.addAll(m.resources);
+        }
+        return resources;
+    }
+}
@@ -0,0 +1,65 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import lombok.Getter;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Heavy hitters of one status refresh, fed the process group snapshots of the recursive status response as
+ * {@link MethodHelper#computeActiveThreads(com.score_me.was_metrics_exporter.client.FlowApiClient, String,
+ * com.score_me.was_metrics_exporter.utils.Deadline, java.util.function.Consumer)} walks it:
+ * <ul>
+ *     <li>active threads and task duration: every processor appears once, so a {@link TopK} heap ranks them exactly</li>
+ *     <li>input queue depth: a processor can only be connected within its own process group, so the flow files queued
+ *     in the connections of a group snapshot are summed exactly per destination processor before the sums are ranked.
+ *     Connections to ports, funnels and remote ports are left out</li>
+ * </ul>
+ * Memory is bounded by k and the processors of the largest process group, whatever the size of the flow.
+ */
+@Getter
+public final class HotProcessors {
+
+    private final int k;
+    private final TopK threads;
+    private final TopK taskNanos;
+    private final TopK queued;
+
+    /**
+     * @param k processors to rank by each value
+     */
+    public HotProcessors(int k) {
+        this.k = k;
+        this.threads = new TopK(k);
+        this.taskNanos = new TopK(k);
+        this.queued = new TopK(k);
+    }
+
+    /**
+     * Method to feed the processors and connections of a process group, not those of its children
+     * @param group a processGroupStatusSnapshot
+     */
+    public void group(JsonNode group) {
+        // queued flow files per processor of the group, by ID
+        Map<String, Long> inputs = new HashMap<>();
+        Map<String, String> names = new HashMap<>();
+        for (JsonNode p : group.path("processorStatusSnapshots")) {
+            JsonNode snapshot = p.path("processorStatusSnapshot");
+            String id = snapshot.path("id").asText(null);
+            if (id == null) continue;
+            String name = snapshot.path("name").asText("-");
+            threads.offer(id, name, snapshot.path("activeThreadCount").asInt(0));
+            taskNanos.offer(id, name, snapshot.path("tasksDurationNanos").asLong(0));
+            inputs.put(id, 0L);
+            names.put(id, name);
+        }
+        for (JsonNode c : group.path("connectionStatusSnapshots")) {
+            JsonNode snapshot = c.path("connectionStatusSnapshot");
+            String destination = snapshot.path("destinationId").asText(null);
+            if (destination == null || !inputs.containsKey(destination)) continue;
+            inputs.merge(destination, snapshot.path("flowFilesQueued").asLong(0), Long::sum);
+        }
+        inputs.forEach((id, count) -> queued.offer(id, names.get(id), count));
+    }
+}
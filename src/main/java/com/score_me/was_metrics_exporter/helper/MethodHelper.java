@@ -2,14 +2,22 @@ package com.score_me.was_metrics_exporter.helper;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
 import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
 import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import com.score_me.was_metrics_exporter.utils.Deadline;
 import com.score_me.was_metrics_exporter.utils.GraphBuilder;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.function.Consumer;
 
 @Component
 @Slf4j
@@ -19,6 +27,17 @@ public class MethodHelper{
     private final GraphBuilder graphBuilder;
     private static final String PG_ENDPOINT = "/process-groups/";
 
+    // metrics that are counted per processor, in one pass by NodeStats
+    private static final Set<FlowMetric> NODE_METRICS = EnumSet.of(
+            FlowMetric.AVG_FAN_OUT, FlowMetric.IPD, FlowMetric.ACTIVE_THREADS, FlowMetric.SCRIPTED_PCT);
+
+    // metrics of the paths through the processor graph, computed together by PathStats
+    private static final Set<FlowMetric> PATH_METRICS = EnumSet.of(
+            FlowMetric.CYCLE_COUNT, FlowMetric.LARGEST_CYCLE, FlowMetric.LONGEST_PATH, FlowMetric.CRITICAL_PATH_QUEUED);
+
+    @Value("${monitor.metrics.parallel-threshold:50000}")
+    private int parallelThreshold = 50000;
+
 
     public MethodHelper(FlowApiClient client, GraphBuilder graphBuilder) {
         this.client = client;
@@ -34,47 +53,146 @@ public class MethodHelper{
      * @throws IOException if an error occurs during processing
      */
     public Map<String, Double> getMetrics(FlowApiClient flowApiClient, String groupId) throws IOException {
+        return getMetrics(captureSnapshot(flowApiClient, groupId), groupId);
+    }
+
+    /**
+     * Method to crawl the specified process group once and capture everything needed to compute
+     * metrics for it and any of its descendants.
+     * @param flowApiClient FlowApiClient instance
+     * @param groupId ID of the process group to crawl from, "root" for the whole flow
+     * @return FlowSnapshot of the hierarchy
+     * @throws IOException if the process group cannot be fetched
+     */
+    public FlowSnapshot captureSnapshot(FlowApiClient flowApiClient, String groupId) throws IOException {
+        try {
+            return captureSnapshotAsync(flowApiClient, groupId, EnumSet.allOf(FlowResource.class)).block();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw e;
+        }
+    }
+
+    /**
+     * Non-blocking variant of {@link #captureSnapshot(FlowApiClient, String)} fetching only the specified resources.
+     * Use {@link FlowMetric#plan(Collection)} to get the resources a set of metrics needs.
+     * The hierarchy crawl and the back pressure lookup run concurrently.
+     * @param flowApiClient FlowApiClient instance
+     * @param groupId ID of the process group to crawl from, "root" for the whole flow
+     * @param resources resources to fetch
+     * @return Mono emitting the FlowSnapshot of the hierarchy
+     */
+    public Mono<FlowSnapshot> captureSnapshotAsync(FlowApiClient flowApiClient, String groupId, Set<FlowResource> resources) {
+        Mono<Double> backPressure = resources.contains(FlowResource.BACK_PRESSURE)
+                ? computeBackPressurePercentAsync(flowApiClient) : Mono.just(0.0);
+        return Mono.zip(graphBuilder.buildSnapshotAsync(groupId, resources), backPressure)
+                .map(t -> {
+                    t.getT1().setBackPressurePercent(t.getT2());
+                    return t.getT1();
+                });
+    }
+
+    /**
+     * Method to get all metrics for a process group from an already captured snapshot.
+     * @see #getMetrics(FlowSnapshot, String, Set)
+     */
+    public Map<String, Double> getMetrics(FlowSnapshot snapshot, String groupId) {
+        return getMetrics(snapshot, groupId, EnumSet.allOf(FlowMetric.class));
+    }
+
+    /**
+     * Method to get metrics for a process group from an already captured snapshot.
+     * No API calls are made, so many groups can be evaluated against the same snapshot.
+     * Only the requested metrics are computed; the snapshot must contain the resources they depend on.
+     * The per-processor metrics are counted in a single pass, split across the common fork-join pool for groups with at
+     * least 'monitor.metrics.parallel-threshold' processors, see {@link NodeStats}. The cycles, longest path and
+     * queue-weighted critical path of the processor graph are computed in linear time by {@link PathStats}.
+     * @param snapshot FlowSnapshot containing the process group
+     * @param groupId ID of the process group
+     * @param wanted metrics to compute
+     * @return Map of metric names to their values, empty if the group has no processors
+     */
+    public Map<String, Double> getMetrics(FlowSnapshot snapshot, String groupId, Set<FlowMetric> wanted) {
         Map<String, Double> metrics = new HashMap<>();
-        Map<String, ProcessorNodeEntity> processorMap = graphBuilder.buildProcessorMap(groupId);
-        Map<String, ProcessGroupNodeEntity> processGroupMap = graphBuilder.buildProcessGroupMap(groupId);
-        if (processorMap == null || processorMap.isEmpty()) {
+        boolean needsGraph = wanted.stream().anyMatch(m -> m.needs(FlowResource.PROCESSORS));
+        Map<String, ProcessorNodeEntity> processorMap = needsGraph ? snapshot.processorMap(groupId) : Collections.emptyMap();
+        Map<String, ProcessGroupNodeEntity> processGroupMap = snapshot.processGroupMap(groupId);
+        if (needsGraph && processorMap.isEmpty()) {
             log.warn("Error creating processor map");
             return Collections.emptyMap();
-        } else if (processGroupMap == null || processGroupMap.isEmpty()) {
+        } else if (processGroupMap.isEmpty()) {
             log.warn("Error creating process group map");
             return Collections.emptyMap();
         }
 
         double processorCount = processorMap.size();
-        metrics.put("processorCount", processorCount);
+        if (wanted.contains(FlowMetric.PROCESSOR_COUNT)) {
+            metrics.put("processorCount", processorCount);
+        }
 
-        double maxPathDepth = computeMaxDepth(processGroupMap);
-        metrics.put("maxPathDepth", maxPathDepth);
+        if (wanted.contains(FlowMetric.MAX_PATH_DEPTH)) {
+            double maxPathDepth = computeMaxDepth(processGroupMap);
+            metrics.put("maxPathDepth", maxPathDepth);
+        }
 
-        double avgF = processorMap.values().stream().mapToInt(n -> n.getOutgoing().size()).average().orElse(0.0);
-        metrics.put("avgF", avgF);
+        NodeStats nodeStats = wanted.stream().anyMatch(NODE_METRICS::contains)
+                ? NodeStats.of(processorMap.values(), wanted.contains(FlowMetric.SCRIPTED_PCT), parallelThreshold)
+                : null;
 
-        double qbpPctVal =computeBackPressurePercent(flowApiClient);
-        metrics.put("qbpPctVal", qbpPctVal);
+        if (wanted.contains(FlowMetric.AVG_FAN_OUT)) {
+            metrics.put("avgF", nodeStats.avgFanOut());
+        }
 
-        double ipd = processorMap.values().stream().filter(n -> (n.getIncoming().size() + n.getOutgoing().size()) > 2).count();
-        metrics.put("ipd", ipd);
+        if (wanted.contains(FlowMetric.BACK_PRESSURE_PCT)) {
+            metrics.put("qbpPctVal", snapshot.getBackPressurePercent());
+        }
 
-        double threads = processorMap.values().stream().mapToInt(ProcessorNodeEntity::getActiveThreadCount).sum();
-        metrics.put("activeThreads", threads);
+        if (wanted.contains(FlowMetric.IPD)) {
+            metrics.put("ipd", (double) nodeStats.getIpd());
+        }
 
-        double scripted = processorMap.values().stream().filter(n -> isScriptedType(n.getType()) || containsEL(n.getName())).count();
-        double scriptedPctVal = 100.0 * scripted / Math.max(processorCount, 1);
-        metrics.put("scriptedPctVal", scriptedPctVal);
+        if (wanted.contains(FlowMetric.ACTIVE_THREADS)) {
+            metrics.put("activeThreads", (double) nodeStats.getActiveThreads());
+        }
 
-        double inputPortCount = graphBuilder.getPortCount("input", groupId);
-        metrics.put("inputPortCount", inputPortCount);
+        if (wanted.contains(FlowMetric.SCRIPTED_PCT)) {
+            double scripted = nodeStats.getScripted();
+            double scriptedPctVal = 100.0 * scripted / Math.max(processorCount, 1);
+            metrics.put("scriptedPctVal", scriptedPctVal);
+        }
 
-        double outputPortCount = graphBuilder.getPortCount("output", groupId);
-        metrics.put("outputPortCount", outputPortCount);
+        if (wanted.stream().anyMatch(PATH_METRICS::contains)) {
+            PathStats pathStats = PathStats.of(ProcessorGraph.of(snapshot, groupId));
+            if (wanted.contains(FlowMetric.CYCLE_COUNT)) {
+                metrics.put("cycleCount", (double) pathStats.getCycles());
+            }
+            if (wanted.contains(FlowMetric.LARGEST_CYCLE)) {
+                metrics.put("largestCycle", (double) pathStats.getLargestCycle());
+            }
+            if (wanted.contains(FlowMetric.LONGEST_PATH)) {
+                metrics.put("longestPath", (double) pathStats.getLongestPath());
+            }
+            if (wanted.contains(FlowMetric.CRITICAL_PATH_QUEUED)) {
+                metrics.put("criticalPathQueued", (double) pathStats.getCriticalPathQueued());
+            }
+        }
 
-        double processorCountActual = processorCount - inputPortCount - outputPortCount;
-        metrics.put("processorCountFinal", processorCountActual);
+        boolean needsPorts = wanted.contains(FlowMetric.PROCESSOR_COUNT_FINAL);
+        if (needsPorts || wanted.contains(FlowMetric.INPUT_PORT_COUNT) || wanted.contains(FlowMetric.OUTPUT_PORT_COUNT)) {
+            double inputPortCount = snapshot.portCount("input", groupId);
+            double outputPortCount = snapshot.portCount("output", groupId);
+            if (wanted.contains(FlowMetric.INPUT_PORT_COUNT)) {
+                metrics.put("inputPortCount", inputPortCount);
+            }
+            if (wanted.contains(FlowMetric.OUTPUT_PORT_COUNT)) {
+                metrics.put("outputPortCount", outputPortCount);
+            }
+            if (needsPorts) {
+                double processorCountActual = processorCount - inputPortCount - outputPortCount;
+                metrics.put("processorCountFinal", processorCountActual);
+            }
+        }
 
         return metrics;
 
@@ -118,34 +236,91 @@ public class MethodHelper{
         return best;
     }
 
-    private static double computeBackPressurePercent(FlowApiClient client) {
-        try {
-            JsonNode top = client.get("/flow/status");
-            if (top == null) return 0.0;
-            List<JsonNode> conns = new ArrayList<>();
-            if (top.has("connectionStatus")) {
-                top.get("connectionStatus").forEach(conns::add);
-            }
-            if (conns.isEmpty()) {
-                JsonNode rootConns = client.get("/process-groups/root/connections");
-                if (rootConns != null && rootConns.has("connections")) {
-                    rootConns.get("connections").forEach(conns::add);
-                }
+    /**
+     * Method to count the active threads of the processors in a process group and all its descendants.
+     * Uses a single recursive status call instead of crawling the processors of every group.
+     * @param flowApiClient FlowApiClient instance
+     * @param groupId ID of the process group
+     * @param deadline time by which the status call must complete
+     * @return total active thread count
+     * @throws DeadlineExceededException if the deadline passed
+     */
+    public double computeActiveThreads(FlowApiClient flowApiClient, String groupId, Deadline deadline) {
+        return computeActiveThreads(flowApiClient, groupId, deadline, null);
+    }
+
+    /**
+     * Method to count the active threads of the processors in a process group and all its descendants, feeding every
+     * process group snapshot of the status response to a consumer on the way, such as the heavy hitters of the refresh
+     * @param groups consumer of every processGroupStatusSnapshot, not of their children, null for none
+     * @see #computeActiveThreads(FlowApiClient, String, Deadline)
+     */
+    public double computeActiveThreads(FlowApiClient flowApiClient, String groupId, Deadline deadline, Consumer<JsonNode> groups) {
+        JsonNode status = flowApiClient.get("/flow/process-groups/" + groupId + "/status?recursive=true", deadline);
+        if (status == null || !status.has("processGroupStatus")) return 0.0;
+
+        double threads = 0;
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(status.get("processGroupStatus").path("aggregateSnapshot"));
+        while (!stack.isEmpty()) {
+            JsonNode pg = stack.pop();
+            for (JsonNode p : pg.path("processorStatusSnapshots")) {
+                threads += p.path("processorStatusSnapshot").path("activeThreadCount").asInt(0);
             }
-            int total = conns.size();
-            int over = 0;
-            for (JsonNode c : conns) {
-                JsonNode comp = c.has("component") ? c.get("component") : c;
-                long queuedCount = comp.has("queuedCount") ? comp.get("queuedCount").asLong(0) : 0L;
-                long backCount = comp.has("backPressureObjectThreshold") ? comp.get("backPressureObjectThreshold").asLong(Long.MAX_VALUE) : Long.MAX_VALUE;
-                if (backCount > 0 && queuedCount >= backCount) over++;
+            if (groups != null) groups.accept(pg);
+            for (JsonNode child : pg.path("processGroupStatusSnapshots")) {
+                stack.push(child.path("processGroupStatusSnapshot"));
             }
-            if (total == 0) return 0.0;
-            return 100.0 * over / total;
-        } catch (Exception e) {
-            log.warn("Error computing backpressure percent: {}", e.getMessage());
-            return 0.0;
         }
+        return threads;
     }
-}
 
+    /**
+     * Method to get the percentage of connections at or above their back pressure object threshold
+     * @param flowApiClient FlowApiClient instance
+     * @param deadline time by which the status calls must complete
+     * @return percentage of connections under back pressure, 0 if it cannot be determined
+     * @throws DeadlineExceededException if the deadline passed
+     */
+    public double computeBackPressurePercent(FlowApiClient flowApiClient, Deadline deadline) {
+        return Optional.ofNullable(deadline.bound(computeBackPressurePercentAsync(flowApiClient), "back pressure").block()).orElse(0.0);
+    }
+
+    private static Mono<Double> computeBackPressurePercentAsync(FlowApiClient client) {
+        return client.getAsync("/flow/status")
+                .flatMap(top -> {
+                    List<JsonNode> conns = new ArrayList<>();
+                    if (top.has("connectionStatus")) {
+                        top.get("connectionStatus").forEach(conns::add);
+                    }
+                    if (!conns.isEmpty()) return Mono.just(conns);
+                    return client.getAsync("/process-groups/root/connections")
+                            .map(rootConns -> {
+                                if (rootConns.has("connections")) {
+                                    rootConns.get("connections").forEach(conns::add);
+                                }
+                                return conns;
+                            })
+                            .defaultIfEmpty(conns);
+                })
+                .map(MethodHelper::backPressurePercent)
+                .defaultIfEmpty(0.0)
+                .onErrorResume(e -> !(e instanceof DeadlineExceededException), e -> {
+                    log.warn("Error computing backpressure percent: {}", e.getMessage());
+                    return Mono.just(0.0);
+                });
+    }
+
+    private static double backPressurePercent(List<JsonNode> conns) {
+        int total = conns.size();
+        int over = 0;
+        for (JsonNode c : conns) {
+            JsonNode comp = c.has("component") ? c.get("component") : c;
+            long queuedCount = comp.has("queuedCount") ? comp.get("queuedCount").asLong(0) : 0L;
+            long backCount = comp.has("backPressureObjectThreshold") ? comp.get("backPressureObjectThreshold").asLong(Long.MAX_VALUE) : Long.MAX_VALUE;
+            if (backCount > 0 && queuedCount >= backCount) over++;
+        }
+        if (total == 0) return 0.0;
+        return 100.0 * over / total;
+    }
+}
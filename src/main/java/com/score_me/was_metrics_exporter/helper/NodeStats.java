@@ -0,0 +1,120 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import lombok.Getter;
+
+import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Per-processor counts behind the node metrics of {@link MethodHelper} (fan-out, IPD, active threads and scripted
+ * processors), gathered in a single pass over the processors of a process group.
+ * <p>
+ * Large graphs can be split across a {@link ForkJoinPool}: each task counts a slice of the processors and the
+ * partial counts are added up. Every count is an integer sum, so the parallel result is exactly the sequential one.
+ */
+@Getter
+public final class NodeStats {
+
+    /**
+     * Smallest slice a fork-join task splits off, so tasks stay large compared to their scheduling cost
+     */
+    private static final int MIN_SLICE = 1024;
+
+    private long processors;
+    private long outgoing;
+    private long ipd;
+    private long activeThreads;
+    private long scripted;
+
+    private NodeStats() {
+    }
+
+    /**
+     * Method to count the processors sequentially, or on the common fork-join pool when there are at least
+     * 'parallelThreshold' of them and the pool has more than one worker
+     * @param nodes processors of the process group
+     * @param countScripted whether to count scripted processors, which needs string matching on every processor
+     * @param parallelThreshold processor count from which the pass is parallel, 0 or less to never go parallel
+     */
+    public static NodeStats of(Collection<ProcessorNodeEntity> nodes, boolean countScripted, int parallelThreshold) {
+        if (parallelThreshold > 0 && nodes.size() >= parallelThreshold && ForkJoinPool.getCommonPoolParallelism() > 1) {
+            return parallel(nodes, countScripted, ForkJoinPool.commonPool());
+        }
+        return sequential(nodes, countScripted);
+    }
+
+    public static NodeStats sequential(Collection<ProcessorNodeEntity> nodes, boolean countScripted) {
+        NodeStats stats = new NodeStats();
+        for (ProcessorNodeEntity node : nodes) {
+            stats.add(node, countScripted);
+        }
+        return stats;
+    }
+
+    public static NodeStats parallel(Collection<ProcessorNodeEntity> nodes, boolean countScripted, ForkJoinPool pool) {
+        ProcessorNodeEntity[] array = nodes.toArray(new ProcessorNodeEntity[0]);
+        int slice = Math.max(MIN_SLICE, array.length / (4 * pool.getParallelism()));
+        return pool.invoke(new Pass(array, 0, array.length, slice, countScripted));
+    }
+
+    /**
+     * @return average number of outgoing connections per processor, 0 without processors
+     */
+    public double avgFanOut() {
+        return processors == 0 ? 0.0 : (double) outgoing / processors;
+    }
+
+    private void add(ProcessorNodeEntity node, boolean countScripted) {
+        int out = node.getOutgoing().size();
+        processors++;
+        outgoing += out;
+        if (node.getIncoming().size() + out > 2) ipd++;
+        activeThreads += node.getActiveThreadCount();
+        if (countScripted && (MethodHelper.isScriptedType(node.getType()) || MethodHelper.containsEL(node.getName()))) {
+            scripted++;
+        }
+    }
+
+    private NodeStats merge(NodeStats other) {
+        processors += other.processors;
+        outgoing += other.outgoing;
+        ipd += other.ipd;
+        activeThreads += other.activeThreads;
+        scripted += other.scripted;
+        return this;
+    }
+
+    private static final class Pass extends RecursiveTask<NodeStats> {
+        private final ProcessorNodeEntity[] nodes;
+        private final int from;
+        private final int to;
+        private final int slice;
+        private final boolean countScripted;
+
+        private Pass(ProcessorNodeEntity[] nodes, int from, int to, int slice, boolean countScripted) {
+            this.nodes = nodes;
+            this.from = from;
+            this.to = to;
+            this.slice = slice;
+            this.countScripted = countScripted;
+        }
+
+        @Override
+        protected NodeStats compute() {
+            if (to - from <= slice) {
+                NodeStats stats = new NodeStats();
+                for (int i = from; i < to; i++) {
+                    stats.add(nodes[i], countScripted);
+                }
+                return stats;
+            }
+            int mid = (from + to) >>> 1;
+            Pass left = new Pass(nodes, from, mid, slice, countScripted);
+            left.fork();
+            NodeStats right = new Pass(nodes, mid, to, slice, countScripted).compute();
+            return left.join().merge(right);
+        }
+    }
+}
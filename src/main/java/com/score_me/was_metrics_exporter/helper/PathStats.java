@@ -0,0 +1,159 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import lombok.Getter;
+
+import java.util.Arrays;
+
+/**
+ * Path metrics of a {@link ProcessorGraph}, computed in time linear in its vertices and edges:
+ * <ul>
+ *     <li>the strongly connected components, found with an iterative Tarjan search so that long pipelines cannot
+ *     overflow the stack; a component of several vertices, or one with a self-loop, is a cycle of the flow, and its
+ *     size is the number of processors in it</li>
+ *     <li>the longest path through the condensation of the graph, a DAG with one vertex per component, counted in
+ *     stages: every processor on the path is a stage and a cycle on it is a single stage, while the placeholders of
+ *     ports and funnels it passes through are not stages</li>
+ *     <li>the critical path, the path of the condensation along which the most flow files are queued; the queues inside
+ *     a cycle are counted once when the path passes through it</li>
+ * </ul>
+ */
+@Getter
+public final class PathStats {
+
+    private int components;
+    private int cycles;
+    private int largestCycle;
+    private int longestPath;
+    private long criticalPathQueued;
+
+    private PathStats() {
+    }
+
+    /**
+     * Method to compute the path metrics of a graph
+     * @param graph processor graph
+     * @return the metrics, all 0 for an empty graph
+     */
+    public static PathStats of(ProcessorGraph graph) {
+        PathStats stats = new PathStats();
+        int n = graph.size();
+        if (n == 0) return stats;
+        int[] component = components(graph);
+
+        // Tarjan completes a component only after every component reachable from it, so component ids are in reverse
+        // topological order of the condensation; group the vertices by component with a counting sort
+        int count = 0;
+        for (int c : component) count = Math.max(count, c + 1);
+        int[] start = new int[count + 1];
+        for (int v = 0; v < n; v++) start[component[v] + 1]++;
+        for (int c = 0; c < count; c++) start[c + 1] += start[c];
+        int[] members = new int[n];
+        int[] next = new int[count];
+        System.arraycopy(start, 0, next, 0, count);
+        for (int v = 0; v < n; v++) members[next[component[v]]++] = v;
+
+        long[] internalQueued = new long[count];
+        boolean[] selfLoop = new boolean[count];
+        int[] processors = new int[count];
+        for (int v = 0; v < n; v++) {
+            if (graph.processor(v) != null) processors[component[v]]++;
+            for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                int w = graph.target(e);
+                if (component[w] != component[v]) continue;
+                internalQueued[component[v]] += graph.queued(e);
+                if (w == v) selfLoop[component[v]] = true;
+            }
+        }
+
+        // stages a component adds to a path: 1 if it holds a processor, 0 for a placeholder
+        int[] weight = new int[count];
+        int[] stages = new int[count];
+        long[] queued = new long[count];
+        for (int c = 0; c < count; c++) {
+            weight[c] = processors[c] > 0 ? 1 : 0;
+            stages[c] = weight[c];
+            queued[c] = internalQueued[c];
+        }
+        stats.components = count;
+        for (int c = count - 1; c >= 0; c--) {
+            int size = start[c + 1] - start[c];
+            if (size > 1 || selfLoop[c]) {
+                stats.cycles++;
+                stats.largestCycle = Math.max(stats.largestCycle, processors[c]);
+            }
+            stats.longestPath = Math.max(stats.longestPath, stages[c]);
+            stats.criticalPathQueued = Math.max(stats.criticalPathQueued, queued[c]);
+            for (int i = start[c]; i < start[c + 1]; i++) {
+                int v = members[i];
+                for (int e = graph.edgeStart(v); e < graph.edgeEnd(v); e++) {
+                    int d = component[graph.target(e)];
+                    if (d == c) continue;
+                    stages[d] = Math.max(stages[d], stages[c] + weight[d]);
+                    queued[d] = Math.max(queued[d], queued[c] + graph.queued(e) + internalQueued[d]);
+                }
+            }
+        }
+        return stats;
+    }
+
+    /**
+     * Method to find the strongly connected components with Tarjan's algorithm, driven by an explicit stack
+     * @return the component of every vertex, numbered in the order the components complete
+     */
+    static int[] components(ProcessorGraph graph) {
+        int n = graph.size();
+        int[] index = new int[n];
+        int[] low = new int[n];
+        int[] component = new int[n];
+        boolean[] onStack = new boolean[n];
+        int[] stack = new int[n];
+        int[] callVertex = new int[n];
+        int[] callEdge = new int[n];
+        Arrays.fill(index, -1);
+        int counter = 0;
+        int top = 0;
+        int components = 0;
+
+        for (int root = 0; root < n; root++) {
+            if (index[root] >= 0) continue;
+            int depth = 0;
+            callVertex[0] = root;
+            callEdge[0] = graph.edgeStart(root);
+            index[root] = low[root] = counter++;
+            stack[top++] = root;
+            onStack[root] = true;
+            while (depth >= 0) {
+                int v = callVertex[depth];
+                if (callEdge[depth] < graph.edgeEnd(v)) {
+                    int w = graph.target(callEdge[depth]++);
+                    if (index[w] < 0) {
+                        index[w] = low[w] = counter++;
+                        stack[top++] = w;
+                        onStack[w] = true;
+                        depth++;
+                        callVertex[depth] = w;
+                        callEdge[depth] = graph.edgeStart(w);
+                    } else if (onStack[w]) {
+                        low[v] = Math.min(low[v], index[w]);
+                    }
+                    continue;
+                }
+                if (low[v] == index[v]) {
+                    int w;
+                    do {
+                        w = stack[--top];
+                        onStack[w] = false;
+                        component[w] = components;
+                    } while (w != v);
+                    components++;
+                }
+                depth--;
+                if (depth >= 0) {
+                    int parent = callVertex[depth];
+                    low[parent] = Math.min(low[parent], low[v]);
+                }
+            }
+        }
+        return component;
+    }
+}
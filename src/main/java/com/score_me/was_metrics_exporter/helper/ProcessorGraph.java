@@ -0,0 +1,185 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Processor graph of a process group and its descendants in compressed sparse row form: vertices are numbered
+ * 0..n-1 and the outgoing connections of vertex v are the edges edgeStart[v] until edgeStart[v + 1].
+ * It holds the same vertices as {@link FlowSnapshot#processorMap(String)}, including the placeholders for connection
+ * endpoints that are not processors, without a map entry and two id lists per vertex, so graph algorithms over
+ * large flows run on primitive arrays.
+ */
+public final class ProcessorGraph {
+
+    private final String[] ids;
+    private final ProcessorNodeEntity[] processors;
+    private final int[] edgeStart;
+    private final int[] edgeTarget;
+    private final String[] edgeConnection;
+    private final int[] edgeQueued;
+
+    private ProcessorGraph(String[] ids, ProcessorNodeEntity[] processors, int[] edgeStart, int[] edgeTarget,
+                           String[] edgeConnection, int[] edgeQueued) {
+        this.ids = ids;
+        this.processors = processors;
+        this.edgeStart = edgeStart;
+        this.edgeTarget = edgeTarget;
+        this.edgeConnection = edgeConnection;
+        this.edgeQueued = edgeQueued;
+    }
+
+    /**
+     * Method to build the processor graph of the specified process group and its descendants
+     * @param snapshot FlowSnapshot containing the process group
+     * @param groupId ID of the process group
+     * @return the graph, empty if the group is not part of the snapshot
+     */
+    public static ProcessorGraph of(FlowSnapshot snapshot, String groupId) {
+        List<String> pgIds = snapshot.subtree(groupId);
+        Map<String, Integer> index = new HashMap<>();
+        List<String> ids = new ArrayList<>();
+        List<ProcessorNodeEntity> processors = new ArrayList<>();
+        for (String pgId : pgIds) {
+            for (ProcessorNodeEntity p : snapshot.getProcessorsByGroup().getOrDefault(pgId, Collections.emptyList())) {
+                Integer existing = index.putIfAbsent(p.getId(), ids.size());
+                if (existing != null) {
+                    processors.set(existing, p);
+                    continue;
+                }
+                ids.add(p.getId());
+                processors.add(p);
+            }
+        }
+
+        int edges = 0;
+        for (String pgId : pgIds) {
+            edges += snapshot.getConnectionsByGroup().getOrDefault(pgId, Collections.emptyList()).size();
+        }
+        int[] source = new int[edges];
+        int[] target = new int[edges];
+        String[] connection = new String[edges];
+        int[] queued = new int[edges];
+        int e = 0;
+        for (String pgId : pgIds) {
+            for (ConnectionEntity c : snapshot.getConnectionsByGroup().getOrDefault(pgId, Collections.emptyList())) {
+                source[e] = vertex(c.getSourceId(), index, ids, processors);
+                target[e] = vertex(c.getDestinationId(), index, ids, processors);
+                connection[e] = c.getId();
+                queued[e] = c.getQueuedCount();
+                e++;
+            }
+        }
+
+        // counting sort of the edges by source vertex, keeping their order within a source
+        int n = ids.size();
+        int[] edgeStart = new int[n + 1];
+        for (int i = 0; i < edges; i++) edgeStart[source[i] + 1]++;
+        for (int v = 0; v < n; v++) edgeStart[v + 1] += edgeStart[v];
+        int[] next = new int[n];
+        System.arraycopy(edgeStart, 0, next, 0, n);
+        int[] edgeTarget = new int[edges];
+        String[] edgeConnection = new String[edges];
+        int[] edgeQueued = new int[edges];
+        for (int i = 0; i < edges; i++) {
+            int slot = next[source[i]]++;
+            edgeTarget[slot] = target[i];
+            edgeConnection[slot] = connection[i];
+            edgeQueued[slot] = queued[i];
+        }
+        return new ProcessorGraph(ids.toArray(new String[0]), processors.toArray(new ProcessorNodeEntity[0]),
+                edgeStart, edgeTarget, edgeConnection, edgeQueued);
+    }
+
+    /**
+     * Method to copy the graph with the queued flow files of a later status refresh, sharing its structure
+     * @param queuedByConnection flow files queued by connection ID; connections missing from it count as empty
+     * @return the graph with the new queue counts
+     */
+    public ProcessorGraph withQueued(Map<String, Integer> queuedByConnection) {
+        int[] queued = new int[edgeConnection.length];
+        for (int e = 0; e < queued.length; e++) queued[e] = queuedByConnection.getOrDefault(edgeConnection[e], 0);
+        return new ProcessorGraph(ids, processors, edgeStart, edgeTarget, edgeConnection, queued);
+    }
+
+    private static int vertex(String id, Map<String, Integer> index, List<String> ids, List<ProcessorNodeEntity> processors) {
+        Integer v = index.get(id);
+        if (v != null) return v;
+        index.put(id, ids.size());
+        ids.add(id);
+        processors.add(null);
+        return ids.size() - 1;
+    }
+
+    /**
+     * @return number of vertices, processors and placeholders
+     */
+    public int size() {
+        return ids.length;
+    }
+
+    public int edgeCount() {
+        return edgeTarget.length;
+    }
+
+    /**
+     * Method to hash the structure of the graph: its vertex ids and the source and destination ids of its connections.
+     * The hash does not depend on the order of the vertices and connections, which varies with the order in which
+     * the crawl completes, nor on the queued flow files.
+     * @return the same value for two crawls of an unchanged flow
+     */
+    public long fingerprint() {
+        long hash = ids.length * 0x9E3779B97F4A7C15L;
+        for (int v = 0; v < ids.length; v++) {
+            long vertex = mix(ids[v].hashCode());
+            hash += vertex;
+            for (int e = edgeStart[v]; e < edgeStart[v + 1]; e++) {
+                hash += mix(vertex * 31 + ids[edgeTarget[e]].hashCode());
+            }
+        }
+        return hash;
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    public String id(int v) {
+        return ids[v];
+    }
+
+    /**
+     * @return the processor of a vertex, null for a placeholder of a port or funnel
+     */
+    public ProcessorNodeEntity processor(int v) {
+        return processors[v];
+    }
+
+    int edgeStart(int v) {
+        return edgeStart[v];
+    }
+
+    int edgeEnd(int v) {
+        return edgeStart[v + 1];
+    }
+
+    int target(int edge) {
+        return edgeTarget[edge];
+    }
+
+    /**
+     * @return flow files queued in the connection of an edge
+     */
+    int queued(int edge) {
+        return edgeQueued[edge];
+    }
+}
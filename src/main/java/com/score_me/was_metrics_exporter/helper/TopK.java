@@ -0,0 +1,55 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * The k items with the highest value out of a stream in which every item appears once, kept in a min-heap of k entries:
+ * an item only enters the heap by pushing out the lowest of the current k, so memory stays fixed whatever the length
+ * of the stream and each offer costs O(log k).
+ */
+public final class TopK {
+
+    /**
+     * An item of a ranking
+     * @param id ID of the processor
+     * @param name name of the processor
+     * @param value value it is ranked by
+     */
+    public record Entry(String id, String name, double value) {
+    }
+
+    static final Comparator<Entry> BY_VALUE = Comparator.comparingDouble(Entry::value);
+
+    private final int k;
+    private final PriorityQueue<Entry> heap;
+
+    public TopK(int k) {
+        this.k = Math.max(0, k);
+        this.heap = new PriorityQueue<>(this.k + 1, BY_VALUE);
+    }
+
+    /**
+     * Method to offer an item; items with a value of 0 or less are never ranked
+     */
+    public void offer(String id, String name, double value) {
+        if (k == 0 || !(value > 0)) return;
+        if (heap.size() < k) {
+            heap.add(new Entry(id, name, value));
+        } else if (value > heap.peek().value()) {
+            heap.poll();
+            heap.add(new Entry(id, name, value));
+        }
+    }
+
+    /**
+     * @return the ranked items, highest value first
+     */
+    public List<Entry> top() {
+        List<Entry> top = new ArrayList<>(heap);
+        top.sort(BY_VALUE.reversed());
+        return top;
+    }
+}
@@ -0,0 +1,173 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Scheduler that refreshes each {@link MetricFamily} on its own cadence.
+ * After every run the interval of the family is adapted:
+ * <ul>
+ *     <li>halved when the family's values changed, and grown by half when they did not</li>
+ *     <li>doubled when the run failed</li>
+ *     <li>never below 'monitor.scheduler.latency-factor' times the smoothed duration of the family's runs,
+ *     so a slow WAS API is polled less often</li>
+ *     <li>clamped to the family's min/max interval</li>
+ * </ul>
+ * The next run is scheduled only after the previous one completed, so runs of the same family never overlap,
+ * and each delay is randomised by +/- 'monitor.scheduler.jitter' to avoid synchronised bursts.
+ * How late each run starts compared to its planned start is published as the poll_scheduler_lag timer.
+ * <p>
+ * Each family has its own scheduler task. With 'spring.threads.virtual.enabled' a single platform thread only times
+ * the runs and each run gets a virtual thread of its own; otherwise runs use a pool thread per family.
+ * Replaces the fixed-delay poller; disabled when 'monitor.collection-mode' is 'scrape', see {@link ScrapeCollector}.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "monitor.collection-mode", havingValue = "poll", matchIfMissing = true)
+public class AdaptivePollScheduler {
+
+    private static final double SPEED_UP = 0.5;
+    private static final double BACK_OFF = 1.5;
+    private static final double LATENCY_SMOOTHING = 0.3;
+
+    private final MetricsService metricsService;
+    private final double jitter;
+    private final double latencyFactor;
+    private final Map<MetricFamily, FamilyState> states = new EnumMap<>(MetricFamily.class);
+    private final ScheduledExecutorService executor;
+    private final ExecutorService runner;
+
+    public AdaptivePollScheduler(MetricsService metricsService, MeterRegistry registry, Environment environment,
+                                 @Value("${monitor.scheduler.jitter:0.1}") double jitter,
+                                 @Value("${monitor.scheduler.latency-factor:4}") double latencyFactor,
+                                 @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        this.metricsService = metricsService;
+        this.jitter = Math.max(0.0, Math.min(jitter, 1.0));
+        this.latencyFactor = latencyFactor;
+
+        for (MetricFamily family : MetricFamily.values()) {
+            String prefix = "monitor.scheduler." + family.getKey();
+            long min = environment.getProperty(prefix + ".min-interval-ms", Long.class, family.getDefaultMinIntervalMs());
+            long max = environment.getProperty(prefix + ".max-interval-ms", Long.class, family.getDefaultMaxIntervalMs());
+            FamilyState state = new FamilyState(family, Math.max(1L, min), Math.max(min, max),
+                    Timer.builder("poll_scheduler_lag")
+                            .description("Delay between the planned and the actual start of a refresh of the metric family")
+                            .tag("family", family.getKey())
+                            .register(registry));
+            states.put(family, state);
+            Gauge.builder("poll_interval_ms", state, s -> s.intervalMs)
+                    .description("Current refresh interval of the metric family")
+                    .tag("family", family.getKey())
+                    .register(registry);
+        }
+
+        AtomicInteger threads = new AtomicInteger();
+        this.executor = Executors.newScheduledThreadPool(virtualThreads ? 1 : states.size(), r -> {
+            Thread t = new Thread(r, "poll-" + threads.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        this.runner = virtualThreads
+                ? Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("poll-virtual-", 0).factory())
+                : null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        states.values().forEach(s -> {
+            log.info("Polling {} every {}-{} ms", s.family.getKey(), s.minIntervalMs, s.maxIntervalMs);
+            // stagger the first runs so the families do not hit the API at the same instant
+            schedule(s, (long) (s.minIntervalMs * jitter * ThreadLocalRandom.current().nextDouble()));
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        executor.shutdownNow();
+        if (runner != null) runner.shutdownNow();
+    }
+
+    private void schedule(FamilyState state, long delayMs) {
+        if (executor.isShutdown()) return;
+        long plannedNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delayMs);
+        Runnable run = () -> run(state, plannedNanos);
+        executor.schedule(runner == null ? run : () -> runner.execute(run), delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void run(FamilyState state, long plannedNanos) {
+        long start = System.nanoTime();
+        state.lag.record(Math.max(0L, start - plannedNanos), TimeUnit.NANOSECONDS);
+        boolean changed = false;
+        boolean failed = false;
+        try {
+            changed = metricsService.refresh(state.family);
+        } catch (DeadlineExceededException e) {
+            // already reported by MetricsService, which keeps the family's last values
+            failed = true;
+        } catch (Exception e) {
+            failed = true;
+            log.error("Polling error ({}): {}", state.family.getKey(), e.getMessage(), e);
+        }
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        schedule(state, nextDelay(state, tookMs, changed, failed));
+    }
+
+    /**
+     * Method to adapt the interval of a family after a run
+     * @param state family state, updated in place
+     * @param tookMs duration of the run
+     * @param changed whether the family's values changed
+     * @param failed whether the run failed
+     * @return delay before the next run, with jitter applied
+     */
+    private long nextDelay(FamilyState state, long tookMs, boolean changed, boolean failed) {
+        state.latencyMs = state.latencyMs < 0 ? tookMs
+                : LATENCY_SMOOTHING * tookMs + (1 - LATENCY_SMOOTHING) * state.latencyMs;
+
+        double interval = state.intervalMs * (failed ? 2.0 : changed ? SPEED_UP : BACK_OFF);
+        interval = Math.max(interval, latencyFactor * state.latencyMs);
+        state.intervalMs = Math.max(state.minIntervalMs, Math.min(state.maxIntervalMs, Math.round(interval)));
+
+        double factor = 1 + jitter * (2 * ThreadLocalRandom.current().nextDouble() - 1);
+        return Math.max(0L, Math.round(state.intervalMs * factor));
+    }
+
+    /**
+     * Cadence of a single family; only touched by the run of that family, which never overlaps itself
+     */
+    private static final class FamilyState {
+        private final MetricFamily family;
+        private final long minIntervalMs;
+        private final long maxIntervalMs;
+        private final Timer lag;
+        private volatile long intervalMs;
+        private double latencyMs = -1;
+
+        private FamilyState(MetricFamily family, long minIntervalMs, long maxIntervalMs, Timer lag) {
+            this.family = family;
+            this.minIntervalMs = minIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+            this.lag = lag;
+            this.intervalMs = minIntervalMs;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.score_me.was_metrics_exporter.service;
 
 import com.score_me.was_metrics_exporter.dto.BulkMetricsDTO;
 import com.score_me.was_metrics_exporter.helper.MethodHelper;
+import com.score_me.was_metrics_exporter.utils.FlightEvents;
 import lombok.AllArgsConstructor;
 import lombok.RequiredArgsConstructor;
 import org.apache.poi.ss.usermodel.*;
@@ -212,9 +213,12 @@ public class BulkExportMetrics {
 
 
     private void saveWorkbook(Workbook workbook, File outputFile) throws IOException {
+        FlightEvents.ExportWrite event = new FlightEvents.ExportWrite();
+        event.begin();
         try (FileOutputStream fos = new FileOutputStream(outputFile)) {
             workbook.write(fos);
         }
+        event.finish(outputFile.getPath(), workbook.getSheetAt(0).getLastRowNum(), outputFile.length());
     }
 
     private InputStream getMetricsFile(String location) throws IOException {
@@ -0,0 +1,155 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import com.score_me.was_metrics_exporter.helper.Betweenness;
+import com.score_me.was_metrics_exporter.helper.ProcessorGraph;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Service that ranks the processors of the flow by betweenness centrality, the fraction of shortest paths between
+ * other processors that pass through them: the structural chokepoints, where a slowdown holds up the most paths.
+ * <p>
+ * {@link MetricsService} hands it every crawled snapshot; the ranking is computed on its own thread, with the searches
+ * split across the common fork-join pool, and only when the structure of the processor graph changed. Snapshots
+ * arriving while a ranking is computed replace each other, so only the latest one is ranked next.
+ * Graphs of more than 'monitor.centrality.exact-max-processors' processors are ranked from 'monitor.centrality.samples'
+ * randomly drawn sources rather than all of them.
+ * The 'monitor.centrality.top-k' highest processors are published as the flow_processor_betweenness gauge, tagged
+ * with their rank, ID and name; the series of processors that leave the ranking are removed, so there are never more
+ * than top-k series whatever the size of the flow.
+ */
+@Slf4j
+@Service
+public class CentralityService {
+
+    private final MultiGauge betweenness;
+    private final Timer duration;
+
+    @Value("${monitor.centrality.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${monitor.centrality.top-k:10}")
+    private int topK = 10;
+
+    @Value("${monitor.centrality.exact-max-processors:20000}")
+    private int exactMaxProcessors = 20000;
+
+    @Value("${monitor.centrality.samples:1000}")
+    private int samples = 1000;
+
+    private final ExecutorService ranker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "centrality");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final AtomicReference<FlowSnapshot> pending = new AtomicReference<>();
+
+    /**
+     * Fingerprint of the last ranked graph; confined to the ranker thread
+     */
+    private long rankedFingerprint = 0L;
+
+    public CentralityService(MeterRegistry meterRegistry) {
+        this.betweenness = MultiGauge.builder("flow_processor_betweenness")
+                .description("Betweenness centrality of the processors with the highest one, by rank")
+                .register(meterRegistry);
+        this.duration = Timer.builder("centrality_compute")
+                .description("Duration of a betweenness ranking of the processor graph")
+                .register(meterRegistry);
+    }
+
+    @PreDestroy
+    public void stop() {
+        ranker.shutdownNow();
+    }
+
+    /**
+     * Method to rank the processors of a snapshot in the background, if its processor graph changed since the last
+     * ranking. Returns immediately.
+     * @param snapshot crawled snapshot with processors and connections
+     */
+    public void update(FlowSnapshot snapshot) {
+        if (!enabled || snapshot == null) return;
+        if (pending.getAndSet(snapshot) == null) {
+            ranker.execute(this::rankPending);
+        }
+    }
+
+    private void rankPending() {
+        FlowSnapshot snapshot = pending.getAndSet(null);
+        if (snapshot == null) return;
+        try {
+            ProcessorGraph graph = ProcessorGraph.of(snapshot, "root");
+            long fingerprint = graph.fingerprint();
+            if (fingerprint == rankedFingerprint) return;
+            duration.record(() -> publish(graph, rank(graph, fingerprint)));
+            rankedFingerprint = fingerprint;
+        } catch (Exception e) {
+            log.warn("Failed to rank processors by betweenness: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * A processor of the ranking
+     * @param vertex its vertex in the ranked graph
+     * @param score its betweenness
+     */
+    private record Ranked(int vertex, double score) {
+    }
+
+    /**
+     * Method to compute the betweenness of every vertex and select the processors with the highest one
+     * @return the top processors, highest first
+     */
+    private List<Ranked> rank(ProcessorGraph graph, long fingerprint) {
+        long start = System.nanoTime();
+        // searching from every source costs seconds around 'exactMaxProcessors' and grows with the square of the graph
+        int sources = exactMaxProcessors > 0 && graph.size() > exactMaxProcessors && samples > 0
+                ? Math.min(samples, graph.size()) : graph.size();
+        double[] scores = Betweenness.compute(graph, sources, fingerprint, ForkJoinPool.commonPool());
+        // min-heap of the best 'topK' processors seen so far; placeholders of ports and funnels are not ranked
+        PriorityQueue<Ranked> best = new PriorityQueue<>(Comparator.comparingDouble(Ranked::score));
+        for (int v = 0; v < graph.size(); v++) {
+            if (graph.processor(v) == null) continue;
+            if (best.size() < topK) {
+                best.add(new Ranked(v, scores[v]));
+            } else if (scores[v] > best.peek().score()) {
+                best.poll();
+                best.add(new Ranked(v, scores[v]));
+            }
+        }
+        List<Ranked> top = new ArrayList<>(best);
+        top.sort(Comparator.comparingDouble(Ranked::score).reversed());
+        log.info("Ranked {} processors by betweenness from {} sources in {} ms", graph.size(), sources,
+                (System.nanoTime() - start) / 1_000_000);
+        return top;
+    }
+
+    private void publish(ProcessorGraph graph, List<Ranked> top) {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            ProcessorNodeEntity processor = graph.processor(top.get(i).vertex());
+            rows.add(MultiGauge.Row.of(Tags.of("rank", String.valueOf(i + 1), "processor", processor.getId(),
+                    "name", processor.getName()), top.get(i).score()));
+        }
+        betweenness.register(rows, true);
+    }
+}
@@ -0,0 +1,166 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.utils.FlightEvents;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Configuration;
+import jdk.jfr.Event;
+import jdk.jfr.EventSettings;
+import jdk.jfr.Recording;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Manages the JDK Flight Recorder recordings of the exporter, see {@link FlightEvents} for its events.
+ * <ul>
+ *     <li>a continuous recording with the JDK's low-overhead 'default' settings, kept on disk up to
+ *     'monitor.jfr.max-age-ms' and 'monitor.jfr.max-size-mb', in which API calls faster than
+ *     'monitor.jfr.api-call-threshold-ms' are left out so that large crawls stay cheap</li>
+ *     <li>an on-demand recording with the 'profile' settings and every API call, started for at most
+ *     'monitor.jfr.max-duration-ms', e.g. while the exporter is stalling</li>
+ * </ul>
+ * Either can be dumped to a file while it runs; the on-demand recording is preferred when there is one.
+ * Neither records the environment variables, system properties or JVM arguments of the exporter.
+ */
+@Slf4j
+@Service
+public class FlightRecorderService {
+
+    /**
+     * JDK events of the 'default' and 'profile' settings that record the environment, system properties and JVM
+     * arguments, which hold the API credentials
+     */
+    private static final List<String> SENSITIVE_EVENTS = List.of("jdk.InitialEnvironmentVariable",
+            "jdk.InitialSystemProperty", "jdk.JVMInformation");
+
+    private static final List<Class<? extends Event>> EVENTS = List.of(FlightEvents.Refresh.class,
+            FlightEvents.ApiCall.class, FlightEvents.GraphBuild.class, FlightEvents.ExportWrite.class);
+
+    @Value("${monitor.jfr.continuous:true}")
+    private boolean continuous = true;
+
+    @Value("${monitor.jfr.max-age-ms:3600000}")
+    private long maxAgeMs = 3600000;
+
+    @Value("${monitor.jfr.max-size-mb:64}")
+    private long maxSizeMb = 64;
+
+    @Value("${monitor.jfr.api-call-threshold-ms:20}")
+    private long apiCallThresholdMs = 20;
+
+    @Value("${monitor.jfr.max-duration-ms:600000}")
+    private long maxDurationMs = 600000;
+
+    private Recording continuousRecording;
+    private Recording onDemandRecording;
+    private Path lastDump;
+
+    @PostConstruct
+    public void start() {
+        if (!continuous) return;
+        try {
+            continuousRecording = recording("was-metrics-continuous", "default", apiCallThresholdMs);
+            continuousRecording.setToDisk(true);
+            continuousRecording.setMaxAge(Duration.ofMillis(maxAgeMs));
+            continuousRecording.start();
+            log.info("Started continuous flight recording, keeping the last {} ms up to {} MB", maxAgeMs, maxSizeMb);
+        } catch (Exception e) {
+            log.warn("Could not start continuous flight recording: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Method to start an on-demand recording, replacing the previous one
+     * @param durationMs how long to record, capped by 'monitor.jfr.max-duration-ms'
+     * @return name, state and duration of the recording
+     * @throws IOException if the 'profile' settings cannot be read
+     */
+    public synchronized Map<String, Object> startRecording(long durationMs) throws IOException {
+        if (onDemandRecording != null) onDemandRecording.close();
+        long duration = Math.max(1L, Math.min(durationMs, maxDurationMs));
+        onDemandRecording = recording("was-metrics-on-demand", "profile", 0);
+        onDemandRecording.setToDisk(true);
+        onDemandRecording.setDuration(Duration.ofMillis(duration));
+        onDemandRecording.start();
+        log.info("Started on-demand flight recording for {} ms", duration);
+        return describe(onDemandRecording);
+    }
+
+    /**
+     * Method to stop and discard the on-demand recording
+     * @return false if there was none
+     */
+    public synchronized boolean stopRecording() {
+        if (onDemandRecording == null) return false;
+        onDemandRecording.close();
+        onDemandRecording = null;
+        return true;
+    }
+
+    /**
+     * Method to dump the on-demand recording, or the continuous one if there is no on-demand recording, to a
+     * temporary file. The file of the previous dump is deleted.
+     * @return the dump, null if there is no recording
+     * @throws IOException if the dump cannot be written
+     */
+    public synchronized Path dump() throws IOException {
+        Recording recording = onDemandRecording != null ? onDemandRecording : continuousRecording;
+        if (recording == null) return null;
+        if (lastDump != null) Files.deleteIfExists(lastDump);
+        lastDump = Files.createTempFile(recording.getName() + "-", ".jfr");
+        recording.dump(lastDump);
+        log.info("Dumped flight recording {} to {} ({} bytes)", recording.getName(), lastDump, Files.size(lastDump));
+        return lastDump;
+    }
+
+    @PreDestroy
+    public synchronized void stop() throws IOException {
+        if (onDemandRecording != null) onDemandRecording.close();
+        if (continuousRecording != null) continuousRecording.close();
+        if (lastDump != null) Files.deleteIfExists(lastDump);
+    }
+
+    /**
+     * Method to create a recording with the named JDK settings and the exporter's events, without the events that
+     * would put the credentials of the exporter in a dump
+     * @param apiCallThresholdMs API calls shorter than this are not recorded
+     */
+    private Recording recording(String name, String settings, long apiCallThresholdMs) throws IOException {
+        Recording recording;
+        try {
+            recording = new Recording(Configuration.getConfiguration(settings));
+        } catch (ParseException e) {
+            throw new IOException("Invalid JFR settings '" + settings + "': " + e.getMessage(), e);
+        }
+        recording.setName(name);
+        recording.setMaxSize(maxSizeMb * 1024 * 1024);
+        for (String event : SENSITIVE_EVENTS) {
+            recording.disable(event);
+        }
+        for (Class<? extends Event> event : EVENTS) {
+            EventSettings enabled = recording.enable(event);
+            if (event == FlightEvents.ApiCall.class) enabled.withThreshold(Duration.ofMillis(apiCallThresholdMs));
+        }
+        return recording;
+    }
+
+    private static Map<String, Object> describe(Recording recording) {
+        Map<String, Object> description = new LinkedHashMap<>();
+        description.put("name", recording.getName());
+        description.put("state", recording.getState().name());
+        description.put("startTime", recording.getStartTime());
+        description.put("durationMs", recording.getDuration() == null ? null : recording.getDuration().toMillis());
+        description.put("sizeBytes", recording.getSize());
+        return description;
+    }
+}
@@ -0,0 +1,240 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.helper.MethodHelper;
+import com.score_me.was_metrics_exporter.utils.Deadline;
+import com.score_me.was_metrics_exporter.utils.FlowSnapshotFile;
+import jakarta.annotation.PreDestroy;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Service that owns the latest {@link FlowSnapshot} of the whole flow.
+ * Each published snapshot gets a new generation number. Readers reuse the current snapshot while it is
+ * younger than 'monitor.pg-cache.max-staleness-ms'; concurrent readers of a stale snapshot share a single crawl.
+ * The {@link AdaptivePollScheduler} refreshes it with every topology refresh, so endpoint lookups normally add no load on the API.
+ * <p>
+ * Snapshots holding the whole structure of the flow are saved to 'monitor.warm-start.file' at most every
+ * 'monitor.warm-start.save-interval-ms' and on shutdown.
+ * On startup the saved snapshot is loaded, so structure metrics can be published before the first crawl, and a crawl
+ * is started in the background once the application is ready to reconcile it with the live flow.
+ */
+@Slf4j
+@Service
+public class FlowSnapshotService {
+
+    private final MethodHelper methodHelper;
+    private final FlowApiClient client;
+    private final Scheduler blockingScheduler;
+    private static final Set<FlowResource> ALL = Collections.unmodifiableSet(EnumSet.allOf(FlowResource.class));
+    // a warm start only restores structure metrics; back pressure belongs to the status family
+    private static final Set<FlowResource> STRUCTURE = Collections.unmodifiableSet(
+            EnumSet.complementOf(EnumSet.of(FlowResource.BACK_PRESSURE)));
+    private final AtomicLong generations = new AtomicLong();
+
+    @Value("${monitor.pg-cache.max-staleness-ms:5000}")
+    private long maxStalenessMs = 5000;
+
+    @Value("${monitor.warm-start.save-interval-ms:60000}")
+    private long saveIntervalMs = 60000;
+
+    private volatile FlowSnapshot current;
+    private final Map<Set<FlowResource>, Mono<FlowSnapshot>> inFlight = new HashMap<>();
+
+    private final Path warmStartFile;
+    @Getter
+    private final FlowSnapshot warmStart;
+    private final Object saveLock = new Object();
+    private volatile long lastSavedMillis = 0L;
+
+    public FlowSnapshotService(MethodHelper methodHelper, FlowApiClient client, Scheduler blockingScheduler,
+                               @Value("${monitor.warm-start.file:flow-snapshot.bin}") String warmStartFile) {
+        this.methodHelper = methodHelper;
+        this.client = client;
+        this.blockingScheduler = blockingScheduler;
+        this.warmStartFile = warmStartFile == null || warmStartFile.isBlank() ? null : Path.of(warmStartFile);
+        this.warmStart = loadWarmStart();
+        if (warmStart != null) publish(warmStart);
+    }
+
+    private FlowSnapshot loadWarmStart() {
+        if (warmStartFile == null || !Files.exists(warmStartFile)) return null;
+        try {
+            long start = System.nanoTime();
+            FlowSnapshot snapshot = FlowSnapshotFile.read(warmStartFile);
+            log.info("Loaded warm-start flow snapshot from {} in {} ms: {} process groups, captured {} s ago",
+                    warmStartFile.toAbsolutePath(), (System.nanoTime() - start) / 1_000_000,
+                    snapshot.getProcessGroups().size(), snapshot.ageMillis() / 1000);
+            return snapshot;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Ignoring warm-start flow snapshot {}: {}", warmStartFile, e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Method to crawl the live flow in the background when the service started from a saved snapshot,
+     * replacing it and logging how far it was from the live flow
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void reconcile() {
+        if (warmStart == null) return;
+        refreshAsync(STRUCTURE).subscribe(
+                live -> log.info("Reconciled warm-start flow snapshot with the live flow: process groups {} -> {}, processors {} -> {}, connections {} -> {}",
+                        warmStart.getProcessGroups().size(), live.getProcessGroups().size(),
+                        count(warmStart.getProcessorsByGroup()), count(live.getProcessorsByGroup()),
+                        count(warmStart.getConnectionsByGroup()), count(live.getConnectionsByGroup())),
+                e -> log.warn("Could not reconcile warm-start flow snapshot, keeping it until the next crawl: {}", e.getMessage()));
+    }
+
+    private static int count(Map<String, ? extends List<?>> byGroup) {
+        return byGroup.values().stream().mapToInt(List::size).sum();
+    }
+
+    @PreDestroy
+    public void stop() {
+        FlowSnapshot snapshot = current;
+        if (warmStartFile != null && snapshot != null && snapshot != warmStart && snapshot.has(STRUCTURE)
+                && snapshot.getCapturedAt().toEpochMilli() > lastSavedMillis) {
+            save(snapshot);
+        }
+    }
+
+    /**
+     * @return Mono emitting the current full snapshot, crawling a new one first if it is missing or too old
+     */
+    public Mono<FlowSnapshot> current() {
+        return current(ALL);
+    }
+
+    /**
+     * Method to get a snapshot containing at least the specified resources.
+     * The current snapshot is reused when it is fresh enough and has them; otherwise only the
+     * requested resources are crawled.
+     * @param required resources the caller needs, see {@link com.score_me.was_metrics_exporter.helper.FlowMetric#plan}
+     * @return Mono emitting the snapshot
+     */
+    public Mono<FlowSnapshot> current(Set<FlowResource> required) {
+        return Mono.defer(() -> {
+            FlowSnapshot snapshot = current;
+            if (snapshot != null && snapshot.ageMillis() <= maxStalenessMs && snapshot.has(required)) {
+                return Mono.just(snapshot);
+            }
+            return refreshAsync(required);
+        });
+    }
+
+    /**
+     * Blocking variant of {@link #current()}
+     */
+    public FlowSnapshot currentBlocking() throws IOException {
+        return block(current());
+    }
+
+    /**
+     * Blocking variant of {@link #current(Set)}
+     */
+    public FlowSnapshot currentBlocking(Set<FlowResource> required) throws IOException {
+        return block(current(required));
+    }
+
+    /**
+     * Crawls and publishes a new full snapshot regardless of the age of the current one.
+     * Joins the full crawl already in flight, if any.
+     */
+    public FlowSnapshot refresh() throws IOException {
+        return block(refreshAsync(ALL));
+    }
+
+    /**
+     * Variant of {@link #refresh()} crawling only the specified resources, bounded by a deadline.
+     * The shared crawl is bounded by the deadline of the caller that started it.
+     * @param required resources the caller needs, see {@link com.score_me.was_metrics_exporter.helper.FlowMetric#plan}
+     * @throws com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException if the crawl did not complete in time
+     */
+    public FlowSnapshot refresh(Set<FlowResource> required, Deadline deadline) throws IOException {
+        return block(deadline.bound(refreshAsync(required), "flow crawl"));
+    }
+
+    /**
+     * Crawls the specified resources, joining any in-flight crawl that covers them.
+     * The crawl is shared by every caller: it goes on while any of them is subscribed and is cancelled when the last
+     * one goes away, like the crawl of a single reactive request whose client disconnects. Callers joining after it
+     * completed get its result.
+     * The result replaces the current snapshot unless that one is still fresh and holds resources the new one lacks,
+     * so a narrow lookup never evicts the poller's full snapshot.
+     */
+    public synchronized Mono<FlowSnapshot> refreshAsync(Set<FlowResource> required) {
+        for (Map.Entry<Set<FlowResource>, Mono<FlowSnapshot>> e : inFlight.entrySet()) {
+            if (e.getKey().containsAll(required)) return e.getValue();
+        }
+        Set<FlowResource> resources = Collections.unmodifiableSet(EnumSet.copyOf(required));
+        Mono<FlowSnapshot> crawl = methodHelper.captureSnapshotAsync(client, "root", resources)
+                .doOnNext(this::publish)
+                .doFinally(signal -> clearInFlight(resources))
+                .share();
+        inFlight.put(resources, crawl);
+        return crawl;
+    }
+
+    public FlowSnapshot peek() {
+        return current;
+    }
+
+    private synchronized void publish(FlowSnapshot snapshot) {
+        snapshot.setGeneration(generations.incrementAndGet());
+        FlowSnapshot previous = current;
+        boolean narrower = previous != null && !snapshot.has(previous.getResources());
+        if (!narrower || previous.ageMillis() > maxStalenessMs) {
+            current = snapshot;
+        }
+        if (warmStartFile != null && snapshot != warmStart && snapshot.has(STRUCTURE)
+                && System.currentTimeMillis() - lastSavedMillis >= saveIntervalMs) {
+            lastSavedMillis = System.currentTimeMillis();
+            blockingScheduler.schedule(() -> save(snapshot));
+        }
+        log.debug("Captured flow snapshot generation {} ({} process groups, resources {})",
+                snapshot.getGeneration(), snapshot.getProcessGroups().size(), snapshot.getResources());
+    }
+
+    private void save(FlowSnapshot snapshot) {
+        synchronized (saveLock) {
+            try {
+                FlowSnapshotFile.write(snapshot, warmStartFile);
+                lastSavedMillis = Math.max(lastSavedMillis, snapshot.getCapturedAt().toEpochMilli());
+                log.debug("Saved flow snapshot generation {} to {}", snapshot.getGeneration(), warmStartFile);
+            } catch (IOException e) {
+                log.warn("Failed to save flow snapshot to {}: {}", warmStartFile, e.getMessage());
+            }
+        }
+    }
+
+    private synchronized void clearInFlight(Set<FlowResource> resources) {
+        inFlight.remove(resources);
+    }
+
+    private static FlowSnapshot block(Mono<FlowSnapshot> mono) throws IOException {
+        try {
+            return mono.block();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw e;
+        }
+    }
+}
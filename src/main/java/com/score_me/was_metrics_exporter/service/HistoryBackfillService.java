@@ -0,0 +1,134 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import com.score_me.was_metrics_exporter.utils.Deadline;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
+
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Seeds the heap window of {@link MetricsService} on startup from the node status history of the WAS API
+ * ('monitor.backfill.endpoint', /controller/status/history by default), so the heap growth regression and the
+ * heap average have enough samples from the first scrape instead of after hours of polling.
+ * <p>
+ * The backfill runs in the background once the application is ready, concurrently with the first live refreshes,
+ * and is merged by the metrics writer thread in timestamp order. The CPU usage of the node, its processor load
+ * average divided by the available processors reported by /system-diagnostics, goes to a history series of its own:
+ * the live CPU series measures the host of the exporter, which need not be the node.
+ */
+@Slf4j
+@Service
+public class HistoryBackfillService {
+
+    private final FlowApiClient client;
+    private final MetricsService metricsService;
+    private final Scheduler blockingScheduler;
+
+    @Value("${monitor.backfill.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${monitor.backfill.endpoint:/controller/status/history}")
+    private String endpoint = "/controller/status/history";
+
+    @Value("${monitor.backfill.heap-field:usedHeap}")
+    private String heapField = "usedHeap";
+
+    @Value("${monitor.backfill.cpu-field:processorLoadAverage}")
+    private String cpuField = "processorLoadAverage";
+
+    @Value("${monitor.backfill.timeout-ms:30000}")
+    private long timeoutMs = 30000;
+
+    public HistoryBackfillService(FlowApiClient client, MetricsService metricsService, Scheduler blockingScheduler) {
+        this.client = client;
+        this.metricsService = metricsService;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        Mono.fromRunnable(this::backfill)
+                .subscribeOn(blockingScheduler)
+                .subscribe(null, e -> log.warn("Backfill from {} failed, windows fill from live samples only: {}",
+                        endpoint, e.getMessage()));
+    }
+
+    /**
+     * Method to fetch the status history and merge it into the sample windows
+     */
+    public void backfill() {
+        long start = System.currentTimeMillis();
+        Deadline deadline = Deadline.after(timeoutMs);
+        JsonNode response = client.get(endpoint, deadline);
+        JsonNode snapshots = response == null ? null : response.path("statusHistory").path("aggregateSnapshots");
+        if (snapshots == null || !snapshots.isArray() || snapshots.isEmpty()) {
+            log.info("No status history returned by {}, nothing to backfill", endpoint);
+            return;
+        }
+
+        SortedMap<Long, Double> heap = new TreeMap<>();
+        SortedMap<Long, Double> cpu = new TreeMap<>();
+        double cores = cpuField.isBlank() ? 0 : availableProcessors(deadline);
+        for (JsonNode snapshot : snapshots) {
+            Long timestamp = timestampOf(snapshot.get("timestamp"));
+            JsonNode metrics = snapshot.get("statusMetrics");
+            if (timestamp == null || metrics == null) continue;
+            if (metrics.hasNonNull(heapField)) {
+                heap.put(timestamp, metrics.get(heapField).asDouble());
+            }
+            if (cores > 0 && metrics.hasNonNull(cpuField)) {
+                double pct = metrics.get(cpuField).asDouble() / cores * 100.0;
+                cpu.put(timestamp, Math.max(0.0, Math.min(pct, 100.0)));
+            }
+        }
+        try {
+            metricsService.backfill(heap, cpu);
+        } catch (Exception e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        log.info("Backfill from {} took {} ms: {} heap and {} node CPU samples fetched",
+                endpoint, System.currentTimeMillis() - start, heap.size(), cpu.size());
+    }
+
+    /**
+     * @return available processors of the node from /system-diagnostics, 0 if it did not report them
+     */
+    private double availableProcessors(Deadline deadline) {
+        try {
+            JsonNode diag = client.get("/system-diagnostics", deadline);
+            JsonNode cores = diag == null ? null : diag.path("systemDiagnostics").path("aggregateSnapshot").get("availableProcessors");
+            if (cores != null && cores.isNumber()) return cores.asDouble();
+            log.info("/system-diagnostics did not report the available processors, node CPU is not backfilled");
+        } catch (DeadlineExceededException e) {
+            throw e;
+        } catch (Exception e) {
+            log.warn("Failed to read the available processors, node CPU is not backfilled: {}", e.getMessage());
+        }
+        return 0;
+    }
+
+    /**
+     * @return epoch millis of a status snapshot timestamp, given as a number or an ISO-8601 instant, null otherwise
+     */
+    private static Long timestampOf(JsonNode node) {
+        if (node == null || node.isNull()) return null;
+        if (node.isNumber()) return node.asLong();
+        try {
+            return Instant.parse(node.asText()).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
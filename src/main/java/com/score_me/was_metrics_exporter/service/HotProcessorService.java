@@ -0,0 +1,80 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.helper.HotProcessors;
+import com.score_me.was_metrics_exporter.helper.TopK;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.MultiGauge;
+import io.micrometer.core.instrument.Tags;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Service that publishes the processors using the most of the flow, as collected by {@link HotProcessors} from the
+ * status response of every status refresh:
+ * <ul>
+ *     <li>flow_hot_processor_threads: active threads</li>
+ *     <li>flow_hot_processor_task_seconds: time spent running tasks over the API's 5 minute status window</li>
+ *     <li>flow_hot_processor_queued: flow files queued in the incoming connections</li>
+ * </ul>
+ * Each gauge has one series per ranked processor, tagged with its rank, ID and name, for the 'monitor.hot-processors.top-k'
+ * processors only; the series of processors that leave a ranking are removed.
+ */
+@Service
+public class HotProcessorService {
+
+    private final MultiGauge threads;
+    private final MultiGauge taskSeconds;
+    private final MultiGauge queued;
+
+    @Value("${monitor.hot-processors.enabled:true}")
+    private boolean enabled = true;
+
+    @Value("${monitor.hot-processors.top-k:10}")
+    private int topK = 10;
+
+    public HotProcessorService(MeterRegistry registry) {
+        this.threads = MultiGauge.builder("flow_hot_processor_threads")
+                .description("Active threads of the processors with the most, by rank")
+                .register(registry);
+        this.taskSeconds = MultiGauge.builder("flow_hot_processor_task_seconds")
+                .description("Task duration over the last 5 minutes of the processors with the most, by rank")
+                .baseUnit("seconds")
+                .register(registry);
+        this.queued = MultiGauge.builder("flow_hot_processor_queued")
+                .description("Flow files queued in front of the processors with the most, by rank")
+                .register(registry);
+    }
+
+    /**
+     * @return empty heavy hitters for the next status refresh, null if the rankings are disabled
+     */
+    public HotProcessors tracker() {
+        return enabled ? new HotProcessors(topK) : null;
+    }
+
+    /**
+     * Method to publish the rankings of a completed status refresh, replacing those of the previous one.
+     * Called by the metrics writer thread once the whole status family was fetched.
+     * @param hot heavy hitters fed by the refresh, ignored if null
+     */
+    public void publish(HotProcessors hot) {
+        if (hot == null) return;
+        threads.register(rows(hot.getThreads().top(), TopK.Entry::value), true);
+        taskSeconds.register(rows(hot.getTaskNanos().top(), e -> e.value() / 1e9), true);
+        queued.register(rows(hot.getQueued().top(), TopK.Entry::value), true);
+    }
+
+    private static List<MultiGauge.Row<?>> rows(List<TopK.Entry> top, ToDoubleFunction<TopK.Entry> value) {
+        List<MultiGauge.Row<?>> rows = new ArrayList<>(top.size());
+        for (int i = 0; i < top.size(); i++) {
+            TopK.Entry entry = top.get(i);
+            rows.add(MultiGauge.Row.of(Tags.of("rank", String.valueOf(i + 1), "processor", entry.id(), "name", entry.name()),
+                    value.applyAsDouble(entry)));
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,40 @@
+package com.score_me.was_metrics_exporter.service;
+
+import lombok.Getter;
+
+import java.util.Set;
+
+/**
+ * Groups of gauges that change at different rates and are refreshed independently by {@link MetricsService}.
+ * <ul>
+ *     <li>TOPOLOGY: process group hierarchy, processor graph and ports, from a crawl of the flow's structure</li>
+ *     <li>STATUS: active threads, queue back pressure and the queued flow files of the critical path, from the status
+ *     endpoints and the processor graph of the latest crawl</li>
+ *     <li>DIAGNOSTICS: heap from the system diagnostics endpoint and local CPU usage</li>
+ * </ul>
+ * The default intervals bound the cadence chosen by {@link AdaptivePollScheduler} and can be overridden
+ * with 'monitor.scheduler.&lt;key&gt;.min-interval-ms' and 'monitor.scheduler.&lt;key&gt;.max-interval-ms'.
+ */
+@Getter
+public enum MetricFamily {
+    TOPOLOGY("topology", 5000, 60000, "processorCount", "maxPathDepth", "avgF", "ipd", "scriptedPctVal",
+            "inputPortCount", "outputPortCount", "processorCountFinal", "cycleCount", "largestCycle", "longestPath"),
+    STATUS("status", 1000, 5000, "activeThreads", "qbpPctVal", "criticalPathQueued"),
+    DIAGNOSTICS("diagnostics", 1000, 10000, "heapUsedMb", "heapMaxMb", "heapGrowthMbPerMin",
+            "windowAvgCpuUsage", "instantaneousCpuUsage", "SpikeRecoveryTimeMs", "SpikeRecoveryTimeSec");
+
+    private final String key;
+    private final long defaultMinIntervalMs;
+    private final long defaultMaxIntervalMs;
+    /**
+     * Names of the values a refresh of the family observes, as in {@link com.score_me.was_metrics_exporter.entities.MetricsSnapshot#toMap()}
+     */
+    private final Set<String> metricKeys;
+
+    MetricFamily(String key, long defaultMinIntervalMs, long defaultMaxIntervalMs, String... metricKeys) {
+        this.key = key;
+        this.defaultMinIntervalMs = defaultMinIntervalMs;
+        this.defaultMaxIntervalMs = defaultMaxIntervalMs;
+        this.metricKeys = Set.of(metricKeys);
+    }
+}
@@ -0,0 +1,369 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.dto.HistoryRangeDTO;
+import com.score_me.was_metrics_exporter.dto.HistorySeriesDTO;
+import com.score_me.was_metrics_exporter.dto.RollupRangeDTO;
+import com.score_me.was_metrics_exporter.utils.GorillaBlock;
+import com.score_me.was_metrics_exporter.utils.RollupTier;
+import com.score_me.was_metrics_exporter.utils.SampleRingFile;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-process history of every value published by {@link MetricsService}.
+ * Each metric is a series of {@link GorillaBlock}s covering 'monitor.history.block-ms' each; blocks older than
+ * 'monitor.history.retention-ms' are dropped. A range query only decodes the blocks overlapping the range.
+ * <p>
+ * Every sample is also added to the {@link RollupTier}s configured by 'monitor.history.rollups'
+ * (resolution-ms:buckets pairs, 10s/1m/1h by default, each resolution a multiple of the finer ones), so long-range
+ * queries and window averages read a few pre-aggregated buckets instead of raw samples.
+ * <p>
+ * Samples are also appended to the memory-mapped {@link SampleRingFile} 'monitor.history.file' (disabled when empty).
+ * On startup the ring is replayed into the blocks and tiers, so history, window averages and the state
+ * {@link MetricsService} derives from them survive a restart.
+ * Samples are recorded by the metrics writer thread only; queries can run on any thread.
+ */
+@Slf4j
+@Service
+public class MetricHistoryService {
+
+    private final long retentionMs;
+    private final long blockMs;
+    // resolution and bucket count of each rollup tier, finest first
+    private final long[][] tierSpecs;
+    private final Map<String, Series> series = new ConcurrentHashMap<>();
+    private final SampleRingFile ring;
+
+    public MetricHistoryService(@Value("${monitor.history.retention-ms:86400000}") long retentionMs,
+                                @Value("${monitor.history.block-ms:600000}") long blockMs,
+                                @Value("${monitor.history.rollups:10000:8640,60000:10080,3600000:720}") String rollups,
+                                @Value("${monitor.history.file:metrics-history.ring}") String file,
+                                @Value("${monitor.history.file-capacity:1048576}") int fileCapacity) {
+        this.retentionMs = retentionMs;
+        // deltas inside a block must fit the 32-bit delta-of-delta encoding
+        this.blockMs = Math.max(1000L, Math.min(blockMs, Integer.MAX_VALUE / 2));
+        this.tierSpecs = parseTiers(rollups);
+        log.info("Keeping {} ms of metric history in blocks of {} ms, rollup tiers (resolution ms, buckets): {}",
+                this.retentionMs, this.blockMs, Arrays.deepToString(tierSpecs));
+        this.ring = openRing(file, fileCapacity);
+    }
+
+    private SampleRingFile openRing(String file, int capacity) {
+        if (file == null || file.isBlank()) return null;
+        try {
+            long start = System.nanoTime();
+            SampleRingFile opened = SampleRingFile.open(Path.of(file), capacity);
+            long horizon = System.currentTimeMillis() - retentionMs;
+            long[] restored = {0L};
+            opened.replay((metric, timestamp, value) -> {
+                if (timestamp < horizon) return;
+                series.computeIfAbsent(metric, n -> new Series()).append(timestamp, value);
+                restored[0]++;
+            });
+            log.info("Restored {} samples of {} metrics from {} in {} ms", restored[0], series.size(),
+                    opened.getPath().toAbsolutePath(), (System.nanoTime() - start) / 1_000_000);
+            return opened;
+        } catch (IOException | RuntimeException e) {
+            log.warn("Could not map history file {}, history will not survive a restart: {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        if (ring == null) return;
+        try {
+            ring.close();
+        } catch (IOException e) {
+            log.warn("Failed to close history file {}: {}", ring.getPath(), e.getMessage());
+        }
+    }
+
+    private static long[][] parseTiers(String rollups) {
+        List<long[]> tiers = new ArrayList<>();
+        for (String tier : rollups.split(",")) {
+            if (tier.isBlank()) continue;
+            String[] parts = tier.trim().split(":");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("Invalid rollup tier '" + tier + "', expected <resolution-ms>:<buckets>");
+            }
+            tiers.add(new long[]{Long.parseLong(parts[0].trim()), Long.parseLong(parts[1].trim())});
+        }
+        if (tiers.isEmpty()) throw new IllegalArgumentException("At least one rollup tier is required");
+        tiers.sort(Comparator.comparingLong(t -> t[0]));
+        for (int i = 0; i < tiers.size(); i++) {
+            long[] tier = tiers.get(i);
+            if (tier[0] <= 0 || tier[1] <= 0 || tier[1] > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid rollup tier '" + tier[0] + ":" + tier[1]
+                        + "', the resolution and bucket count must be positive");
+            }
+            // cover() fills the edges of a coarse bucket with whole buckets of the next finer tier
+            if (i > 0 && (tier[0] == tiers.get(i - 1)[0] || tier[0] % tiers.get(i - 1)[0] != 0)) {
+                throw new IllegalArgumentException("Invalid rollup tier resolution " + tier[0] + ", it must be a larger multiple of "
+                        + tiers.get(i - 1)[0]);
+            }
+        }
+        return tiers.toArray(new long[0][]);
+    }
+
+    /**
+     * Method to record one refresh
+     * @param timestamp epoch millis of the refresh
+     * @param metrics values of the refresh by metric name
+     */
+    public void record(long timestamp, Map<String, Double> metrics) {
+        metrics.forEach((name, value) -> {
+            if (value == null) return;
+            series.computeIfAbsent(name, n -> new Series()).append(timestamp, value);
+            if (ring != null) ring.append(name, timestamp, value);
+        });
+        if (ring != null) ring.commit();
+    }
+
+    /**
+     * Method to add samples that predate the recorded history of a metric, e.g. fetched from the API on startup.
+     * Samples at or after the first recorded sample of the metric, and samples beyond the retention, are skipped,
+     * so live samples always win. Backfilled samples are not written to the history file.
+     * @param metric metric name
+     * @param timestamps epoch millis, in ascending order
+     * @param values sample values
+     * @return number of samples added
+     */
+    public int backfill(String metric, long[] timestamps, double[] values) {
+        if (timestamps.length == 0) return 0;
+        return series.computeIfAbsent(metric, n -> new Series()).prepend(timestamps, values);
+    }
+
+    public Set<String> metricNames() {
+        return new TreeSet<>(series.keySet());
+    }
+
+    /**
+     * Method to list the recorded series with their size
+     * @return one entry per metric, ordered by name
+     */
+    public List<HistorySeriesDTO> describe() {
+        List<HistorySeriesDTO> out = new ArrayList<>();
+        for (String name : metricNames()) {
+            out.add(series.get(name).describe(name));
+        }
+        return out;
+    }
+
+    /**
+     * Method to get the samples of a metric within a time range
+     * @param metric metric name, as on /metrics/stream
+     * @param from first timestamp to include, epoch millis
+     * @param to last timestamp to include, epoch millis
+     * @return the samples in time order
+     * @throws NoSuchElementException if the metric has no history
+     */
+    public HistoryRangeDTO query(String metric, long from, long to) {
+        Series s = series.get(metric);
+        if (s == null) throw new NoSuchElementException("No history for metric: " + metric);
+        GorillaBlock open;
+        List<GorillaBlock> blocks;
+        synchronized (s) {
+            open = s.blocks.peekLast();
+            blocks = s.blocksOverlapping(from, to);
+        }
+
+        Sink sink = new Sink();
+        for (GorillaBlock block : blocks) {
+            if (block == open) {
+                // still being appended to by the writer
+                synchronized (s) {
+                    block.decode(from, to, sink);
+                }
+            } else {
+                block.decode(from, to, sink);
+            }
+        }
+        return new HistoryRangeDTO(metric, from, to, blocks.size(),
+                Arrays.copyOf(sink.timestamps, sink.size), Arrays.copyOf(sink.values, sink.size));
+    }
+
+    /**
+     * Method to summarise a metric over a time range from its rollup tiers.
+     * The range is covered with the coarsest buckets that fit entirely inside it and finer buckets at its edges,
+     * so a 24 hour window reads a few dozen buckets. Edges are resolved to the finest tier's resolution.
+     * @param metric metric name
+     * @param from start of the range, epoch millis
+     * @param to end of the range, epoch millis
+     * @return the aggregate, {@link RollupTier.Aggregate#EMPTY} if the metric has no samples in the range
+     */
+    public RollupTier.Aggregate aggregate(String metric, long from, long to) {
+        Series s = series.get(metric);
+        if (s == null) return RollupTier.Aggregate.EMPTY;
+        synchronized (s) {
+            return cover(s.tiers, s.tiers.length - 1, from, to);
+        }
+    }
+
+    private static RollupTier.Aggregate cover(RollupTier[] tiers, int k, long from, long to) {
+        if (from > to) return RollupTier.Aggregate.EMPTY;
+        RollupTier tier = tiers[k];
+        if (k == 0) return tier.aggregate(from, to);
+        long r = tier.getResolutionMs();
+        // start of the first and last buckets lying entirely inside the range, without stepping past its ends
+        long firstFull = Math.floorMod(from, r) == 0 ? from : tier.bucketStart(from) + r;
+        long lastFull = Math.floorMod(to, r) == r - 1 ? tier.bucketStart(to) : tier.bucketStart(to) - r;
+        if (firstFull > lastFull) return cover(tiers, k - 1, from, to);
+        RollupTier.Aggregate full = tier.aggregate(firstFull, lastFull);
+        if (from < firstFull) full = full.merge(cover(tiers, k - 1, from, firstFull - 1));
+        if (to - lastFull >= r) full = full.merge(cover(tiers, k - 1, lastFull + r, to));
+        return full;
+    }
+
+    /**
+     * Method to get a metric downsampled to at most the requested step, from the coarsest rollup tier whose
+     * resolution does not exceed the step (the finest tier if the step is below every resolution)
+     * @param metric metric name
+     * @param from start of the range, epoch millis
+     * @param to end of the range, epoch millis
+     * @param stepMs requested resolution
+     * @return one min/max/avg/count entry per non-empty bucket
+     * @throws NoSuchElementException if the metric has no history
+     */
+    public RollupRangeDTO rollup(String metric, long from, long to, long stepMs) {
+        Series s = series.get(metric);
+        if (s == null) throw new NoSuchElementException("No history for metric: " + metric);
+
+        List<Long> starts = new ArrayList<>();
+        List<RollupTier.Aggregate> buckets = new ArrayList<>();
+        RollupTier chosen;
+        synchronized (s) {
+            chosen = s.tiers[0];
+            for (RollupTier tier : s.tiers) {
+                if (tier.getResolutionMs() <= stepMs) chosen = tier;
+            }
+            chosen.forEach(from, to, (start, a) -> {
+                starts.add(start);
+                buckets.add(a);
+            });
+        }
+
+        int n = buckets.size();
+        long[] timestamps = new long[n];
+        double[] min = new double[n];
+        double[] max = new double[n];
+        double[] avg = new double[n];
+        long[] count = new long[n];
+        for (int i = 0; i < n; i++) {
+            RollupTier.Aggregate a = buckets.get(i);
+            timestamps[i] = starts.get(i);
+            min[i] = a.min();
+            max[i] = a.max();
+            avg[i] = a.avg();
+            count[i] = a.count();
+        }
+        return new RollupRangeDTO(metric, from, to, chosen.getResolutionMs(), timestamps, min, max, avg, count);
+    }
+
+    /**
+     * Growable buffer receiving decoded samples
+     */
+    private static final class Sink implements GorillaBlock.SampleConsumer {
+        private long[] timestamps = new long[64];
+        private double[] values = new double[64];
+        private int size = 0;
+
+        @Override
+        public void accept(long timestamp, double value) {
+            if (size == timestamps.length) {
+                timestamps = Arrays.copyOf(timestamps, size * 2);
+                values = Arrays.copyOf(values, size * 2);
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+    }
+
+    /**
+     * The blocks of one metric, oldest first; the last one is open for appends
+     */
+    private final class Series {
+        private final Deque<GorillaBlock> blocks = new ArrayDeque<>();
+        private final RollupTier[] tiers = new RollupTier[tierSpecs.length];
+
+        private Series() {
+            for (int i = 0; i < tierSpecs.length; i++) {
+                tiers[i] = new RollupTier(tierSpecs[i][0], (int) tierSpecs[i][1]);
+            }
+        }
+
+        private synchronized void append(long timestamp, double value) {
+            GorillaBlock open = blocks.peekLast();
+            if (open != null && open.getCount() > 0 && timestamp < open.getLastTimestamp()) return;
+            for (RollupTier tier : tiers) {
+                tier.add(timestamp, value);
+            }
+            if (open == null || open.isSealed() || (open.getCount() > 0 && timestamp - open.getFirstTimestamp() >= blockMs)) {
+                if (open != null) open.seal();
+                open = new GorillaBlock();
+                blocks.addLast(open);
+            }
+            open.append(timestamp, value);
+
+            long horizon = timestamp - retentionMs;
+            while (blocks.size() > 1 && blocks.peekFirst().getLastTimestamp() < horizon) {
+                blocks.removeFirst();
+            }
+        }
+
+        private synchronized int prepend(long[] timestamps, double[] values) {
+            long first = blocks.isEmpty() ? Long.MAX_VALUE : blocks.peekFirst().getFirstTimestamp();
+            long newest = blocks.isEmpty() ? System.currentTimeMillis() : blocks.peekLast().getLastTimestamp();
+            long horizon = newest - retentionMs;
+            List<GorillaBlock> added = new ArrayList<>();
+            GorillaBlock block = null;
+            for (int i = 0; i < timestamps.length && timestamps[i] < first; i++) {
+                if (timestamps[i] < horizon) continue;
+                for (RollupTier tier : tiers) {
+                    tier.add(timestamps[i], values[i]);
+                }
+                if (block == null || timestamps[i] - block.getFirstTimestamp() >= blockMs) {
+                    if (block != null) block.seal();
+                    block = new GorillaBlock();
+                    added.add(block);
+                }
+                block.append(timestamps[i], values[i]);
+            }
+            if (block != null) block.seal();
+            int count = 0;
+            for (int i = added.size() - 1; i >= 0; i--) {
+                blocks.addFirst(added.get(i));
+                count += added.get(i).getCount();
+            }
+            return count;
+        }
+
+        private synchronized List<GorillaBlock> blocksOverlapping(long from, long to) {
+            List<GorillaBlock> out = new ArrayList<>();
+            for (GorillaBlock block : blocks) {
+                if (block.overlaps(from, to)) out.add(block);
+            }
+            return out;
+        }
+
+        private synchronized HistorySeriesDTO describe(String name) {
+            long points = 0;
+            long bytes = 0;
+            for (GorillaBlock block : blocks) {
+                points += block.getCount();
+                bytes += block.sizeBytes();
+            }
+            long from = blocks.isEmpty() ? 0 : blocks.peekFirst().getFirstTimestamp();
+            long to = blocks.isEmpty() ? 0 : blocks.peekLast().getLastTimestamp();
+            return new HistorySeriesDTO(name, points, bytes, blocks.size(), from, to);
+        }
+    }
+}
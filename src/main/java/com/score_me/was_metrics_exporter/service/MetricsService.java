@@ -2,25 +2,59 @@ package com.score_me.was_metrics_exporter.service;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.dto.HistoryRangeDTO;
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.MetricsSnapshot;
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import com.score_me.was_metrics_exporter.helper.FlowMetric;
+import com.score_me.was_metrics_exporter.helper.HotProcessors;
 import com.score_me.was_metrics_exporter.helper.MethodHelper;
+import com.score_me.was_metrics_exporter.helper.PathStats;
+import com.score_me.was_metrics_exporter.helper.ProcessorGraph;
+import com.score_me.was_metrics_exporter.utils.Deadline;
 import com.score_me.was_metrics_exporter.utils.ExportToFile;
+import com.score_me.was_metrics_exporter.utils.FlightEvents;
+import io.micrometer.core.instrument.DistributionSummary;
 import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
 import lombok.Getter;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Scheduler;
 
 import java.io.File;
 import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
 import java.text.DecimalFormat;
 import java.util.*;
-import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 
 /**
  * Service that computes various metrics for the NiFi flow.
  * It uses {@link MethodHelper} to fetch metrics from the Flow API.
+ * <p>
+ * Metric families are fetched concurrently, but applied by a single writer thread: it alone owns the heap and
+ * CPU sample history and the spike state, derives the next {@link MetricsSnapshot} from the current one and
+ * publishes it with one volatile write. Gauges and REST responses only ever read a published snapshot.
+ * <p>
+ * The cost of every refresh is published too: a refresh_phase timer per phase (flow crawl, structure metrics,
+ * active threads, back pressure, diagnostics, CPU, publish and each export), and per refresh the API calls made,
+ * the response bytes received and the bytes allocated by the JVM while it ran.
  */
 @Slf4j
 @Service
@@ -31,7 +65,19 @@ public class MetricsService {
 
     private final MethodHelper methodHelper;
 
+    private final FlowSnapshotService flowSnapshotService;
+
+    private final MetricsStreamService metricsStreamService;
+
+    private final MetricHistoryService metricHistoryService;
+
     private final MeterRegistry meterRegistry;
+
+    private final CentralityService centralityService;
+
+    private final HotProcessorService hotProcessorService;
+
+    private final Scheduler blockingScheduler;
     @Getter
     public enum MetricWeight {
         ALPHA(1.0),
@@ -48,270 +94,762 @@ public class MetricsService {
         }
     }
 
-    private final AtomicReference<Double> processorCountStarter = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> processorCountFinal = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> maxPathDepth = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> avgFanOut = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> ipdCount = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> activeThreads = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> scriptedPct = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> qbpPct = new AtomicReference<>(0.0);
+    /**
+     * The published values; replaced, never modified, by the writer thread
+     */
+    private volatile MetricsSnapshot current = MetricsSnapshot.EMPTY;
+
+    /**
+     * Snapshot pinned by {@link #withSnapshot(Function)} for the reading thread
+     */
+    private final ThreadLocal<MetricsSnapshot> pinned = new ThreadLocal<>();
 
-    private final AtomicReference<Double> fcsScore = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> inputPortCount = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> outputPortCount = new AtomicReference<>(0.0);
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "metrics-writer");
+        t.setDaemon(true);
+        return t;
+    });
 
 
     /**
-     * Heap Metrics Tracking
+     * Heap Metrics Tracking, confined to the writer thread
      */
     private final Deque<Long> heapSamples = new ArrayDeque<>();
     private final Deque<Long> heapSampleTimestamps = new ArrayDeque<>();
-    private final AtomicReference<Double> heapGrowthMbPerMin = new AtomicReference<>(0.0);
-
-    private final AtomicReference<Double> heapUsedMb = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> avgHeapUtilization = new AtomicReference<>(0.0);
-    private final AtomicReference<Double> heapMaxMb = new AtomicReference<>(0.0);
 
     /**
-     * CPU Usage Tracking
+     * CPU Usage Tracking, confined to the writer thread
      */
 //    private double cpuSum = 0.0;
 //    private long totalCpuSampleCount = 0;
 
-    // 60 samples per minute, 60 minutes per hour, 24 hours per day
-    private final int maxCpuSamples = 60*60*24;
-    private static double spikeThreshold;
-    private Long spikeStartTime = 0L;
+    private double spikeThreshold;
+    private long spikeStartTime = 0L;
 
+    /**
+     * Window of the heap and CPU averages, read from the rollup tiers of {@link MetricHistoryService}
+     */
+    @Value("${monitor.history.window-ms:86400000}")
+    private long windowMs = 24 * 60 * 60 * 1000L;
+
+    /**
+     * Shortest interval between two diagnostics refreshes, each of which adds one heap sample
+     */
+    @Value("${monitor.scheduler.diagnostics.min-interval-ms:1000}")
+    private long diagnosticsMinIntervalMs = 1000;
 
 
-    private final Deque<Double> cpuSamples = new ConcurrentLinkedDeque<>();
     /**
-     * The maximum number of CPU samples to keep for calculating the average CPU usage.
-     * This is set to 60, which means the average will be calculated over the last 60 samples.
+     * Latest fetched values of each family, used to detect changes; confined to the writer thread
      */
+    private final Map<MetricFamily, Map<String, Double>> familyValues = new EnumMap<>(MetricFamily.class);
 
+    /**
+     * Processor rankings of the last fully fetched status response, handed from the refresh to the writer thread
+     */
+    private final AtomicReference<HotProcessors> statusHotProcessors = new AtomicReference<>();
 
-    private final AtomicReference<Double> lifeTimeAvgCpuUsage = new AtomicReference<>(0.0);
+    /**
+     * Processor graph of the latest flow snapshot, rebuilt by the status refresh when a new snapshot is published
+     */
+    private volatile SnapshotGraph statusGraph;
 
-    private final AtomicReference<Double> windowAvgCpuUsage = new AtomicReference<>(0.0);
+    private record SnapshotGraph(long generation, ProcessorGraph graph) {
+    }
 
-    private final AtomicReference<Double> instantaneousCpuUsage = new AtomicReference<>(0.0);
+    /**
+     * Time of the last successful refresh of each family, and the families whose latest refresh failed
+     */
+    private final Map<MetricFamily, AtomicLong> lastSuccessMillis = new EnumMap<>(MetricFamily.class);
+    private final Set<MetricFamily> staleFamilies = ConcurrentHashMap.newKeySet();
 
-    private final AtomicReference<Double> spikeRecoveryTime = new AtomicReference<>(0.0);
+    @Value("${monitor.refresh-budget-ms:10000}")
+    private long refreshBudgetMs = 10000;
+
+    /**
+     * Timers of the refresh phases, by phase
+     */
+    private final Map<String, Timer> phaseTimers = new ConcurrentHashMap<>();
+    private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+    // ACTIVE_THREADS, BACK_PRESSURE_PCT and CRITICAL_PATH_QUEUED belong to the STATUS family
+    private static final Set<FlowMetric> TOPOLOGY_METRICS = EnumSet.complementOf(
+            EnumSet.of(FlowMetric.ACTIVE_THREADS, FlowMetric.BACK_PRESSURE_PCT, FlowMetric.CRITICAL_PATH_QUEUED));
+    private static final Set<FlowResource> TOPOLOGY_RESOURCES = FlowMetric.plan(TOPOLOGY_METRICS);
+    private static final Set<FlowResource> CRITICAL_PATH_RESOURCES = FlowMetric.plan(EnumSet.of(FlowMetric.CRITICAL_PATH_QUEUED));
 
 
 
     /**
      * Constructor for MetricsService.
-     * Initializes the service with the provided MeterRegistry, FlowApiClient, and MethodHelper.
+     * Initializes the service with the provided MeterRegistry, FlowApiClient, MethodHelper, FlowSnapshotService,
+     * MetricsStreamService, MetricHistoryService, CentralityService, HotProcessorService and the scheduler for blocking work.
      * @param registry
      * @param client
      * @param methodHelper
+     * @param flowSnapshotService
+     * @param metricsStreamService
+     * @param metricHistoryService
+     * @param centralityService
+     * @param hotProcessorService
+     * @param blockingScheduler
      */
 
 
     @Autowired
-    public MetricsService(MeterRegistry registry, FlowApiClient client, MethodHelper methodHelper) {
+    public MetricsService(MeterRegistry registry, FlowApiClient client, MethodHelper methodHelper,
+                          FlowSnapshotService flowSnapshotService, MetricsStreamService metricsStreamService,
+                          MetricHistoryService metricHistoryService, CentralityService centralityService,
+                          HotProcessorService hotProcessorService, Scheduler blockingScheduler) {
         this.client = client;
         this.methodHelper = methodHelper;
+        this.flowSnapshotService = flowSnapshotService;
+        this.metricsStreamService = metricsStreamService;
+        this.metricHistoryService = metricHistoryService;
         this.meterRegistry = registry;
+        this.centralityService = centralityService;
+        this.hotProcessorService = hotProcessorService;
+        this.blockingScheduler = blockingScheduler;
+
+        gauge("flow_processor_count", MetricsSnapshot::processorCount).register(registry);
+        gauge("flow_actual_processor_count", MetricsSnapshot::processorCountFinal).register(registry);
+        gauge("flow_max_path_depth", MetricsSnapshot::maxPathDepth).register(registry);
+        gauge("flow_avg_fanout", MetricsSnapshot::avgFanOut).register(registry);
+        gauge("flow_ipd_count", MetricsSnapshot::ipdCount).register(registry);
+        gauge("flow_active_threads", MetricsSnapshot::activeThreads).register(registry);
+        gauge("flow_scripted_pct", MetricsSnapshot::scriptedPct).register(registry);
+        gauge("flow_qbp_pct", MetricsSnapshot::qbpPct).register(registry);
+        gauge("flow_heap_growth_mb_per_min", MetricsSnapshot::heapGrowthMbPerMin).register(registry);
+        gauge("FCS_SCORE", MetricsSnapshot::fcsScore).register(registry);
+
+        gauge("flow_heap_used_mb", MetricsSnapshot::heapUsedMb).register(registry);
+        gauge("flow_heap_max_mb", MetricsSnapshot::heapMaxMb).register(registry);
+        gauge("flow_heap_utilization", MetricsSnapshot::avgHeapUtilization).register(registry);
+        gauge("flow_input_port_count", MetricsSnapshot::inputPortCount).register(registry);
+        gauge("flow_output_port_count", MetricsSnapshot::outputPortCount).register(registry);
+        gauge("flow_processor_cycles", MetricsSnapshot::cycleCount)
+                .description("Strongly connected components of the processor graph that contain a cycle")
+                .register(registry);
+        gauge("flow_largest_cycle_processors", MetricsSnapshot::largestCycle)
+                .description("Processors in the largest cycle of the processor graph")
+                .register(registry);
+        gauge("flow_longest_path_processors", MetricsSnapshot::longestPath)
+                .description("Processors on the longest path through the processor graph, a cycle counting as one")
+                .register(registry);
+        gauge("flow_critical_path_queued", MetricsSnapshot::criticalPathQueued)
+                .description("Flow files queued along the path of the processor graph with the most queued flow files")
+                .register(registry);
 
-        Gauge.builder("flow_processor_count", processorCountStarter, AtomicReference::get).register(registry);
-        Gauge.builder("flow_actual_processor_count", processorCountFinal, AtomicReference::get).register(registry);
-        Gauge.builder("flow_max_path_depth", maxPathDepth, AtomicReference::get).register(registry);
-        Gauge.builder("flow_avg_fanout", avgFanOut, AtomicReference::get).register(registry);
-        Gauge.builder("flow_ipd_count", ipdCount, AtomicReference::get).register(registry);
-        Gauge.builder("flow_active_threads", activeThreads, AtomicReference::get).register(registry);
-        Gauge.builder("flow_scripted_pct", scriptedPct, AtomicReference::get).register(registry);
-        Gauge.builder("flow_qbp_pct", qbpPct, AtomicReference::get).register(registry);
-        Gauge.builder("flow_heap_growth_mb_per_min", heapGrowthMbPerMin, AtomicReference::get).register(registry);
-        Gauge.builder("FCS_SCORE", fcsScore, AtomicReference::get).register(registry);
-
-        Gauge.builder("flow_heap_used_mb", heapUsedMb, AtomicReference::get).register(registry);
-        Gauge.builder("flow_heap_max_mb", heapMaxMb, AtomicReference::get).register(registry);
-        Gauge.builder("flow_heap_utilization", avgHeapUtilization, AtomicReference::get).register(registry);
-        Gauge.builder("flow_input_port_count", inputPortCount, AtomicReference::get).register(registry);
-        Gauge.builder("flow_output_port_count", outputPortCount, AtomicReference::get).register(registry);
-
-        Gauge.builder("window_avg_cpu_usage", windowAvgCpuUsage, AtomicReference::get)
-                .description("Average system CPU usage over the last " + maxCpuSamples + " refresh cycles")
+        gauge("window_avg_cpu_usage", MetricsSnapshot::windowAvgCpuUsage)
+                .description("Average system CPU usage over the last monitor.history.window-ms")
                 .register(registry);
 //        Gauge.builder("lifetime_avg_cpu_usage", lifeTimeAvgCpuUsage, AtomicReference::get)
 //                .description("Lifetime average system CPU usage")
 //                .register(registry);
-        Gauge.builder("instantaneous_cpu_usage", instantaneousCpuUsage, AtomicReference::get)
+        gauge("instantaneous_cpu_usage", MetricsSnapshot::instantaneousCpuUsage)
                 .description("Instantaneous system CPU usage")
                 .register(registry);
-        Gauge.builder("spike_recovery_time", () ->
-                Optional.ofNullable(spikeRecoveryTime.get()).orElse(0.0)
-        ).register(registry);
+        gauge("spike_recovery_time", MetricsSnapshot::spikeRecoveryTimeMs).register(registry);
+
+        for (MetricFamily family : MetricFamily.values()) {
+            lastSuccessMillis.put(family, new AtomicLong(System.currentTimeMillis()));
+            Gauge.builder("stale_seconds", () -> staleSeconds(family))
+                    .description("Seconds since the last successful refresh of the family while its latest refresh failed, 0 otherwise")
+                    .tag("family", family.getKey())
+                    .register(registry);
+        }
 
 //        spikeThreshold = 1.0; // Initialize with a default value to avoid NaN
 //        spikeRecoveryTime.set(null); // Initialize recovery time to null
+        restore();
+        publishWarmStart(flowSnapshotService.getWarmStart());
         log.info("MetricsService initialized with spike threshold: {}", spikeThreshold);
 
     }
 
-    public void refresh() throws IOException {
-        log.info("Refreshing metrics...");
-        double processorCount = 0;
-        double maxPGDepth = 0;
-        double avgF = 0;
-        double ipd = 0;
-        double activeThreadsCount = 0;
-        double scriptedPctVal = 0;
-        double qbpPctVal = 0;
-        double inputCount = 0;
-        double outputCount = 0;
-        double processorCountCalculated = 0;
+    /**
+     * Method to rebuild the writer's state from the history restored by {@link MetricHistoryService} after a restart:
+     * the heap samples of the growth regression, an ongoing CPU spike, and the averages published until the first refresh
+     */
+    private void restore() {
+        long now = System.currentTimeMillis();
+        HistoryRangeDTO heap = recent("heapUsedMb", now);
+        if (heap != null) {
+            int n = heap.getTimestamps().length;
+            for (int i = Math.max(0, n - maxHeapSamples()); i < n; i++) {
+                heapSamples.addLast(Math.round(heap.getValues()[i] * 1024 * 1024));
+                heapSampleTimestamps.addLast(heap.getTimestamps()[i]);
+            }
+        }
+
+        double avgCpu = metricHistoryService.aggregate("instantaneousCpuUsage", now - windowMs, now).avg();
+        HistoryRangeDTO cpu = recent("instantaneousCpuUsage", now);
+        if (cpu != null && !Double.isNaN(avgCpu)) {
+            spikeThreshold = Math.max(1, avgCpu + (avgCpu * 0.2));
+            // a spike is ongoing if the latest samples are above the threshold; it started with the first of them
+            for (int i = cpu.getValues().length - 1; i >= 0 && cpu.getValues()[i] > spikeThreshold; i--) {
+                spikeStartTime = cpu.getTimestamps()[i];
+            }
+        }
+
+        if (heapSamples.isEmpty() && cpu == null) return;
+        double avgHeap = metricHistoryService.aggregate("heapUsedMb", now - windowMs, now).avg();
+        current = current.toBuilder()
+                .avgHeapUtilization(Double.isNaN(avgHeap) ? 0.0 : avgHeap)
+                .windowAvgCpuUsage(Double.isNaN(avgCpu) ? 0.0 : Math.round(avgCpu * 100.0) / 100.0)
+                .heapGrowthMbPerMin(lastValue("heapGrowthMbPerMin", now))
+                .spikeRecoveryTimeMs(lastValue("SpikeRecoveryTimeMs", now))
+                .build();
+        log.info("Restored {} heap samples from history, average heap {} MB, average CPU {} %, spike ongoing since {}",
+                heapSamples.size(), current.avgHeapUtilization(), current.windowAvgCpuUsage(), spikeStartTime);
+    }
+
+    /**
+     * Method to publish the structure metrics of the flow snapshot saved before the last shutdown, so they have
+     * real values before the first crawl completes. The topology family reports as stale, from the time of the saved
+     * crawl, until a live refresh replaces them.
+     * @param warm saved snapshot, null if there is none
+     */
+    private void publishWarmStart(FlowSnapshot warm) {
+        if (warm == null) return;
+        Map<String, Double> values = methodHelper.getMetrics(warm, "root", TOPOLOGY_METRICS);
+        if (!values.containsKey("processorCount")) return;
+        centralityService.update(warm);
+        lastSuccessMillis.get(MetricFamily.TOPOLOGY).set(warm.getCapturedAt().toEpochMilli());
+        staleFamilies.add(MetricFamily.TOPOLOGY);
+        writer.submit(() -> apply(MetricFamily.TOPOLOGY, values));
+        log.info("Published structure metrics of the warm-start flow snapshot: {} processors", values.get("processorCount"));
+    }
 
+    /**
+     * Method to merge heap samples fetched from the API's status history into the heap window, in timestamp order,
+     * and republish the average and the heap growth rate computed over the merged window.
+     * Node CPU samples are recorded as the 'nodeCpuUsage' history series only, apart from the CPU usage of the
+     * exporter's host that the CPU window holds.
+     * Can run concurrently with refreshes; samples at or after the first live sample of a window are ignored.
+     * @param heapUsedBytes used heap by epoch millis
+     * @param nodeCpuPercent CPU usage of the node in percent by epoch millis
+     * @throws IOException if interrupted while waiting for the writer thread
+     */
+    public void backfill(SortedMap<Long, Double> heapUsedBytes, SortedMap<Long, Double> nodeCpuPercent) throws IOException {
         try {
-            Map<String, Double> metrics = methodHelper.getMetrics(client, "root");
+            writer.submit(() -> mergeBackfill(heapUsedBytes, nodeCpuPercent)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while merging backfilled samples", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
 
-//            processorCount = methodHelper.getMetrics(client, "root").get("processorCount");
-            processorCount = metrics.get("processorCount");
-            processorCountStarter.set(processorCount);
+    private void mergeBackfill(SortedMap<Long, Double> heapUsedBytes, SortedMap<Long, Double> nodeCpuPercent) {
+        long firstLive = heapSampleTimestamps.isEmpty() ? Long.MAX_VALUE : heapSampleTimestamps.getFirst();
+        SortedMap<Long, Double> olderHeap = heapUsedBytes.headMap(firstLive);
+        if (!olderHeap.isEmpty()) {
+            List<Long> samples = new ArrayList<>(heapSamples);
+            List<Long> times = new ArrayList<>(heapSampleTimestamps);
+            heapSamples.clear();
+            heapSampleTimestamps.clear();
+            olderHeap.forEach((ts, bytes) -> {
+                heapSamples.addLast(bytes.longValue());
+                heapSampleTimestamps.addLast(ts);
+            });
+            heapSamples.addAll(samples);
+            heapSampleTimestamps.addAll(times);
+            while (heapSamples.size() > maxHeapSamples()) {
+                heapSamples.removeFirst();
+                heapSampleTimestamps.removeFirst();
+            }
+        }
+        int heapAdded = metricHistoryService.backfill("heapUsedMb",
+                heapUsedBytes.keySet().stream().mapToLong(Long::longValue).toArray(),
+                heapUsedBytes.values().stream().mapToDouble(b -> b / (1024.0 * 1024.0)).toArray());
+        int cpuAdded = metricHistoryService.backfill("nodeCpuUsage",
+                nodeCpuPercent.keySet().stream().mapToLong(Long::longValue).toArray(),
+                nodeCpuPercent.values().stream().mapToDouble(Double::doubleValue).toArray());
+        if (olderHeap.isEmpty() && heapAdded == 0) {
+            if (cpuAdded > 0) log.info("Backfilled {} node CPU samples", cpuAdded);
+            return;
+        }
 
-//            maxPGDepth = methodHelper.getMetrics(client, "root").get("maxPathDepth");
-            maxPGDepth = metrics.get("maxPathDepth");
-            maxPathDepth.set(maxPGDepth);
+        long now = System.currentTimeMillis();
+        MetricsSnapshot previous = current;
+        MetricsSnapshot.MetricsSnapshotBuilder next = previous.toBuilder();
+        double avgHeap = metricHistoryService.aggregate("heapUsedMb", now - windowMs, now).avg();
+        if (!Double.isNaN(avgHeap)) next.avgHeapUtilization(avgHeap);
+        // the regression over the merged window replaces the estimate smoothed from too few samples
+        double growth = calculateHeapGrowthPerMin(Double.NaN);
+        if (!Double.isNaN(growth)) next.heapGrowthMbPerMin(growth);
+
+        MetricsSnapshot candidate = next.build();
+        current = candidate.toBuilder()
+                .fcsScore(score(candidate))
+                .generation(previous.generation() + 1)
+                .build();
+        log.info("Backfilled {} heap and {} node CPU samples, {} heap samples in the growth window, heap growth {} MB/min",
+                heapAdded, cpuAdded, heapSamples.size(), df.format(current.heapGrowthMbPerMin()));
+    }
 
-//            avgF = methodHelper.getMetrics(client, "root").get("avgF");
-            avgF = metrics.get("avgF");
-            avgFanOut.set(avgF);
+    private HistoryRangeDTO recent(String metric, long now) {
+        try {
+            HistoryRangeDTO range = metricHistoryService.query(metric, now - windowMs, now);
+            return range.getTimestamps().length > 0 ? range : null;
+        } catch (NoSuchElementException e) {
+            return null;
+        }
+    }
 
-//            activeThreadsCount = methodHelper.getMetrics(client, "root").get("activeThreads");
-            activeThreadsCount = metrics.get("activeThreads");
-            activeThreads.set(activeThreadsCount);
+    private double lastValue(String metric, long now) {
+        HistoryRangeDTO range = recent(metric, now);
+        return range == null ? 0.0 : range.getValues()[range.getValues().length - 1];
+    }
 
-//            ipd = methodHelper.getMetrics(client, "root").get("ipd");
-            ipd = metrics.get("ipd");
-            ipdCount.set(ipd);
+    private Gauge.Builder<MetricsService> gauge(String name, ToDoubleFunction<MetricsSnapshot> value) {
+        return Gauge.builder(name, this, service -> value.applyAsDouble(service.view()));
+    }
 
-//            scriptedPctVal = methodHelper.getMetrics(client, "root").get("scriptedPctVal");
-            scriptedPctVal = metrics.get("scriptedPctVal");
-            scriptedPct.set(scriptedPctVal);
+    @PreDestroy
+    public void stop() {
+        writer.shutdownNow();
+    }
 
-//            qbpPctVal = methodHelper.getMetrics(client, "root").get("qbpPctVal");
-            qbpPctVal = metrics.get("qbpPctVal");
-            qbpPct.set(qbpPctVal);
-
-            inputCount = metrics.get("inputPortCount");
-            inputPortCount.set(inputCount);
-
-            outputCount = metrics.get("outputPortCount");
-            outputPortCount.set(outputCount);
-
-            processorCountCalculated = processorCount - inputCount - outputCount;
-            processorCountFinal.set(processorCountCalculated);
-
-
-
-            computeHeapMetrics();
-//            log.info("Heap metrics computed: heapUsedMb={}, heapMaxMb={}, heapUtilizationMb={}, heapGrowthMbPerMin={}",
-//                    df.format(heapUsedMb.get()), df.format(heapMaxMb.get()), df.format(heapUtilizationMb.get()), df.format(heapGrowthMbPerMin.get()));
-
-            metrics.put("heapUsedMb", heapUsedMb.get());
-            metrics.put("heapMaxMb", heapMaxMb.get());
-//            metrics.put("heapUtilizationMb", heapUtilizationMb.get());
-            metrics.put("heapGrowthMbPerMin", heapGrowthMbPerMin.get());
-
-            calculateAvgCpuUsage(meterRegistry);
-            metrics.put("windowAvgCpuUsage", windowAvgCpuUsage.get());
-            metrics.put("instantaneousCpuUsage", instantaneousCpuUsage.get());
-            double score = (MetricWeight.ALPHA.getValue() * processorCountFinal.get())
-                    + (MetricWeight.BETA.getValue() * maxPathDepth.get())
-                    + (MetricWeight.GAMMA.getValue() * avgFanOut.get())
-                    + (MetricWeight.DELTA.getValue() * activeThreads.get())
-                    + (MetricWeight.EPSILON.getValue() * scriptedPct.get())
-                    + (MetricWeight.ZETA.getValue() * qbpPct.get())
-                    + (MetricWeight.ETA.getValue() * heapGrowthMbPerMin.get());
-
-            fcsScore.set(score);
-            metrics.put("fcsScore", fcsScore.get());
-            metrics.put("SpikeRecoveryTimeMs", (spikeRecoveryTime.get() != 0 ? spikeRecoveryTime.get() : 0.0));
-            metrics.put("SpikeRecoveryTimeSec", (spikeRecoveryTime.get() != 0 ? spikeRecoveryTime.get() / 1000.0 : 0.0));
-//            log.info("CPU metrics computed: currentWindowAvgCpuUsage={}, \n Instantaneous CPU Usage = {} \nCurrent FCS Score = {}", df.format(windowAvgCpuUsage.get()), df.format(instantaneousCpuUsage.get()), fcsScore.get());
-            log.info("Metrics:\n{}",
-                    metrics.entrySet().stream()
-                            .map(e -> e.getKey() + " = " + df.format(e.getValue()))
-                            .reduce("", (a, b) -> a + "\n" + b)
-            );
+    /**
+     * @return the latest published snapshot
+     */
+    public MetricsSnapshot getSnapshot() {
+        return current;
+    }
 
-            //HEAP METRICS
+    /**
+     * Method to read several values from one snapshot. While the reader runs, the gauges read on its thread
+     * report the same snapshot, so e.g. a registry scrape cannot mix two refresh cycles.
+     * @param reader function of the snapshot
+     * @return the result of the reader
+     */
+    public <T> T withSnapshot(Function<MetricsSnapshot, T> reader) {
+        MetricsSnapshot snapshot = current;
+        pinned.set(snapshot);
+        try {
+            return reader.apply(snapshot);
+        } finally {
+            pinned.remove();
+        }
+    }
 
-            Map<String, Double> heapMetrics = new HashMap<>();
-            heapMetrics.put("Heap Used MB", heapUsedMb.get());
-            heapMetrics.put("Heap Max MB", heapMaxMb.get());
-            heapMetrics.put("Average Heap Utilization",avgHeapUtilization.get());
-            heapMetrics.put("Heap Growth Rate (Instantaneous)", heapGrowthMbPerMin.get());
+    private MetricsSnapshot view() {
+        MetricsSnapshot snapshot = pinned.get();
+        return snapshot != null ? snapshot : current;
+    }
 
+    public long getGeneration() {
+        return current.generation();
+    }
 
-            //CPU Metrics
-            Map<String, Double> cpuMetrics = new HashMap<>();
-            cpuMetrics.put("Window Average CPU Usage", windowAvgCpuUsage.get());
-            cpuMetrics.put("Spike Recovery Time Seconds", spikeRecoveryTime.get() / 1000.0);
-            cpuMetrics.put("Instantaneous CPU Usage", instantaneousCpuUsage.get());
+    /**
+     * @return milliseconds since the gauges were last updated, {@link Long#MAX_VALUE} before the first refresh
+     */
+    public long getAgeMillis() {
+        long last = current.timestampMillis();
+        return last == 0 ? Long.MAX_VALUE : System.currentTimeMillis() - last;
+    }
 
-            //WAS Metrics
+    /**
+     * Method to refresh every metric family concurrently within one 'monitor.refresh-budget-ms' budget.
+     * Used by the scrape collection mode, where a scrape needs all gauges to be current.
+     * Families that complete in time are published; the others keep their last values and are marked stale.
+     * @throws IOException if no family could be refreshed
+     */
+    public void refresh() throws IOException {
+        log.info("Refreshing metrics...");
+        Deadline deadline = Deadline.after(refreshBudgetMs);
+        measured("all", deadline, () -> {
+            List<MetricFamily> failed = Flux.fromArray(MetricFamily.values())
+                    .flatMap(family -> Mono.fromCallable(() -> refresh(family, deadline))
+                            .subscribeOn(blockingScheduler)
+                            .then(Mono.<MetricFamily>empty())
+                            .onErrorResume(e -> Mono.just(family)))
+                    .collectList()
+                    .block();
+            if (failed != null && failed.size() == MetricFamily.values().length) {
+                throw new IOException("No metric family could be refreshed");
+            }
+            return null;
+        });
+    }
 
-            Map<String, Double> wasMetrics = new HashMap<>();
-            wasMetrics.put("Processor Count" , processorCountFinal.get());
-            wasMetrics.put("Scripted Pct Val", scriptedPct.get());
-            wasMetrics.put("Input Port Count" , inputPortCount.get());
-            wasMetrics.put("Output Port Count", outputPortCount.get());
-            wasMetrics.put("Active Threads(Instantaneous)", activeThreads.get());
-            wasMetrics.put("IPD", ipd);
-            wasMetrics.put("Max Processor Group Depth" , maxPathDepth.get());
-            wasMetrics.put("Queue Back Pressure", qbpPct.get());
-            wasMetrics.put("Average Fanout" , avgFanOut.get());
+    /**
+     * Method to refresh a single metric family within the 'monitor.refresh-budget-ms' budget
+     * @see #refresh(MetricFamily, Deadline)
+     */
+    public boolean refresh(MetricFamily family) throws IOException {
+        Deadline deadline = Deadline.after(refreshBudgetMs);
+        return measured(family.getKey(), deadline, () -> refresh(family, deadline));
+    }
+
+    /**
+     * Work of a refresh or of one of its phases
+     */
+    @FunctionalInterface
+    private interface RefreshWork<T> {
+        T run() throws IOException;
+    }
+
+    /**
+     * Method to run a refresh and record what it cost: the API calls made and response bytes received under its
+     * deadline, and the bytes allocated by all threads of the JVM while it ran, which include the allocations of
+     * anything running concurrently, e.g. the refreshes of other families in poll mode.
+     * The refresh is also reported as a {@link FlightEvents.Refresh} flight recorder event.
+     * @param family tag of the recorded values, the family key or 'all'
+     */
+    private <T> T measured(String family, Deadline deadline, RefreshWork<T> work) throws IOException {
+        long allocatedBefore = allocatedBytes();
+        FlightEvents.Refresh event = new FlightEvents.Refresh();
+        event.begin();
+        boolean succeeded = false;
+        try {
+            T result = work.run();
+            succeeded = true;
+            return result;
+        } finally {
+            event.finish(family, deadline, succeeded);
+            DistributionSummary.builder("refresh_api_calls")
+                    .description("WAS API calls made by a refresh")
+                    .tag("family", family)
+                    .register(meterRegistry)
+                    .record(deadline.getCalls());
+            DistributionSummary.builder("refresh_received_bytes")
+                    .description("Bytes of WAS API responses received by a refresh")
+                    .baseUnit("bytes")
+                    .tag("family", family)
+                    .register(meterRegistry)
+                    .record(deadline.getReceivedBytes());
+            long allocatedAfter = allocatedBytes();
+            if (allocatedBefore >= 0 && allocatedAfter >= allocatedBefore) {
+                DistributionSummary.builder("refresh_allocated_bytes")
+                        .description("Heap bytes allocated by the JVM while a refresh ran")
+                        .baseUnit("bytes")
+                        .tag("family", family)
+                        .register(meterRegistry)
+                        .record(allocatedAfter - allocatedBefore);
+            }
+        }
+    }
+
+    /**
+     * @return heap bytes allocated by all threads since the JVM started, including terminated ones, -1 if the JVM
+     * does not measure thread allocation
+     */
+    private long allocatedBytes() {
+        if (threads instanceof com.sun.management.ThreadMXBean sun && sun.isThreadAllocatedMemoryEnabled()) {
+            return sun.getTotalThreadAllocatedBytes();
+        }
+        return -1L;
+    }
+
+    /**
+     * Method to run a phase of a refresh, timed by the refresh_phase timer of the phase
+     */
+    private <T> T phase(String phase, RefreshWork<T> work) throws IOException {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            return work.run();
+        } finally {
+            sample.stop(phaseTimer(phase));
+        }
+    }
+
+    private Timer phaseTimer(String phase) {
+        return phaseTimers.computeIfAbsent(phase, p -> Timer.builder("refresh_phase")
+                .description("Duration of a phase of a metric refresh")
+                .tag("phase", p)
+                .register(meterRegistry));
+    }
+
+    /**
+     * Method to refresh the gauges of a single metric family and publish the result.
+     * The deadline is passed down to every API call of the family. If the refresh fails or the deadline passes,
+     * the family keeps its last values and its stale_seconds gauge starts counting.
+     * Families can be refreshed concurrently with each other but a family must not be refreshed concurrently with itself.
+     * @param family metric family to refresh
+     * @param deadline time by which the family must be refreshed
+     * @return true if any value of the family changed since its previous refresh
+     * @throws IOException if an error occurs while fetching metrics
+     * @throws DeadlineExceededException if the deadline passed
+     */
+    public boolean refresh(MetricFamily family, Deadline deadline) throws IOException {
+        Map<String, Double> values;
+        try {
+            values = switch (family) {
+                case TOPOLOGY -> fetchTopology(deadline);
+                case STATUS -> fetchStatus(deadline);
+                case DIAGNOSTICS -> fetchDiagnostics(deadline);
+            };
+        } catch (DeadlineExceededException e) {
+            staleFamilies.add(family);
+            log.warn("Refresh of {} timed out, keeping its last values: {}", family.getKey(), e.getMessage());
+            throw e;
+        } catch (Exception e) {
+            staleFamilies.add(family);
+            log.warn("Refresh of {} failed, keeping its last values: {}", family.getKey(), e.getMessage());
+            throw e;
+        }
+        lastSuccessMillis.get(family).set(System.currentTimeMillis());
+        staleFamilies.remove(family);
+        try {
+            return writer.submit(() -> apply(family, values)).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while publishing " + family.getKey(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) throw io;
+            throw new RuntimeException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    private double staleSeconds(MetricFamily family) {
+        if (!staleFamilies.contains(family)) return 0.0;
+        return (System.currentTimeMillis() - lastSuccessMillis.get(family).get()) / 1000.0;
+    }
+
+    private Map<String, Double> fetchTopology(Deadline deadline) throws IOException {
+        // ports are crawled with the graph, so their calls are part of the crawl phase
+        FlowSnapshot snapshot = phase("crawl", () -> flowSnapshotService.refresh(TOPOLOGY_RESOURCES, deadline));
+        // ranked in the background, and only if the processor graph changed
+        centralityService.update(snapshot);
+        return phase("structure", () -> methodHelper.getMetrics(snapshot, "root", TOPOLOGY_METRICS));
+    }
+
+    private Map<String, Double> fetchStatus(Deadline deadline) throws IOException {
+        Map<String, Double> metrics = new HashMap<>();
+//            activeThreadsCount = methodHelper.getMetrics(client, "root").get("activeThreads");
+        // the status response also ranks the processors by threads, task time and queued input
+        HotProcessors hot = hotProcessorService.tracker();
+        // and brings the flow files queued in every connection, for the critical path of the latest crawled graph
+        Map<String, Integer> queued = new HashMap<>();
+        metrics.put("activeThreads", phase("active_threads", () -> methodHelper.computeActiveThreads(client, "root", deadline, pg -> {
+            if (hot != null) hot.group(pg);
+            for (JsonNode c : pg.path("connectionStatusSnapshots")) {
+                JsonNode snapshot = c.path("connectionStatusSnapshot");
+                String id = snapshot.path("id").asText(null);
+                if (id != null) queued.put(id, snapshot.path("flowFilesQueued").asInt(0));
+            }
+        })));
+        Double criticalPathQueued = phase("critical_path", () -> criticalPathQueued(queued));
+        if (criticalPathQueued != null) metrics.put("criticalPathQueued", criticalPathQueued);
+//            qbpPctVal = methodHelper.getMetrics(client, "root").get("qbpPctVal");
+        metrics.put("qbpPctVal", phase("back_pressure", () -> methodHelper.computeBackPressurePercent(client, deadline)));
+        // published by the writer with the rest of the family, only once the whole family was fetched
+        statusHotProcessors.set(hot);
+        return metrics;
+    }
+
+    /**
+     * Method to compute the flow files queued along the critical path of the latest crawled processor graph, with the
+     * queue counts of the status response rather than the older ones of the crawl
+     * @param queued flow files queued by connection ID
+     * @return the queued flow files, null before a snapshot with the processor graph was crawled
+     */
+    private Double criticalPathQueued(Map<String, Integer> queued) {
+        FlowSnapshot snapshot = flowSnapshotService.peek();
+        if (snapshot == null || !snapshot.has(CRITICAL_PATH_RESOURCES)) return null;
+        SnapshotGraph cached = statusGraph;
+        if (cached == null || cached.generation() != snapshot.getGeneration()) {
+            cached = new SnapshotGraph(snapshot.getGeneration(), ProcessorGraph.of(snapshot, "root"));
+            statusGraph = cached;
+        }
+        return (double) PathStats.of(cached.graph().withQueued(queued)).getCriticalPathQueued();
+    }
+
+    /**
+     * Method to sample heap usage from the API and CPU usage from the local registry
+     * @return usedHeapBytes and maxHeapBytes when the API returned them, and cpuUsage when available
+     * @throws IOException if the diagnostics could not be fetched
+     */
+    private Map<String, Double> fetchDiagnostics(Deadline deadline) throws IOException {
+        Map<String, Double> sample = new HashMap<>();
+        // a failed call fails the family, so it keeps its last values and is reported stale
+        JsonNode diag = phase("diagnostics", () -> client.get("/system-diagnostics", deadline));
+        JsonNode agg = diag != null && diag.has("systemDiagnostics") ? diag.get("systemDiagnostics").get("aggregateSnapshot") : null;
+        if (agg != null) {
+            sample.put("usedHeapBytes", agg.has("usedHeapBytes") ? agg.get("usedHeapBytes").asDouble(0) : 0.0);
+            sample.put("maxHeapBytes", agg.has("maxHeapBytes") ? agg.get("maxHeapBytes").asDouble(0) : 0.0);
+        }
+
+        Double cpuUsage = phase("cpu", () -> {
+            Gauge cpu = meterRegistry.find("system.cpu.usage").gauge();
+            return cpu != null && !Double.isNaN(cpu.value()) ? cpu.value() : null;
+        });
+        if (cpuUsage != null) {
+            sample.put("cpuUsage", cpuUsage);
+        }
+        return sample;
+    }
 
+    /**
+     * Method to derive and publish the next snapshot from the values fetched for a family.
+     * Runs on the writer thread only.
+     * @param family the family that was fetched
+     * @param values the fetched values
+     * @return true if the fetched values differ from the previous fetch of the family
+     * @throws IOException if an export fails
+     */
+    private boolean apply(MetricFamily family, Map<String, Double> values) throws IOException {
+        Timer.Sample publish = Timer.start(meterRegistry);
+        MetricsSnapshot previous = current;
+        MetricsSnapshot.MetricsSnapshotBuilder next = previous.toBuilder();
+        switch (family) {
+            case TOPOLOGY -> {
+//            processorCount = methodHelper.getMetrics(client, "root").get("processorCount");
+                double processorCount = values.get("processorCount");
+                double inputCount = values.get("inputPortCount");
+                double outputCount = values.get("outputPortCount");
+                next.processorCount(processorCount)
+                        .maxPathDepth(values.get("maxPathDepth"))
+                        .avgFanOut(values.get("avgF"))
+                        .ipdCount(values.get("ipd"))
+                        .scriptedPct(values.get("scriptedPctVal"))
+                        .inputPortCount(inputCount)
+                        .outputPortCount(outputCount)
+                        .processorCountFinal(processorCount - inputCount - outputCount)
+                        .cycleCount(values.get("cycleCount"))
+                        .largestCycle(values.get("largestCycle"))
+                        .longestPath(values.get("longestPath"));
+            }
+            case STATUS -> {
+                next.activeThreads(values.get("activeThreads")).qbpPct(values.get("qbpPctVal"));
+                if (values.containsKey("criticalPathQueued")) next.criticalPathQueued(values.get("criticalPathQueued"));
+                hotProcessorService.publish(statusHotProcessors.getAndSet(null));
+            }
+            case DIAGNOSTICS -> {
+                if (values.containsKey("usedHeapBytes")) {
+                    computeHeapMetrics(values.get("usedHeapBytes").longValue(), values.get("maxHeapBytes").longValue(), previous, next);
+                }
+                if (values.containsKey("cpuUsage")) {
+                    calculateAvgCpuUsage(values.get("cpuUsage"), next);
+                }
+            }
+        }
+        boolean changed = !values.equals(familyValues.put(family, values));
+
+        MetricsSnapshot candidate = next.build();
+        MetricsSnapshot snapshot = candidate.toBuilder()
+                .fcsScore(score(candidate))
+                .generation(previous.generation() + 1)
+                .timestampMillis(System.currentTimeMillis())
+                .build();
+        current = snapshot;
+
+        Map<String, Double> metrics = snapshot.toMap();
+        metricsStreamService.publish(metrics);
+        // only what this refresh observed, so values carried over from other families do not weigh on averages
+        Map<String, Double> observed = new HashMap<>(metrics);
+        observed.keySet().retainAll(family.getMetricKeys());
+        observed.put("fcsScore", snapshot.fcsScore());
+        metricHistoryService.record(snapshot.timestampMillis(), observed);
+        log.info("Metrics ({}):\n{}", family.getKey(),
+                metrics.entrySet().stream()
+                        .map(e -> e.getKey() + " = " + df.format(e.getValue()))
+                        .reduce("", (a, b) -> a + "\n" + b)
+        );
+        publish.stop(phaseTimer("publish"));
+        export(family, snapshot);
+        return changed;
+    }
 
+    private static double score(MetricsSnapshot s) {
+        return (MetricWeight.ALPHA.getValue() * s.processorCountFinal())
+                + (MetricWeight.BETA.getValue() * s.maxPathDepth())
+                + (MetricWeight.GAMMA.getValue() * s.avgFanOut())
+                + (MetricWeight.DELTA.getValue() * s.activeThreads())
+                + (MetricWeight.EPSILON.getValue() * s.scriptedPct())
+                + (MetricWeight.ZETA.getValue() * s.qbpPct())
+                + (MetricWeight.ETA.getValue() * s.heapGrowthMbPerMin());
+    }
 
+    /**
+     * Method to export the files covering the refreshed family
+     * @param family the family that was just refreshed
+     * @param snapshot the published snapshot
+     * @throws IOException if an export fails
+     */
+    private void export(MetricFamily family, MetricsSnapshot snapshot) throws IOException {
 //            ExportToFile.exportToExcel(metrics, "metrics.xlsx");
 //            log.info("Metrics exported to Excel file: {}", new File("metrics.xlsx").getAbsolutePath());
 //            ExportToFile.exportToTxt(metrics, "metrics.txt");
 //            log.info("Metrics exported to Txtfile: {}", new File("metrics.txt").getAbsolutePath());
 
-            ExportToFile.exportToExcel(heapMetrics, "heapMetrics.xlsx");
+        if (family == MetricFamily.DIAGNOSTICS) {
+            //HEAP METRICS
+
+            Map<String, Double> heapMetrics = new HashMap<>();
+            heapMetrics.put("Heap Used MB", snapshot.heapUsedMb());
+            heapMetrics.put("Heap Max MB", snapshot.heapMaxMb());
+            heapMetrics.put("Average Heap Utilization", snapshot.avgHeapUtilization());
+            heapMetrics.put("Heap Growth Rate (Instantaneous)", snapshot.heapGrowthMbPerMin());
+
+
+            //CPU Metrics
+            Map<String, Double> cpuMetrics = new HashMap<>();
+            cpuMetrics.put("Window Average CPU Usage", snapshot.windowAvgCpuUsage());
+            cpuMetrics.put("Spike Recovery Time Seconds", snapshot.spikeRecoveryTimeMs() / 1000.0);
+            cpuMetrics.put("Instantaneous CPU Usage", snapshot.instantaneousCpuUsage());
+
+            phase("export_heap_metrics", () -> {
+                ExportToFile.exportToExcel(heapMetrics, "heapMetrics.xlsx");
+                return null;
+            });
             log.info("Heap Metrics Exported to excel file : {} ", new File("heapMetrics.xlsx").getAbsolutePath());
 
-            ExportToFile.exportToExcel(cpuMetrics, "cpuMetrics.xlsx");
+            phase("export_cpu_metrics", () -> {
+                ExportToFile.exportToExcel(cpuMetrics, "cpuMetrics.xlsx");
+                return null;
+            });
             log.info("CPU Metrics Exported to excel file : {} ", new File("cpuMetrics.xlsx").getAbsolutePath());
+        } else {
+            //WAS Metrics
 
-
-            ExportToFile.exportToExcel(wasMetrics, "wasMetrics.xlsx");
+            Map<String, Double> wasMetrics = new HashMap<>();
+            wasMetrics.put("Processor Count" , snapshot.processorCountFinal());
+            wasMetrics.put("Scripted Pct Val", snapshot.scriptedPct());
+            wasMetrics.put("Input Port Count" , snapshot.inputPortCount());
+            wasMetrics.put("Output Port Count", snapshot.outputPortCount());
+            wasMetrics.put("Active Threads(Instantaneous)", snapshot.activeThreads());
+            wasMetrics.put("IPD", snapshot.ipdCount());
+            wasMetrics.put("Max Processor Group Depth" , snapshot.maxPathDepth());
+            wasMetrics.put("Queue Back Pressure", snapshot.qbpPct());
+            wasMetrics.put("Average Fanout" , snapshot.avgFanOut());
+            wasMetrics.put("Longest Processor Path", snapshot.longestPath());
+            wasMetrics.put("Critical Path Queued", snapshot.criticalPathQueued());
+
+            phase("export_was_metrics", () -> {
+                ExportToFile.exportToExcel(wasMetrics, "wasMetrics.xlsx");
+                return null;
+            });
             log.info("WAS Metrics Exported to excel file : {} ", new File("wasMetrics.xlsx").getAbsolutePath());
-        } catch (Exception e) {
-            throw new RuntimeException(e.getMessage(), e.getCause());
         }
-
-//        log.info("\nMetrics updated: \nFlow Complexity Score= {}, \nProcessorCount = {},\nProcessor Count (after removing I/O ports) = {},  \ninputPortCount = {}, \noutputPortCount={}, \navgFanOut={}, \nmaxProcessGroupDepth = {}, \nconcurrentThreads={}, \nipdCount={}, \nscriptedPct={}%, \nqueueBackPressure={}, \nheapUsedMb={} Mb, \nheapMaxMb={} Mb, \nheapGrowthMbPerMin={} Mb",
-//                String.format("%.2f",fcsScore.get()),processorCountStarter.get(), processorCountFinal.get(),inputPortCount.get(), outputPortCount.get(),String.format("%.2f",avgF), maxPathDepth.get(), activeThreads.get(), ipd, String.format("%.2f", scriptedPct.get()), String.format("%.2f",qbpPct.get()),String.format("%.2f",heapUsedMb.get()), String.format("%.2f", heapMaxMb.get()), String.format("%.2f",heapGrowthMbPerMin.get()));
     }
 
+    /**
+     * @return the most heap samples the growth regression keeps: those of one averaging window at the fastest
+     * diagnostics refresh rate, 86400 by default
+     */
+    private int maxHeapSamples() {
+        return (int) Math.min(Integer.MAX_VALUE, Math.max(2, windowMs / Math.max(1, diagnosticsMinIntervalMs)));
+    }
 
-    private void computeHeapMetrics() {
+    private void computeHeapMetrics(long heapUsed, long heapMax, MetricsSnapshot previous, MetricsSnapshot.MetricsSnapshotBuilder next) {
         try {
-            JsonNode diag = client.get("/system-diagnostics");
-            if (diag == null || !diag.has("systemDiagnostics")) return;
-            JsonNode agg = diag.get("systemDiagnostics").get("aggregateSnapshot");
-            if (agg == null) return;
-
-            long heapUsed = agg.has("usedHeapBytes") ? agg.get("usedHeapBytes").asLong(0) : 0L;
-            long heapMax = agg.has("maxHeapBytes") ? agg.get("maxHeapBytes").asLong(0) : 0L;
             double heapUtilizationValue = heapMax > 0 ? (heapUsed / (double) heapMax) * 100.0 : 0.0;
-            heapUsedMb.set(heapUsed / (1024.0 * 1024.0));
-            heapMaxMb.set(heapMax / (1024.0 * 1024.0));
+            next.heapUsedMb(heapUsed / (1024.0 * 1024.0));
+            next.heapMaxMb(heapMax / (1024.0 * 1024.0));
 //            avgHeapUtilization.set(heapUtilizationValue / (1024.0 * 1024.0));
             long now = System.currentTimeMillis();
             heapSamples.addLast(heapUsed);
-            double avgHeapUtilizationVal = heapSamples.stream().mapToLong(Long::longValue).average().orElse(0.0);
-            avgHeapUtilizationVal/=(1024*1024);
-            avgHeapUtilization.set(avgHeapUtilizationVal);
-            log.info("Average Heap Utilization = {}", avgHeapUtilization.get());
+            double avgHeapUtilizationVal = metricHistoryService.aggregate("heapUsedMb", now - windowMs, now)
+                    .plus(heapUsed / (1024.0 * 1024.0))
+                    .avg();
+            next.avgHeapUtilization(avgHeapUtilizationVal);
+            log.info("Average Heap Utilization = {}", avgHeapUtilizationVal);
             heapSampleTimestamps.addLast(now);
 
 
@@ -320,22 +858,25 @@ public class MetricsService {
 //                heapSamples.removeFirst();
 //                heapSampleTimestamps.removeFirst();
 //            }
-            if (heapSamples.size() > 60 * 60 * 24) { // keep samples for 24 hours
+            if (heapSamples.size() > maxHeapSamples()) { // keep samples for the averaging window
                 // remove the oldest sample if we exceed the limit
                 heapSamples.removeFirst();
                 heapSampleTimestamps.removeFirst();
             }
-            calculateHeapGrowthPerMin();
+            next.heapGrowthMbPerMin(calculateHeapGrowthPerMin(previous.heapGrowthMbPerMin()));
 
         } catch (Exception e) {
             log.warn("Failed to compute heap metrics: {}", e.getMessage());
         }
     }
 
-    private void calculateHeapGrowthPerMin(){
+    /**
+     * @param prev previously published growth rate
+     * @return the smoothed heap growth rate in MB per minute, or prev if it cannot be computed yet
+     */
+    private double calculateHeapGrowthPerMin(double prev){
         try{
             if (heapSamples.size() >= 2) {
-                // make local snapshots to avoid concurrent-mod issues
                 List<Long> samples = new ArrayList<>(heapSamples);
                 List<Long> times = new ArrayList<>(heapSampleTimestamps);
 
@@ -363,64 +904,53 @@ public class MetricsService {
                 } else {
                     // fallback to simple delta if regression is degenerate
                     double minutes = (times.get(n - 1) - times.getFirst()) / 60000.0;
-                    if (minutes < 1e-9) return;
+                    if (minutes < 1e-9) return prev;
                     growthBytesPerMin = (samples.get(n - 1) - samples.getFirst()) / minutes;
                 }
 
                 double growthMbPerMin = growthBytesPerMin / (1024.0 * 1024.0);
 
-                double prev = heapGrowthMbPerMin.get();
-                double smoothed = Double.isNaN(prev) ? growthMbPerMin : (0.3 * growthMbPerMin + 0.7 * prev);
-                heapGrowthMbPerMin.set(smoothed);
+                return Double.isNaN(prev) ? growthMbPerMin : (0.3 * growthMbPerMin + 0.7 * prev);
             }
         }
         catch (Exception e){
             log.warn("Failed to calculate heap growth per min: {}", e.getMessage());
         }
+        return prev;
     }
 
-    private void calculateAvgCpuUsage(MeterRegistry meterRegistry) {
+    private void calculateAvgCpuUsage(double cpuValue, MetricsSnapshot.MetricsSnapshotBuilder next) {
         try {
-            Double cpuValue = meterRegistry.find("system.cpu.usage").gauge() != null
-                    ? Objects.requireNonNull(meterRegistry.find("system.cpu.usage").gauge()).value()
-                    : null;
-
             log.info(String.valueOf(cpuValue));
             log.info("{}", System.currentTimeMillis());
 
-            if (cpuValue != null && !cpuValue.isNaN()) {
-
-                double percentage = cpuValue * 100;
+            double percentage = cpuValue * 100;
 
-                percentage = Math.round(percentage * 100.0) / 100.0;
-                log.info("CPU Usage percentage : {}", percentage);
-                instantaneousCpuUsage.set(cpuValue*100);
+            percentage = Math.round(percentage * 100.0) / 100.0;
+            log.info("CPU Usage percentage : {}", percentage);
+            next.instantaneousCpuUsage(cpuValue*100);
 
-                cpuSamples.add(percentage);
-                if (cpuSamples.size() > maxCpuSamples) {
-                    cpuSamples.pollFirst();
-                }
-
-                double avg = cpuSamples.stream().mapToDouble(Double::doubleValue).average().orElse(0.0);
-                windowAvgCpuUsage.set(Math.round(avg * 100.0) / 100.0);
-                spikeThreshold = avg + (avg * 0.2);
-                log.info("Spike Threshold set to: {}", spikeThreshold);
-                if (spikeThreshold < 1) {
-                    spikeThreshold = 1;
-                }
-                if (cpuValue*100 > spikeThreshold) {
-                    if (spikeStartTime == 0) {
-                        spikeStartTime = System.currentTimeMillis();
-                        log.warn("CPU spike started: {}", spikeStartTime);
-                        spikeRecoveryTime.set(0.0); // Reset recovery time when a spike starts
-                    }
-                } else if (spikeStartTime != 0) {
-                    double recoveryTime = System.currentTimeMillis() - (double)spikeStartTime;
-                    spikeRecoveryTime.set(recoveryTime);
-                    log.warn("CPU spike ended. Recovery time: {} ms", recoveryTime);
-                    spikeStartTime = 0L;
+            long now = System.currentTimeMillis();
+            double avg = metricHistoryService.aggregate("instantaneousCpuUsage", now - windowMs, now)
+                    .plus(percentage)
+                    .avg();
+            next.windowAvgCpuUsage(Math.round(avg * 100.0) / 100.0);
+            spikeThreshold = avg + (avg * 0.2);
+            log.info("Spike Threshold set to: {}", spikeThreshold);
+            if (spikeThreshold < 1) {
+                spikeThreshold = 1;
+            }
+            if (cpuValue*100 > spikeThreshold) {
+                if (spikeStartTime == 0) {
+                    spikeStartTime = System.currentTimeMillis();
+                    log.warn("CPU spike started: {}", spikeStartTime);
+                    next.spikeRecoveryTimeMs(0.0); // Reset recovery time when a spike starts
                 }
-
+            } else if (spikeStartTime != 0) {
+                double recoveryTime = System.currentTimeMillis() - (double)spikeStartTime;
+                next.spikeRecoveryTimeMs(recoveryTime);
+                log.warn("CPU spike ended. Recovery time: {} ms", recoveryTime);
+                spikeStartTime = 0L;
             }
         } catch (Exception e) {
             log.warn("Failed to read CPU usage: {}", e.getMessage());
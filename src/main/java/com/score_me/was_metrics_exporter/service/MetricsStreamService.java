@@ -0,0 +1,100 @@
+package com.score_me.was_metrics_exporter.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Service that fans out every metrics refresh to live subscribers.
+ * {@link MetricsService} publishes once per refresh and all subscribers share that result, so the number
+ * of viewers does not change the load on the API. Each subscriber has its own bounded buffer; when a slow
+ * subscriber falls behind, its oldest pending updates are dropped so it always catches up to recent values.
+ */
+@Slf4j
+@Service
+public class MetricsStreamService {
+
+    private final Sinks.Many<Update> sink = Sinks.many().multicast().directBestEffort();
+
+    @Value("${monitor.stream.buffer-size:16}")
+    private int bufferSize = 16;
+
+    @Value("${monitor.stream.heartbeat-ms:15000}")
+    private long heartbeatMs = 15000;
+
+    private long sequence = 0;
+    private volatile Update latest;
+
+    private record Update(long sequence, Map<String, Double> metrics) {
+    }
+
+    /**
+     * Publishes the metrics of a completed refresh to every subscriber
+     * @param metrics metric name to value
+     */
+    public synchronized void publish(Map<String, Double> metrics) {
+        Update update = new Update(++sequence, Map.copyOf(metrics));
+        latest = update;
+        sink.tryEmitNext(update);
+    }
+
+    /**
+     * Method to subscribe to the stream of refreshes.
+     * The first event carries the latest known values; following events carry either every refresh in full
+     * ("snapshot" events) or only the metrics whose value changed since the last event sent to this
+     * subscriber ("delta" events). Refreshes that change nothing are skipped in delta mode.
+     * @param deltasOnly whether to send only changed values after the first event
+     * @return Flux of server-sent events, with periodic heartbeat comments
+     */
+    public Flux<ServerSentEvent<Map<String, Double>>> subscribe(boolean deltasOnly) {
+        Flux<ServerSentEvent<Map<String, Double>>> events = Flux.defer(() -> {
+            Map<String, Double> lastSent = new HashMap<>();
+            Flux<Update> updates = sink.asFlux()
+                    .onBackpressureBuffer(bufferSize,
+                            dropped -> log.debug("Dropped metrics update {} for slow subscriber", dropped.sequence()),
+                            BufferOverflowStrategy.DROP_OLDEST);
+            Update current = latest;
+            if (current != null) {
+                updates = updates.startWith(current);
+            }
+            boolean[] first = {true};
+            return updates.concatMap(u -> {
+                Map<String, Double> data = u.metrics();
+                String type = "snapshot";
+                if (deltasOnly && !first[0]) {
+                    data = changedSince(lastSent, u.metrics());
+                    type = "delta";
+                    if (data.isEmpty()) return Flux.empty();
+                }
+                first[0] = false;
+                lastSent.putAll(u.metrics());
+                return Flux.just(ServerSentEvent.<Map<String, Double>>builder(data)
+                        .id(String.valueOf(u.sequence()))
+                        .event(type)
+                        .build());
+            });
+        });
+        Flux<ServerSentEvent<Map<String, Double>>> heartbeats = Flux.interval(Duration.ofMillis(heartbeatMs))
+                .map(i -> ServerSentEvent.<Map<String, Double>>builder().comment("heartbeat").build());
+        return Flux.merge(events, heartbeats);
+    }
+
+    private static Map<String, Double> changedSince(Map<String, Double> previous, Map<String, Double> current) {
+        Map<String, Double> changed = new HashMap<>();
+        for (Map.Entry<String, Double> e : current.entrySet()) {
+            if (!Objects.equals(previous.get(e.getKey()), e.getValue())) {
+                changed.put(e.getKey(), e.getValue());
+            }
+        }
+        return changed;
+    }
+}
@@ -1,28 +1,151 @@
 package com.score_me.was_metrics_exporter.service;
 
-import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.dto.PgMetricsResultDTO;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.helper.FlowMetric;
 import com.score_me.was_metrics_exporter.helper.MethodHelper;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
 
 
+/**
+ * Service computing metrics for individual process groups.
+ * Metrics are derived from the shared {@link FlowSnapshot} held by {@link FlowSnapshotService}
+ * and cached per process group for the newest snapshot generation, so repeated lookups within the
+ * configured staleness neither crawl the flow nor recompute the metrics. A new generation replaces the whole cache:
+ * the queue and thread counts of every group change with each crawl, so older entries would never be hit again.
+ */
+@Slf4j
 @Service
 public class PgMetricsService {
 
     private final MethodHelper methodHelper;
-    private final FlowApiClient flowApiClient;
+    private final FlowSnapshotService flowSnapshotService;
+    private volatile GenerationCache cache = new GenerationCache(-1, new ConcurrentHashMap<>());
+
+    /**
+     * Metrics of the process groups looked up in one snapshot generation
+     * @param generation generation of the snapshot
+     * @param byGroup metrics by resolved process group ID
+     */
+    private record GenerationCache(long generation, Map<String, Map<String, Double>> byGroup) {
+    }
 
 
     @Autowired
-    public PgMetricsService(MethodHelper methodHelper, FlowApiClient flowApiClient) {
+    public PgMetricsService(MethodHelper methodHelper, FlowSnapshotService flowSnapshotService) {
         this.methodHelper = methodHelper;
-        this.flowApiClient = flowApiClient;
+        this.flowSnapshotService = flowSnapshotService;
     }
 
     public Map<String, Double> getMetricsForGroup(String groupId) throws IOException {
-        return methodHelper.getMetrics(flowApiClient, groupId);
+        return getMetricsForGroup(flowSnapshotService.currentBlocking(), groupId);
+    }
+
+    /**
+     * Method to get all metrics for a process group from the specified snapshot, using the cache when possible
+     * @see #getMetricsForGroup(FlowSnapshot, String, Set)
+     */
+    public Map<String, Double> getMetricsForGroup(FlowSnapshot snapshot, String groupId) {
+        return getMetricsForGroup(snapshot, groupId, EnumSet.allOf(FlowMetric.class));
+    }
+
+    /**
+     * Method to get metrics for a process group from the specified snapshot, using the cache when possible.
+     * Only the metrics missing from the cache entry of this group are computed. Snapshots older than the cached
+     * generation are computed without the cache.
+     * @param snapshot FlowSnapshot containing the process group and the resources the metrics need
+     * @param groupId ID of the process group
+     * @param wanted metrics to return
+     * @return unmodifiable Map of metric names to their values, empty if the group is unknown or has no processors
+     */
+    public Map<String, Double> getMetricsForGroup(FlowSnapshot snapshot, String groupId, Set<FlowMetric> wanted) {
+        Map<String, Map<String, Double>> byGroup = entries(snapshot.getGeneration());
+        String key = snapshot.resolve(groupId);
+        Map<String, Double> cached = byGroup == null ? null : byGroup.get(key);
+        Set<FlowMetric> missing = EnumSet.noneOf(FlowMetric.class);
+        for (FlowMetric m : wanted) {
+            if (cached == null || !cached.containsKey(m.getKey())) missing.add(m);
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Double> computed = methodHelper.getMetrics(snapshot, groupId, missing);
+            if (computed.isEmpty()) return Collections.emptyMap();
+            Map<String, Double> merged = cached == null ? new HashMap<>() : new HashMap<>(cached);
+            merged.putAll(computed);
+            cached = Collections.unmodifiableMap(merged);
+            if (byGroup != null) byGroup.put(key, cached);
+        }
+        if (cached.size() == wanted.size()) return cached;
+        Map<String, Double> result = new HashMap<>();
+        for (FlowMetric m : wanted) {
+            result.put(m.getKey(), cached.get(m.getKey()));
+        }
+        return Collections.unmodifiableMap(result);
+    }
+
+    /**
+     * Method to get the cache entries of a snapshot generation, dropping those of older generations
+     * @return metrics by process group, null if the generation is older than the cached one
+     */
+    private Map<String, Map<String, Double>> entries(long generation) {
+        GenerationCache current = cache;
+        if (current.generation() == generation) return current.byGroup();
+        if (generation < current.generation()) return null;
+        synchronized (this) {
+            if (cache.generation() < generation) cache = new GenerationCache(generation, new ConcurrentHashMap<>());
+            return cache.generation() == generation ? cache.byGroup() : null;
+        }
+    }
+
+    /**
+     * Method to get a snapshot holding the resources the specified metrics depend on
+     * @param wanted metrics the caller will compute
+     * @return the current snapshot if it is fresh and complete enough, otherwise a new crawl of just those resources
+     */
+    public FlowSnapshot currentSnapshot(Set<FlowMetric> wanted) throws IOException {
+        return flowSnapshotService.currentBlocking(FlowMetric.plan(wanted));
+    }
+
+    public Mono<FlowSnapshot> currentSnapshotAsync(Set<FlowMetric> wanted) {
+        return flowSnapshotService.current(FlowMetric.plan(wanted));
+    }
+
+    /**
+     * Method to get metrics for many process groups from a single snapshot of the flow.
+     * The per-group results are computed lazily as the returned stream is consumed.
+     * A failure for one group is reported in its result and does not affect the others.
+     * @param snapshot FlowSnapshot to evaluate the groups against
+     * @param groupIds IDs of the process groups
+     * @param wanted metrics to include in each result; the snapshot must hold the resources they need
+     * @return Stream of results, one per requested group, in request order
+     */
+    public Stream<PgMetricsResultDTO> getMetricsForGroups(FlowSnapshot snapshot, List<String> groupIds, Set<FlowMetric> wanted) {
+        return groupIds.stream().map(groupId -> computeResult(snapshot, groupId, wanted));
+    }
+
+    private PgMetricsResultDTO computeResult(FlowSnapshot snapshot, String groupId, Set<FlowMetric> wanted) {
+        if (groupId == null || groupId.isBlank()) {
+            return PgMetricsResultDTO.failed(groupId, "Missing processGroupId");
+        }
+        if (!snapshot.contains(groupId)) {
+            return PgMetricsResultDTO.failed(groupId, "Process group not found");
+        }
+        try {
+            Map<String, Double> metrics = getMetricsForGroup(snapshot, groupId, wanted);
+            if (metrics.isEmpty()) {
+                return PgMetricsResultDTO.failed(groupId, "No processors found");
+            }
+            return PgMetricsResultDTO.ok(groupId, metrics);
+        } catch (Exception e) {
+            log.warn("Error computing metrics for group {}: {}", groupId, e.getMessage());
+            return PgMetricsResultDTO.failed(groupId, e.getMessage());
+        }
     }
 }
@@ -0,0 +1,141 @@
+package com.score_me.was_metrics_exporter.service;
+
+import io.micrometer.prometheusmetrics.PrometheusMeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Service that renders the Prometheus exposition at most once per {@link MetricsService} refresh generation.
+ * The rendered bytes (and their gzip form, on first request) are kept until the next refresh,
+ * so every scrape in between is served from memory without walking the registry.
+ * ETags combine the generation with an epoch drawn when the process starts, as generations restart from 0 with
+ * the process and a scraper must not get a 304 for a body rendered by a previous process.
+ */
+@Slf4j
+@Service
+public class ScrapeCacheService {
+
+    public static final String OPENMETRICS_CONTENT_TYPE = "application/openmetrics-text; version=1.0.0; charset=utf-8";
+    public static final String TEXT_CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final PrometheusMeterRegistry registry;
+    private final MetricsService metricsService;
+
+    // start time and a random part, so two processes started in the same millisecond differ too
+    private final String epoch = Long.toString(System.currentTimeMillis(), 36)
+            + Integer.toString(ThreadLocalRandom.current().nextInt(1 << 20), 36);
+    private final ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 * 1024);
+    private volatile Exposition openMetrics;
+    private volatile Exposition text;
+
+    /**
+     * A rendered exposition of one refresh generation
+     */
+    public static final class Exposition {
+        private final long generation;
+        private final String contentType;
+        private final String etag;
+        private final byte[] body;
+        private volatile byte[] gzipBody;
+
+        private Exposition(long generation, String contentType, String etag, byte[] body) {
+            this.generation = generation;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.body = body;
+        }
+
+        public long getGeneration() {
+            return generation;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getEtag() {
+            return etag;
+        }
+
+        public byte[] getBody() {
+            return body;
+        }
+
+        /**
+         * @return the body gzip-compressed, compressed once on first use
+         */
+        public byte[] getGzipBody() {
+            byte[] gz = gzipBody;
+            if (gz == null) {
+                synchronized (this) {
+                    gz = gzipBody;
+                    if (gz == null) {
+                        gz = gzip(body);
+                        gzipBody = gz;
+                    }
+                }
+            }
+            return gz;
+        }
+    }
+
+    public ScrapeCacheService(PrometheusMeterRegistry registry, MetricsService metricsService) {
+        this.registry = registry;
+        this.metricsService = metricsService;
+    }
+
+    /**
+     * @param openMetricsFormat true for OpenMetrics, false for the classic Prometheus text format
+     * @return the exposition of the current refresh generation, rendering it if this is its first scrape
+     */
+    public Exposition current(boolean openMetricsFormat) {
+        long generation = metricsService.getGeneration();
+        Exposition cached = openMetricsFormat ? openMetrics : text;
+        if (cached != null && cached.generation == generation) {
+            return cached;
+        }
+        synchronized (this) {
+            cached = openMetricsFormat ? openMetrics : text;
+            if (cached != null && cached.generation == generation) {
+                return cached;
+            }
+            String contentType = openMetricsFormat ? OPENMETRICS_CONTENT_TYPE : TEXT_CONTENT_TYPE;
+            // the registry is walked with one snapshot pinned, so the body matches the generation in its ETag
+            Exposition rendered = metricsService.withSnapshot(snapshot -> new Exposition(snapshot.generation(), contentType,
+                    "\"" + epoch + "-" + snapshot.generation() + (openMetricsFormat ? "-om" : "-txt") + "\"", render(contentType)));
+            if (openMetricsFormat) {
+                openMetrics = rendered;
+            } else {
+                text = rendered;
+            }
+            log.debug("Rendered {} exposition for generation {} ({} bytes)", contentType, rendered.generation, rendered.body.length);
+            return rendered;
+        }
+    }
+
+    private byte[] render(String contentType) {
+        buffer.reset();
+        try {
+            registry.scrape(buffer, contentType);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(512, body.length / 4));
+        try (GZIPOutputStream gz = new GZIPOutputStream(out)) {
+            gz.write(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,95 @@
+package com.score_me.was_metrics_exporter.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import reactor.core.scheduler.Scheduler;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pull-on-scrape collection, enabled with 'monitor.collection-mode: scrape'.
+ * The {@link AdaptivePollScheduler} is disabled in this mode; instead a scrape triggers {@link MetricsService#refresh()}
+ * when the last refresh is older than 'monitor.scrape.max-age-ms'. Concurrent scrapes share that single refresh,
+ * so the load on the API follows the scrape rate, and stops when nobody scrapes.
+ * If the refresh fails or takes longer than 'monitor.scrape.refresh-timeout-ms', the scrape is served the last values;
+ * the refresh runs on the blocking scheduler, so it goes on and a later scrape finds its result.
+ */
+@Slf4j
+@Service
+public class ScrapeCollector {
+
+    private final MetricsService metricsService;
+    private final Scheduler blockingScheduler;
+
+    @Value("${monitor.collection-mode:poll}")
+    private String collectionMode = "poll";
+
+    @Value("${monitor.scrape.max-age-ms:5000}")
+    private long maxAgeMs = 5000;
+
+    @Value("${monitor.scrape.refresh-timeout-ms:30000}")
+    private long refreshTimeoutMs = 30000;
+
+    private CompletableFuture<Void> inFlight;
+
+    public ScrapeCollector(MetricsService metricsService, Scheduler blockingScheduler) {
+        this.metricsService = metricsService;
+        this.blockingScheduler = blockingScheduler;
+    }
+
+    public boolean isEnabled() {
+        return "scrape".equalsIgnoreCase(collectionMode);
+    }
+
+    /**
+     * @return whether a scrape arriving now would trigger a refresh
+     */
+    public boolean needsRefresh() {
+        return isEnabled() && metricsService.getAgeMillis() > maxAgeMs;
+    }
+
+    /**
+     * Refreshes the metrics if they are older than the configured maximum age, or waits for the refresh
+     * another scrape already started. Blocks the calling thread for at most 'monitor.scrape.refresh-timeout-ms'.
+     */
+    public void ensureFresh() {
+        if (!needsRefresh()) return;
+
+        CompletableFuture<Void> refresh;
+        boolean leader = false;
+        synchronized (this) {
+            if (!needsRefresh()) return;
+            if (inFlight == null) {
+                inFlight = new CompletableFuture<>();
+                leader = true;
+            }
+            refresh = inFlight;
+        }
+
+        if (leader) {
+            blockingScheduler.schedule(() -> {
+                try {
+                    metricsService.refresh();
+                    refresh.complete(null);
+                } catch (Exception e) {
+                    log.error("Scrape-triggered refresh failed: {}", e.getMessage(), e);
+                    refresh.completeExceptionally(e);
+                } finally {
+                    synchronized (this) {
+                        inFlight = null;
+                    }
+                }
+            });
+        }
+
+        try {
+            refresh.get(refreshTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Serving stale metrics, shared refresh did not complete: {}", e.getMessage());
+        }
+    }
+}
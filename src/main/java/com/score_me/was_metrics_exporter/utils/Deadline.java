@@ -0,0 +1,85 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
+import reactor.core.publisher.Mono;
+import reactor.util.context.Context;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A point in time by which a refresh must be done.
+ * {@link #bound(Mono, String)} stores the deadline in the Reactor context of the Mono, which is how it is passed down to
+ * every {@link com.score_me.was_metrics_exporter.client.FlowApiClient} call made inside it, however deeply nested.
+ * Exceeding the deadline fails with {@link DeadlineExceededException}, which crawl steps must not treat as an empty result.
+ * <p>
+ * The client also counts the calls it makes and the response bytes it receives under a deadline, which is how the
+ * cost of a refresh is reported.
+ */
+public final class Deadline {
+    public static final String CONTEXT_KEY = Deadline.class.getName();
+
+    private final long budgetMs;
+    private final long expiresAtNanos;
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong receivedBytes = new AtomicLong();
+
+    private Deadline(long budgetMs) {
+        this.budgetMs = budgetMs;
+        this.expiresAtNanos = System.nanoTime() + Duration.ofMillis(budgetMs).toNanos();
+    }
+
+    public static Deadline after(long budgetMs) {
+        return new Deadline(Math.max(0L, budgetMs));
+    }
+
+    public Duration remaining() {
+        return Duration.ofNanos(Math.max(0L, expiresAtNanos - System.nanoTime()));
+    }
+
+    public boolean isExpired() {
+        return expiresAtNanos - System.nanoTime() <= 0;
+    }
+
+    public void countCall() {
+        calls.incrementAndGet();
+    }
+
+    public void countReceivedBytes(long bytes) {
+        receivedBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return API calls made under this deadline so far
+     */
+    public long getCalls() {
+        return calls.get();
+    }
+
+    /**
+     * @return bytes of API responses received under this deadline so far
+     */
+    public long getReceivedBytes() {
+        return receivedBytes.get();
+    }
+
+    /**
+     * Method to bound a Mono by this deadline
+     * @param mono the work to bound, subscribed with this deadline in its context
+     * @param what description of the work, used in the error message
+     * @return Mono failing with {@link DeadlineExceededException} if the work does not complete in the remaining time
+     */
+    public <T> Mono<T> bound(Mono<T> mono, String what) {
+        return Mono.defer(() -> {
+                    if (isExpired()) return Mono.error(exceeded(what));
+                    return mono.timeout(remaining())
+                            .onErrorMap(TimeoutException.class, e -> exceeded(what));
+                })
+                .contextWrite(Context.of(CONTEXT_KEY, this));
+    }
+
+    private DeadlineExceededException exceeded(String what) {
+        return new DeadlineExceededException(what + " did not complete within the " + budgetMs + " ms budget");
+    }
+}
@@ -23,6 +23,8 @@ public class ExportToFile {
 
     public static void exportToTxt(Map<String, Double> newMetrics, String filename) throws IOException {
         log.info("Exporting to txt file...");
+        FlightEvents.ExportWrite event = new FlightEvents.ExportWrite();
+        event.begin();
         File file = new File(filename);
         Map<String, Double> metrics = new LinkedHashMap<>();
         if (file.exists()) {
@@ -49,6 +51,7 @@ public class ExportToFile {
         } catch (IOException e) {
             log.error("Error writing metrics to text file {}", filename, e);
         }
+        event.finish(filename, metrics.size(), file.length());
     }
 
 //    public static void exportToExcel(Map<String, Double> newMetrics, String fileName) throws IOException {
@@ -109,6 +112,8 @@ public class ExportToFile {
 // ...
 
     public static void exportToExcel(Map<String, Double> newMetrics, String fileName) throws IOException {
+        FlightEvents.ExportWrite event = new FlightEvents.ExportWrite();
+        event.begin();
         File file = new File(fileName);
         Workbook workbook;
         Sheet sheet;
@@ -185,6 +190,7 @@ public class ExportToFile {
             workbook.write(fos);
             workbook.close();
         }
+        event.finish(fileName, lastColNum, file.length());
     }
 
     // ✅ Helper to convert snake_case or lower-case to CamelCase
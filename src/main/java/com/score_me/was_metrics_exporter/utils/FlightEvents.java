@@ -0,0 +1,149 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import jdk.jfr.*;
+
+/**
+ * JDK Flight Recorder events of the exporter, recorded by {@link com.score_me.was_metrics_exporter.service.FlightRecorderService}.
+ * Stack traces are off: the work hops between Reactor threads, so they would not show who asked for it.
+ * Each event is only filled in when {@link Event#shouldCommit()} says it will be recorded, so a disabled or
+ * below-threshold event costs a constructor call and a clock read.
+ */
+public final class FlightEvents {
+
+    public static final String CATEGORY = "WAS Metrics Exporter";
+
+    private FlightEvents() {
+    }
+
+    @Name("com.score_me.was_metrics_exporter.Refresh")
+    @Label("Metric Refresh")
+    @Description("Refresh of a metric family, or of every family in scrape mode")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class Refresh extends Event {
+        @Label("Family")
+        private String family;
+        @Label("API Calls")
+        private long apiCalls;
+        @Label("Received Bytes")
+        @DataAmount
+        private long receivedBytes;
+        @Label("Succeeded")
+        private boolean succeeded;
+
+        public void finish(String family, Deadline deadline, boolean succeeded) {
+            end();
+            if (!shouldCommit()) return;
+            this.family = family;
+            this.apiCalls = deadline.getCalls();
+            this.receivedBytes = deadline.getReceivedBytes();
+            this.succeeded = succeeded;
+            commit();
+        }
+    }
+
+    @Name("com.score_me.was_metrics_exporter.ApiCall")
+    @Label("WAS API Call")
+    @Description("GET request to the WAS API, with the IDs of its URI replaced by {id}")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class ApiCall extends Event {
+        @Label("URI")
+        private String uri;
+        @Label("Status")
+        @Description("HTTP status, 0 if there was no response and -1 if the call was cancelled")
+        private int status;
+        @Label("Received Bytes")
+        @DataAmount
+        private long receivedBytes;
+
+        private volatile boolean finished;
+
+        /**
+         * Method to add the size of a chunk of the response body; chunks of a response arrive one at a time
+         */
+        public void countReceivedBytes(long bytes) {
+            receivedBytes += bytes;
+        }
+
+        public void finish(String uri, int status) {
+            if (finished) return;
+            finished = true;
+            end();
+            if (!shouldCommit()) return;
+            this.uri = template(uri);
+            this.status = status;
+            commit();
+        }
+
+        /**
+         * @return the path of the URI with every segment that is not a plain word replaced by {id}, without the query
+         */
+        static String template(String uri) {
+            int query = uri.indexOf('?');
+            String path = query < 0 ? uri : uri.substring(0, query);
+            StringBuilder template = new StringBuilder(path.length());
+            for (String segment : path.split("/", -1)) {
+                if (!template.isEmpty() || path.startsWith("/")) template.append('/');
+                template.append(segment.isEmpty() || segment.chars().allMatch(c -> (c >= 'a' && c <= 'z') || c == '-')
+                        ? segment : "{id}");
+            }
+            return path.startsWith("/") ? template.substring(1) : template.toString();
+        }
+    }
+
+    @Name("com.score_me.was_metrics_exporter.GraphBuild")
+    @Label("Flow Graph Build")
+    @Description("Crawl of the process group hierarchy into a flow snapshot")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class GraphBuild extends Event {
+        @Label("Root Process Group")
+        private String rootId;
+        @Label("Resources")
+        private String resources;
+        @Label("Process Groups")
+        private int processGroups;
+        @Label("Processors")
+        @Description("Nodes of the graph")
+        private int processors;
+        @Label("Connections")
+        @Description("Edges of the graph")
+        private int connections;
+
+        public void finish(String rootId, String resources, int processGroups, int processors, int connections) {
+            end();
+            if (!shouldCommit()) return;
+            this.rootId = rootId;
+            this.resources = resources;
+            this.processGroups = processGroups;
+            this.processors = processors;
+            this.connections = connections;
+            commit();
+        }
+    }
+
+    @Name("com.score_me.was_metrics_exporter.ExportWrite")
+    @Label("Export Write")
+    @Description("Write of an exported metrics file")
+    @Category(CATEGORY)
+    @StackTrace(false)
+    public static final class ExportWrite extends Event {
+        @Label("File")
+        private String file;
+        @Label("Entries")
+        private int entries;
+        @Label("File Size")
+        @DataAmount
+        private long bytes;
+
+        public void finish(String file, int entries, long bytes) {
+            end();
+            if (!shouldCommit()) return;
+            this.file = file;
+            this.entries = entries;
+            this.bytes = bytes;
+            commit();
+        }
+    }
+}
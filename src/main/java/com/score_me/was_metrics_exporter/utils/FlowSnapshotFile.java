@@ -0,0 +1,219 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.*;
+
+/**
+ * Compact binary encoding of a {@link FlowSnapshot}, used to publish structure metrics right after a restart.
+ * <p>
+ * Every distinct string (ids, names, types) is written once to a table and referred to by its index, as a varint;
+ * ids repeat across groups, processors and connections, so the file is a fraction of the size of the API responses.
+ * A file is written to a temporary sibling and moved into place, so a crash never leaves a partial file behind.
+ */
+public final class FlowSnapshotFile {
+
+    private static final int MAGIC = 0x57465331; // "WFS1"
+    // version 2 adds the queued count of every connection
+    private static final int VERSION = 2;
+
+    private FlowSnapshotFile() {
+    }
+
+    /**
+     * Method to write a snapshot, replacing the file atomically
+     * @param snapshot snapshot to write
+     * @param path destination file
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(FlowSnapshot snapshot, Path path) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        Map<String, Integer> strings = new LinkedHashMap<>();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(body);
+
+        writeVarint(out, snapshot.getProcessGroups().size());
+        for (ProcessGroupNodeEntity group : snapshot.getProcessGroups().values()) {
+            writeString(out, strings, group.getId());
+            writeString(out, strings, group.getName());
+            writeVarint(out, group.getChildren().size());
+            for (String child : group.getChildren()) writeString(out, strings, child);
+        }
+        writeVarint(out, snapshot.getProcessorsByGroup().size());
+        for (Map.Entry<String, List<ProcessorNodeEntity>> e : snapshot.getProcessorsByGroup().entrySet()) {
+            writeString(out, strings, e.getKey());
+            writeVarint(out, e.getValue().size());
+            for (ProcessorNodeEntity p : e.getValue()) {
+                writeString(out, strings, p.getId());
+                writeString(out, strings, p.getName());
+                writeString(out, strings, p.getType());
+                writeVarint(out, p.getActiveThreadCount());
+            }
+        }
+        writeVarint(out, snapshot.getConnectionsByGroup().size());
+        for (Map.Entry<String, List<ConnectionEntity>> e : snapshot.getConnectionsByGroup().entrySet()) {
+            writeString(out, strings, e.getKey());
+            writeVarint(out, e.getValue().size());
+            for (ConnectionEntity c : e.getValue()) {
+                writeString(out, strings, c.getId());
+                writeString(out, strings, c.getSourceId());
+                writeString(out, strings, c.getDestinationId());
+                writeVarint(out, c.getQueuedCount());
+            }
+        }
+        writePorts(out, strings, snapshot.getInputPortsByGroup());
+        writePorts(out, strings, snapshot.getOutputPortsByGroup());
+        out.flush();
+
+        try (DataOutputStream file = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            file.writeInt(MAGIC);
+            file.writeInt(VERSION);
+            file.writeUTF(snapshot.getRootId());
+            file.writeLong(snapshot.getCapturedAt().toEpochMilli());
+            int resources = 0;
+            for (FlowResource r : snapshot.getResources()) resources |= 1 << r.ordinal();
+            file.writeInt(resources);
+            file.writeDouble(snapshot.getBackPressurePercent());
+            writeVarint(file, strings.size());
+            for (String s : strings.keySet()) file.writeUTF(s);
+            body.writeTo(file);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Method to read a snapshot written by {@link #write(FlowSnapshot, Path)}, or by the previous version, whose
+     * connections read back with no queued flow files
+     * @param path file to read
+     * @return the snapshot, with the capture time and resources of the crawl that produced it
+     * @throws IOException if the file cannot be read or is not a snapshot file
+     */
+    public static FlowSnapshot read(Path path) throws IOException {
+        // every counted entry takes at least one byte, so no valid count exceeds the size of the file
+        long maxCount = Files.size(path);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != MAGIC) throw new IOException("Not a flow snapshot file: " + path);
+            int version = in.readInt();
+            if (version != 1 && version != VERSION) throw new IOException("Unsupported flow snapshot file version " + version + ": " + path);
+            String rootId = in.readUTF();
+            Instant capturedAt = Instant.ofEpochMilli(in.readLong());
+            int mask = in.readInt();
+            Set<FlowResource> resources = EnumSet.noneOf(FlowResource.class);
+            for (FlowResource r : FlowResource.values()) {
+                if ((mask & (1 << r.ordinal())) != 0) resources.add(r);
+            }
+            FlowSnapshot snapshot = new FlowSnapshot(rootId, resources, capturedAt);
+            snapshot.setBackPressurePercent(in.readDouble());
+
+            String[] strings = new String[readCount(in, maxCount)];
+            for (int i = 0; i < strings.length; i++) strings[i] = in.readUTF();
+
+            int groups = readCount(in, maxCount);
+            for (int i = 0; i < groups; i++) {
+                ProcessGroupNodeEntity group = new ProcessGroupNodeEntity(readString(in, strings), readString(in, strings));
+                int children = readCount(in, maxCount);
+                for (int j = 0; j < children; j++) group.getChildren().add(readString(in, strings));
+                snapshot.getProcessGroups().put(group.getId(), group);
+            }
+            int processorGroups = readCount(in, maxCount);
+            for (int i = 0; i < processorGroups; i++) {
+                String groupId = readString(in, strings);
+                int n = readCount(in, maxCount);
+                List<ProcessorNodeEntity> processors = new ArrayList<>(n);
+                for (int j = 0; j < n; j++) {
+                    ProcessorNodeEntity p = new ProcessorNodeEntity(readString(in, strings), readString(in, strings), readString(in, strings));
+                    p.setActiveThreadCount(readVarint(in));
+                    processors.add(p);
+                }
+                snapshot.getProcessorsByGroup().put(groupId, processors);
+            }
+            int connectionGroups = readCount(in, maxCount);
+            for (int i = 0; i < connectionGroups; i++) {
+                String groupId = readString(in, strings);
+                int n = readCount(in, maxCount);
+                List<ConnectionEntity> connections = new ArrayList<>(n);
+                for (int j = 0; j < n; j++) {
+                    String id = readString(in, strings);
+                    String sourceId = readString(in, strings);
+                    String destinationId = readString(in, strings);
+                    connections.add(new ConnectionEntity(id, sourceId, destinationId, version == 1 ? 0 : readVarint(in)));
+                }
+                snapshot.getConnectionsByGroup().put(groupId, connections);
+            }
+            readPorts(in, strings, maxCount, snapshot.getInputPortsByGroup());
+            readPorts(in, strings, maxCount, snapshot.getOutputPortsByGroup());
+            return snapshot;
+        } catch (EOFException | ArrayIndexOutOfBoundsException e) {
+            throw new IOException("Truncated or corrupt flow snapshot file: " + path, e);
+        }
+    }
+
+    private static void writePorts(DataOutputStream out, Map<String, Integer> strings, Map<String, Integer> ports) throws IOException {
+        writeVarint(out, ports.size());
+        for (Map.Entry<String, Integer> e : ports.entrySet()) {
+            writeString(out, strings, e.getKey());
+            writeVarint(out, e.getValue());
+        }
+    }
+
+    private static void readPorts(DataInputStream in, String[] strings, long maxCount, Map<String, Integer> ports) throws IOException {
+        int n = readCount(in, maxCount);
+        for (int i = 0; i < n; i++) {
+            ports.put(readString(in, strings), readVarint(in));
+        }
+    }
+
+    private static void writeString(DataOutputStream out, Map<String, Integer> strings, String value) throws IOException {
+        // null is index 0
+        if (value == null) {
+            writeVarint(out, 0);
+            return;
+        }
+        writeVarint(out, strings.computeIfAbsent(value, v -> strings.size()) + 1);
+    }
+
+    private static String readString(DataInputStream in, String[] strings) throws IOException {
+        int index = readVarint(in);
+        return index == 0 ? null : strings[index - 1];
+    }
+
+    private static void writeVarint(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarint(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    /**
+     * @return the number of entries that follow, checked so that a corrupt file cannot size an array or list
+     * @throws IOException if the count is negative or above the specified maximum
+     */
+    private static int readCount(DataInputStream in, long max) throws IOException {
+        int count = readVarint(in);
+        if (count < 0 || count > max) throw new IOException("Invalid entry count " + count);
+        return count;
+    }
+}
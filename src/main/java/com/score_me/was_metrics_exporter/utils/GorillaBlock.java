@@ -0,0 +1,218 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import java.util.Arrays;
+
+/**
+ * A block of (timestamp, value) samples compressed as in Facebook's Gorilla TSDB:
+ * timestamps as delta-of-delta with variable-length prefixes, values as the XOR with the previous value,
+ * storing only its meaningful bits. Samples arriving at a regular interval with slowly changing values
+ * take one or two bits each.
+ * <p>
+ * A block is appended to by a single writer and read by decoding it from the start; callers must synchronize
+ * reads of a block that is still being appended to. A sealed block is immutable.
+ */
+public final class GorillaBlock {
+
+    /**
+     * Receives decoded samples
+     */
+    @FunctionalInterface
+    public interface SampleConsumer {
+        void accept(long timestamp, double value);
+    }
+
+    private long[] words = new long[16];
+    private long bitCount = 0;
+
+    private int count = 0;
+    private long firstTimestamp;
+    private long lastTimestamp;
+    private long lastDelta;
+    private long lastValueBits;
+    private int lastLeading = Integer.MAX_VALUE;
+    private int lastTrailing = 0;
+    private boolean sealed = false;
+
+    public int getCount() {
+        return count;
+    }
+
+    public long getFirstTimestamp() {
+        return firstTimestamp;
+    }
+
+    public long getLastTimestamp() {
+        return lastTimestamp;
+    }
+
+    public boolean isSealed() {
+        return sealed;
+    }
+
+    /**
+     * @return bytes of compressed data held by the block
+     */
+    public long sizeBytes() {
+        return (bitCount + 7) / 8;
+    }
+
+    public boolean overlaps(long from, long to) {
+        return count > 0 && firstTimestamp <= to && lastTimestamp >= from;
+    }
+
+    /**
+     * Method to append a sample; timestamps must not decrease and must stay within 2^31 ms of the previous one
+     * @param timestamp epoch millis
+     * @param value sample value
+     */
+    public void append(long timestamp, double value) {
+        if (sealed) throw new IllegalStateException("Block is sealed");
+        long valueBits = Double.doubleToRawLongBits(value);
+        if (count == 0) {
+            firstTimestamp = timestamp;
+            writeBits(timestamp, 64);
+            writeBits(valueBits, 64);
+        } else {
+            if (timestamp < lastTimestamp) throw new IllegalArgumentException("Timestamps must not decrease");
+            long delta = timestamp - lastTimestamp;
+            writeDeltaOfDelta(delta - lastDelta);
+            lastDelta = delta;
+            writeXor(valueBits ^ lastValueBits);
+        }
+        lastTimestamp = timestamp;
+        lastValueBits = valueBits;
+        count++;
+    }
+
+    /**
+     * Method to stop appending and release the unused part of the buffer
+     */
+    public void seal() {
+        if (sealed) return;
+        sealed = true;
+        words = Arrays.copyOf(words, (int) ((bitCount + 63) / 64));
+    }
+
+    /**
+     * Method to decode the samples of the block within a time range
+     * @param from first timestamp to include
+     * @param to last timestamp to include
+     * @param consumer receives the matching samples in time order
+     */
+    public void decode(long from, long to, SampleConsumer consumer) {
+        if (!overlaps(from, to)) return;
+        long[] pos = {0L};
+        long timestamp = readBits(pos, 64);
+        long valueBits = readBits(pos, 64);
+        if (timestamp >= from) consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+
+        long delta = 0;
+        int leading = 0;
+        int trailing = 0;
+        for (int i = 1; i < count; i++) {
+            delta += readDeltaOfDelta(pos);
+            timestamp += delta;
+
+            if (readBits(pos, 1) == 1) {
+                if (readBits(pos, 1) == 1) {
+                    leading = (int) readBits(pos, 5);
+                    int length = (int) readBits(pos, 6);
+                    if (length == 0) length = 64;
+                    trailing = 64 - leading - length;
+                }
+                int length = 64 - leading - trailing;
+                valueBits ^= readBits(pos, length) << trailing;
+            }
+
+            if (timestamp > to) return;
+            if (timestamp >= from) consumer.accept(timestamp, Double.longBitsToDouble(valueBits));
+        }
+    }
+
+    private void writeDeltaOfDelta(long dod) {
+        if (dod == 0) {
+            writeBits(0b0, 1);
+        } else if (dod >= -64 && dod <= 63) {
+            writeBits(0b10, 2);
+            writeBits(dod, 7);
+        } else if (dod >= -256 && dod <= 255) {
+            writeBits(0b110, 3);
+            writeBits(dod, 9);
+        } else if (dod >= -2048 && dod <= 2047) {
+            writeBits(0b1110, 4);
+            writeBits(dod, 12);
+        } else {
+            writeBits(0b1111, 4);
+            writeBits(dod, 32);
+        }
+    }
+
+    private long readDeltaOfDelta(long[] pos) {
+        if (readBits(pos, 1) == 0) return 0;
+        if (readBits(pos, 1) == 0) return signExtend(readBits(pos, 7), 7);
+        if (readBits(pos, 1) == 0) return signExtend(readBits(pos, 9), 9);
+        if (readBits(pos, 1) == 0) return signExtend(readBits(pos, 12), 12);
+        return signExtend(readBits(pos, 32), 32);
+    }
+
+    private void writeXor(long xor) {
+        if (xor == 0) {
+            writeBits(0b0, 1);
+            return;
+        }
+        // the leading zero count is stored in 5 bits
+        int leading = Math.min(Long.numberOfLeadingZeros(xor), 31);
+        int trailing = Long.numberOfTrailingZeros(xor);
+        if (lastLeading != Integer.MAX_VALUE && leading >= lastLeading && trailing >= lastTrailing) {
+            // the meaningful bits fit in the previous window
+            writeBits(0b10, 2);
+            writeBits(xor >>> lastTrailing, 64 - lastLeading - lastTrailing);
+        } else {
+            int length = 64 - leading - trailing;
+            writeBits(0b11, 2);
+            writeBits(leading, 5);
+            writeBits(length == 64 ? 0 : length, 6);
+            writeBits(xor >>> trailing, length);
+            lastLeading = leading;
+            lastTrailing = trailing;
+        }
+    }
+
+    private static long signExtend(long bits, int width) {
+        int shift = 64 - width;
+        return (bits << shift) >> shift;
+    }
+
+    private void writeBits(long value, int width) {
+        if (width == 0) return;
+        if (width < 64) value &= (1L << width) - 1;
+        int wordIndex = (int) (bitCount >>> 6);
+        int offset = (int) (bitCount & 63);
+        if (wordIndex + 1 >= words.length) {
+            words = Arrays.copyOf(words, words.length * 2);
+        }
+        int free = 64 - offset;
+        if (width <= free) {
+            words[wordIndex] |= value << (free - width);
+        } else {
+            words[wordIndex] |= value >>> (width - free);
+            words[wordIndex + 1] |= value << (64 - (width - free));
+        }
+        bitCount += width;
+    }
+
+    private long readBits(long[] pos, int width) {
+        if (width == 0) return 0L;
+        int wordIndex = (int) (pos[0] >>> 6);
+        int offset = (int) (pos[0] & 63);
+        int free = 64 - offset;
+        long value;
+        if (width <= free) {
+            value = words[wordIndex] >>> (free - width);
+        } else {
+            value = (words[wordIndex] << (width - free)) | (words[wordIndex + 1] >>> (64 - (width - free)));
+        }
+        pos[0] += width;
+        return width == 64 ? value : value & ((1L << width) - 1);
+    }
+}
@@ -2,16 +2,28 @@ package com.score_me.was_metrics_exporter.utils;
 
 import com.fasterxml.jackson.databind.JsonNode;
 import com.score_me.was_metrics_exporter.client.FlowApiClient;
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowResource;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
 import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
 import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import com.score_me.was_metrics_exporter.exceptions.DeadlineExceededException;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
+import reactor.core.Exceptions;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * GraphBuilder is a utility class for building a graph representation of processors and process groups
@@ -25,6 +37,9 @@ public class GraphBuilder {
     private static final String PG_ENDPOINT = "/process-groups/";
     private final FlowApiClient client;
 
+    @Value("${monitor.crawl-concurrency:8}")
+    private int crawlConcurrency = 8;
+
     public GraphBuilder(FlowApiClient client) {
         this.client = client;
     }
@@ -75,6 +90,63 @@ public class GraphBuilder {
         return pgMap;
     }
 
+    /**
+     * Method to capture the whole hierarchy below the specified process group in one crawl.
+     * Blocking variant of {@link #buildSnapshotAsync(String, Set)} fetching every resource.
+     * @param groupId
+     * @return FlowSnapshot rooted at the specified process group
+     * @throws IOException if the root process group cannot be fetched
+     */
+    public FlowSnapshot buildSnapshot(String groupId) throws IOException {
+        try {
+            return buildSnapshotAsync(groupId, EnumSet.allOf(FlowResource.class)).block();
+        } catch (RuntimeException e) {
+            Throwable cause = Exceptions.unwrap(e);
+            if (cause instanceof IOException io) throw io;
+            throw e;
+        }
+    }
+
+    /**
+     * Method to capture the whole hierarchy below the specified process group in one crawl.
+     * Every process group is visited exactly once and its processors, connections and ports
+     * are fetched alongside, so that metrics for any group in the hierarchy can be computed
+     * from the returned {@link FlowSnapshot} without further API calls.
+     * Sibling process groups are fetched concurrently, bounded by 'monitor.crawl-concurrency';
+     * cancelling the returned Mono cancels every in-flight request of the crawl.
+     * Only the requested resources are fetched; the process group hierarchy is always crawled.
+     * Every completed crawl is reported as a {@link FlightEvents.GraphBuild} flight recorder event.
+     * @param groupId
+     * @param resources resources to fetch for every process group
+     * @return Mono emitting the FlowSnapshot rooted at the specified process group
+     */
+    public Mono<FlowSnapshot> buildSnapshotAsync(String groupId, Set<FlowResource> resources) {
+        return Mono.defer(() -> {
+            FlightEvents.GraphBuild event = new FlightEvents.GraphBuild();
+            if (!event.isEnabled()) return crawl(groupId, resources);
+            event.begin();
+            return crawl(groupId, resources).doOnNext(snapshot -> event.finish(snapshot.getRootId(),
+                    snapshot.getResources().toString(), snapshot.getProcessGroups().size(),
+                    snapshot.getProcessorsByGroup().values().stream().mapToInt(List::size).sum(),
+                    snapshot.getConnectionsByGroup().values().stream().mapToInt(List::size).sum()));
+        });
+    }
+
+    private Mono<FlowSnapshot> crawl(String groupId, Set<FlowResource> resources) {
+        return client.getAsync(PG_ENDPOINT + groupId)
+                .filter(root -> root.has("id"))
+                .switchIfEmpty(Mono.error(() -> new IOException("Failed to fetch root PG")))
+                .flatMap(root -> {
+                    String rootId = root.get("id").asText();
+                    JsonNode rootComp = root.get("component");
+                    String rootName = rootComp != null && rootComp.has("name") ? rootComp.get("name").asText() : "-";
+                    return fetchGroup(rootId, rootName, resources)
+                            .expand(group -> Flux.fromIterable(group.children().entrySet())
+                                    .flatMap(child -> fetchGroup(child.getKey(), child.getValue(), resources), crawlConcurrency))
+                            .collect(() -> new FlowSnapshot(rootId, resources), GraphBuilder::addToSnapshot);
+                });
+    }
+
     /**
      * Method to get the input or output ports of a process group
      * This method will return a map of port ID to port name for the specified port type
@@ -198,6 +270,129 @@ public class GraphBuilder {
     }
 
 
+    /**
+     * Everything fetched for a single process group during a snapshot crawl
+     */
+    private record GroupData(String id, String name, List<ProcessorNodeEntity> processors,
+                             List<ConnectionEntity> connections, int inputPorts, int outputPorts,
+                             Map<String, String> children) {
+    }
+
+    private static void addToSnapshot(FlowSnapshot snapshot, GroupData group) {
+        if (snapshot.getProcessGroups().containsKey(group.id())) return;
+        ProcessGroupNodeEntity node = new ProcessGroupNodeEntity(group.id(), group.name());
+        node.getChildren().addAll(group.children().keySet());
+        snapshot.getProcessGroups().put(group.id(), node);
+        snapshot.getProcessorsByGroup().put(group.id(), group.processors());
+        snapshot.getConnectionsByGroup().put(group.id(), group.connections());
+        snapshot.getInputPortsByGroup().put(group.id(), group.inputPorts());
+        snapshot.getOutputPortsByGroup().put(group.id(), group.outputPorts());
+    }
+
+    /**
+     * Method to fetch a single process group for a snapshot crawl.
+     * Child names are taken from the listing of the parent, so each process group costs one call per
+     * requested resource type (children, processors, connections, input ports, output ports), issued concurrently.
+     * A failing call is logged and treated as empty, as in the blocking crawl, unless the refresh deadline passed.
+     * @param pgId
+     * @param name
+     * @param resources
+     * @return Mono emitting the {@link GroupData} of the process group
+     */
+    private Mono<GroupData> fetchGroup(String pgId, String name, Set<FlowResource> resources) {
+        Mono<List<ProcessorNodeEntity>> processors = !resources.contains(FlowResource.PROCESSORS) ? Mono.just(List.of())
+                : fetchOrEmpty(pgId, "/processors").map(GraphBuilder::parseProcessors).defaultIfEmpty(List.of());
+        Mono<List<ConnectionEntity>> connections = !resources.contains(FlowResource.CONNECTIONS) ? Mono.just(List.of())
+                : fetchOrEmpty(pgId, "/connections").map(GraphBuilder::parseConnections).defaultIfEmpty(List.of());
+        Mono<Integer> inputPorts = !resources.contains(FlowResource.INPUT_PORTS) ? Mono.just(0)
+                : fetchOrEmpty(pgId, "/input-ports").map(ports -> parsePortCount(ports, "inputPorts")).defaultIfEmpty(0);
+        Mono<Integer> outputPorts = !resources.contains(FlowResource.OUTPUT_PORTS) ? Mono.just(0)
+                : fetchOrEmpty(pgId, "/output-ports").map(ports -> parsePortCount(ports, "outputPorts")).defaultIfEmpty(0);
+        Mono<Map<String, String>> children = fetchOrEmpty(pgId, "/process-groups")
+                .map(GraphBuilder::parseChildren).defaultIfEmpty(Map.of());
+
+        return Mono.zip(processors, connections, inputPorts, outputPorts, children)
+                .map(t -> new GroupData(pgId, name, t.getT1(), t.getT2(), t.getT3(), t.getT4(), t.getT5()));
+    }
+
+    private Mono<JsonNode> fetchOrEmpty(String pgId, String resource) {
+        return client.getAsync(PG_ENDPOINT + pgId + resource)
+                .onErrorResume(e -> !(e instanceof DeadlineExceededException), e -> {
+                    printProcessGroupError(pgId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
+
+    /**
+     * Method to parse the processors placed directly in a process group, without connections
+     * @param procs response of /process-groups/{id}/processors
+     * @return List of {@link ProcessorNodeEntity} with name, type and active thread count
+     */
+    private static List<ProcessorNodeEntity> parseProcessors(JsonNode procs) {
+        List<ProcessorNodeEntity> out = new ArrayList<>();
+        if (!procs.has("processors")) return out;
+        for (JsonNode p : procs.get("processors")) {
+            JsonNode status = p.get("status");
+            if (status == null || !status.has("aggregateSnapshot")) continue;
+            JsonNode snap = status.get("aggregateSnapshot");
+            if (!snap.has("id")) continue;
+            String name = snap.has("name") ? snap.get("name").asText() : "-";
+            String type = snap.has("type") ? snap.get("type").asText() : "unknown";
+            ProcessorNodeEntity node = new ProcessorNodeEntity(snap.get("id").asText(), name, type);
+            node.setActiveThreadCount(snap.has("activeThreadCount") ? snap.get("activeThreadCount").asInt() : 0);
+            out.add(node);
+        }
+        return out;
+    }
+
+    /**
+     * Method to parse the connections placed directly in a process group
+     * @param conns response of /process-groups/{id}/connections
+     * @return List of {@link ConnectionEntity}, with the flow files queued in each
+     */
+    private static List<ConnectionEntity> parseConnections(JsonNode conns) {
+        List<ConnectionEntity> out = new ArrayList<>();
+        if (!conns.has("connections")) return out;
+        for (JsonNode c : conns.get("connections")) {
+            JsonNode comp = c.get("component");
+            if (comp == null) continue;
+            JsonNode src = comp.get("source");
+            JsonNode dst = comp.get("destination");
+            if (src == null || dst == null || !src.has("id") || !dst.has("id")) continue;
+            String id = c.has("id") ? c.get("id").asText() : null;
+            int queued = c.path("status").path("aggregateSnapshot").path("flowFilesQueued").asInt(0);
+            out.add(new ConnectionEntity(id, src.get("id").asText(), dst.get("id").asText(), queued));
+        }
+        return out;
+    }
+
+    private static int parsePortCount(JsonNode ports, String fieldName) {
+        Set<String> ids = new HashSet<>();
+        if (ports.has(fieldName)) {
+            for (JsonNode port : ports.get(fieldName)) {
+                if (port.has("id")) ids.add(port.get("id").asText());
+            }
+        }
+        return ids.size();
+    }
+
+    /**
+     * Method to parse the direct children of a process group
+     * @param subGroups response of /process-groups/{id}/process-groups
+     * @return Map of child process group ID to name, in listing order
+     */
+    private static Map<String, String> parseChildren(JsonNode subGroups) {
+        Map<String, String> children = new LinkedHashMap<>();
+        if (!subGroups.has("processGroups")) return children;
+        for (JsonNode child : subGroups.get("processGroups")) {
+            if (!child.has("id")) continue;
+            JsonNode comp = child.get("component");
+            String childName = comp != null && comp.has("name") ? comp.get("name").asText() : "-";
+            children.put(child.get("id").asText(), childName);
+        }
+        return children;
+    }
+
     /**
      * Method to add processors to the processor map
      * This method will traverse the process group hierarchy and build a map of {@link ProcessorNodeEntity}
@@ -0,0 +1,132 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import java.util.Arrays;
+
+/**
+ * Fixed-resolution downsampling of one series: a ring of time buckets, each holding the min, max, sum and count
+ * of the samples that fell into it. Samples are added incrementally; a bucket is reused once the ring wraps,
+ * so a tier holds the last 'capacity' buckets. Not thread safe.
+ */
+public final class RollupTier {
+
+    /**
+     * Summary of the samples of one or more buckets
+     */
+    public record Aggregate(double min, double max, double sum, long count) {
+        public static final Aggregate EMPTY = new Aggregate(Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, 0.0, 0L);
+
+        public double avg() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        public Aggregate merge(Aggregate other) {
+            if (other.count == 0) return this;
+            if (count == 0) return other;
+            return new Aggregate(Math.min(min, other.min), Math.max(max, other.max), sum + other.sum, count + other.count);
+        }
+
+        public Aggregate plus(double value) {
+            return merge(new Aggregate(value, value, value, 1L));
+        }
+    }
+
+    /**
+     * Receives non-empty buckets
+     */
+    @FunctionalInterface
+    public interface BucketConsumer {
+        void accept(long start, Aggregate aggregate);
+    }
+
+    private final long resolutionMs;
+    private final int capacity;
+    private final long[] starts;
+    private final double[] min;
+    private final double[] max;
+    private final double[] sum;
+    private final long[] count;
+
+    public RollupTier(long resolutionMs, int capacity) {
+        this.resolutionMs = resolutionMs;
+        this.capacity = capacity;
+        this.starts = new long[capacity];
+        Arrays.fill(starts, Long.MIN_VALUE);
+        this.min = new double[capacity];
+        this.max = new double[capacity];
+        this.sum = new double[capacity];
+        this.count = new long[capacity];
+    }
+
+    public long getResolutionMs() {
+        return resolutionMs;
+    }
+
+    /**
+     * @return the span of time the tier can hold
+     */
+    public long getRetentionMs() {
+        return resolutionMs * capacity;
+    }
+
+    public long bucketStart(long timestamp) {
+        return Math.floorDiv(timestamp, resolutionMs) * resolutionMs;
+    }
+
+    public void add(long timestamp, double value) {
+        long start = bucketStart(timestamp);
+        int i = index(start);
+        if (starts[i] != start) {
+            // older than what the slot holds: already rolled out of the tier
+            if (start < starts[i]) return;
+            starts[i] = start;
+            min[i] = value;
+            max[i] = value;
+            sum[i] = value;
+            count[i] = 1;
+            return;
+        }
+        if (value < min[i]) min[i] = value;
+        if (value > max[i]) max[i] = value;
+        sum[i] += value;
+        count[i]++;
+    }
+
+    /**
+     * Method to visit the non-empty buckets starting within a time range, oldest first.
+     * At most 'capacity' buckets are visited whatever the range, the latest ones.
+     * @param from first bucket start to include
+     * @param to last bucket start to include
+     * @param consumer receives each bucket
+     */
+    public void forEach(long from, long to, BucketConsumer consumer) {
+        if (from > to) return;
+        long lastBucket = Math.floorDiv(to, resolutionMs);
+        long span = lastBucket - Math.floorDiv(from, resolutionMs);
+        // the difference of two bucket numbers may exceed Long.MAX_VALUE, but never 2^64 since from <= to
+        int buckets = Long.compareUnsigned(span, capacity - 1) < 0 ? (int) span + 1 : capacity;
+        long firstBucket = lastBucket - (buckets - 1);
+        for (int b = 0; b < buckets; b++) {
+            long start = (firstBucket + b) * resolutionMs;
+            int i = index(start);
+            if (starts[i] == start && count[i] > 0) {
+                consumer.accept(start, new Aggregate(min[i], max[i], sum[i], count[i]));
+            }
+        }
+    }
+
+    /**
+     * Method to combine the buckets starting within a time range
+     * @param from first bucket start to include
+     * @param to last bucket start to include
+     * @return the combined aggregate, {@link Aggregate#EMPTY} if no bucket holds samples
+     */
+    public Aggregate aggregate(long from, long to) {
+        Aggregate[] acc = {Aggregate.EMPTY};
+        forEach(from, to, (start, a) -> acc[0] = acc[0].merge(a));
+        return acc[0];
+    }
+
+    private int index(long start) {
+        return (int) Math.floorMod(Math.floorDiv(start, resolutionMs), (long) capacity);
+    }
+}
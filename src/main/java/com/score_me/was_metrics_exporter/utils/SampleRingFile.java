@@ -0,0 +1,271 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Fixed-size, memory-mapped ring of (metric, timestamp, value) samples that survives restarts.
+ * <p>
+ * Layout, little endian:
+ * <ul>
+ *     <li>0: magic, version, record size, capacity and the number of metric names</li>
+ *     <li>32, 48: two commit slots, each the number of records written and a check word. They are written
+ *     alternately, so a slot torn by a crash leaves the other one valid</li>
+ *     <li>64: table of up to {@value #MAX_NAMES} metric names, records refer to a name by its index</li>
+ *     <li>{@value #RECORDS_OFFSET}: the records, 32 bytes each: sequence number, timestamp, value, name index</li>
+ * </ul>
+ * A record is written by clearing its sequence number, storing its fields and then storing its sequence number
+ * with release semantics; on open, records whose sequence number does not match their slot are ignored, so a
+ * record torn by a crash is never replayed. Appending costs a few stores to the mapped buffer; the operating
+ * system writes the pages back, so a crash of the process loses nothing and a crash of the host loses at most
+ * what was not yet written back.
+ * <p>
+ * Appends are made by a single thread.
+ */
+@Slf4j
+public final class SampleRingFile implements AutoCloseable {
+
+    /**
+     * Receives replayed samples
+     */
+    @FunctionalInterface
+    public interface SampleVisitor {
+        void accept(String metric, long timestamp, double value);
+    }
+
+    private static final long MAGIC = 0x474E495253415700L; // a 0 byte followed by "WASRING", little endian
+    private static final int VERSION = 1;
+    private static final int RECORD_BYTES = 32;
+    private static final int COMMIT_OFFSET = 32;
+    private static final int NAMES_OFFSET = 64;
+    private static final int NAME_BYTES = 48;
+    private static final int MAX_NAMES = 128;
+    private static final int RECORDS_OFFSET = 8192;
+    private static final long CHECK_SALT = 0x5DEECE66DL;
+
+    private static final VarHandle LONGS = MethodHandles.byteBufferViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final Path path;
+    private final int capacity;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    // number of records written so far, the next record goes to slot next % capacity
+    private long next;
+    private long commits;
+    private boolean namesFull = false;
+
+    private SampleRingFile(Path path, int capacity, FileChannel channel, MappedByteBuffer buffer) {
+        this.path = path;
+        this.capacity = capacity;
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Method to map a ring file, creating it or resetting it if it does not hold a ring of the given capacity
+     * @param path file to map
+     * @param capacity number of records the ring holds
+     * @return the mapped ring, positioned after its last complete record
+     * @throws IOException if the file cannot be created or mapped
+     */
+    public static SampleRingFile open(Path path, int capacity) throws IOException {
+        if (capacity <= 0 || capacity > (Integer.MAX_VALUE - RECORDS_OFFSET) / RECORD_BYTES) {
+            throw new IllegalArgumentException("Invalid ring capacity: " + capacity);
+        }
+        long size = RECORDS_OFFSET + (long) capacity * RECORD_BYTES;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) Files.createDirectories(parent);
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            boolean fresh = channel.size() != size;
+            if (fresh) channel.truncate(0);
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            SampleRingFile ring = new SampleRingFile(path, capacity, channel, buffer);
+            if (fresh || !ring.headerMatches()) {
+                if (!fresh) log.warn("Ring file {} has an incompatible header, starting a new one", path);
+                ring.format();
+            } else {
+                ring.load();
+            }
+            return ring;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * @return number of records the ring currently holds
+     */
+    public int size() {
+        return (int) Math.min(next, capacity);
+    }
+
+    /**
+     * Method to store a sample
+     * @param metric metric name
+     * @param timestamp epoch millis
+     * @param value sample value
+     * @return false if the name table is full and the metric cannot be stored
+     */
+    public boolean append(String metric, long timestamp, double value) {
+        int id = idOf(metric);
+        if (id < 0) return false;
+        int offset = recordOffset(next);
+        long seq = next + 1;
+        // a record is valid only once its sequence number is stored, after its fields
+        LONGS.setRelease(buffer, offset, 0L);
+        buffer.putLong(offset + 8, timestamp);
+        buffer.putDouble(offset + 16, value);
+        buffer.putInt(offset + 24, id);
+        LONGS.setRelease(buffer, offset, seq);
+        next = seq;
+        return true;
+    }
+
+    /**
+     * Method to record in the header that every record appended so far is complete.
+     * Records appended after the last commit are still replayed if they are intact; committing bounds the scan.
+     */
+    public void commit() {
+        int slot = COMMIT_OFFSET + (int) (commits & 1) * 16;
+        LONGS.setRelease(buffer, slot, next);
+        LONGS.setRelease(buffer, slot + 8, check(next));
+        commits++;
+    }
+
+    /**
+     * Method to visit the samples held by the ring, oldest first
+     * @param visitor receives each sample
+     */
+    public void replay(SampleVisitor visitor) {
+        for (long i = Math.max(0, next - capacity); i < next; i++) {
+            int offset = recordOffset(i);
+            if ((long) LONGS.getAcquire(buffer, offset) != i + 1) continue;
+            int id = buffer.getInt(offset + 24);
+            if (id < 0 || id >= names.size()) continue;
+            visitor.accept(names.get(id), buffer.getLong(offset + 8), buffer.getDouble(offset + 16));
+        }
+    }
+
+    public List<String> getNames() {
+        return Collections.unmodifiableList(names);
+    }
+
+    /**
+     * Method to write back the mapped pages and release the file
+     */
+    @Override
+    public void close() throws IOException {
+        commit();
+        buffer.force();
+        channel.close();
+    }
+
+    private boolean headerMatches() {
+        return buffer.getLong(0) == MAGIC
+                && buffer.getInt(8) == VERSION
+                && buffer.getInt(12) == RECORD_BYTES
+                && buffer.getLong(16) == capacity;
+    }
+
+    private void format() {
+        for (int i = 0; i < RECORDS_OFFSET; i += 8) {
+            buffer.putLong(i, 0L);
+        }
+        buffer.putInt(8, VERSION);
+        buffer.putInt(12, RECORD_BYTES);
+        buffer.putLong(16, capacity);
+        INTS.setRelease(buffer, 24, 0);
+        // the magic goes last: a header torn while formatting is formatted again
+        LONGS.setRelease(buffer, 0, MAGIC);
+        next = 0;
+        commit();
+    }
+
+    private void load() {
+        int count = Math.min((int) INTS.getAcquire(buffer, 24), MAX_NAMES);
+        for (int i = 0; i < count; i++) {
+            int offset = NAMES_OFFSET + i * NAME_BYTES;
+            int length = Math.min(buffer.get(offset) & 0xFF, NAME_BYTES - 1);
+            byte[] bytes = new byte[length];
+            buffer.get(offset + 1, bytes);
+            String name = new String(bytes, StandardCharsets.UTF_8);
+            nameIds.put(name, i);
+            names.add(name);
+        }
+
+        long committed = 0;
+        for (int slot = COMMIT_OFFSET; slot <= COMMIT_OFFSET + 16; slot += 16) {
+            long seq = (long) LONGS.getAcquire(buffer, slot);
+            if ((long) LONGS.getAcquire(buffer, slot + 8) == check(seq) && seq > committed) committed = seq;
+        }
+        // records appended after the last commit are kept as long as they are complete and in sequence
+        long end = committed;
+        while ((long) LONGS.getAcquire(buffer, recordOffset(end)) == end + 1) {
+            end++;
+        }
+        next = end;
+        commits = 0;
+        commit();
+        log.info("Mapped ring file {}: {} samples of {} metrics, {} appended after the last commit",
+                path, size(), names.size(), end - committed);
+    }
+
+    private int idOf(String metric) {
+        Integer id = nameIds.get(metric);
+        if (id != null) return id;
+        byte[] bytes = metric.getBytes(StandardCharsets.UTF_8);
+        if (names.size() >= MAX_NAMES || bytes.length >= NAME_BYTES) {
+            if (!namesFull) {
+                log.warn("Ring file {} cannot store metric '{}', the name table is full or the name is too long", path, metric);
+                namesFull = true;
+            }
+            return -1;
+        }
+        int index = names.size();
+        int offset = NAMES_OFFSET + index * NAME_BYTES;
+        buffer.put(offset, (byte) bytes.length);
+        buffer.put(offset + 1, bytes);
+        // the entry is complete before the count covers it
+        INTS.setRelease(buffer, 24, index + 1);
+        nameIds.put(metric, index);
+        names.add(metric);
+        return index;
+    }
+
+    private int recordOffset(long index) {
+        return RECORDS_OFFSET + (int) (index % capacity) * RECORD_BYTES;
+    }
+
+    private static long check(long seq) {
+        return Long.rotateLeft(seq, 17) ^ CHECK_SALT;
+    }
+}
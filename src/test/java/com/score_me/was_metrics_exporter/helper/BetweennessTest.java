@@ -0,0 +1,121 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BetweennessTest {
+
+    private static ForkJoinPool pool;
+
+    @BeforeAll
+    static void startPool() {
+        pool = new ForkJoinPool(4);
+    }
+
+    @AfterAll
+    static void stopPool() {
+        pool.shutdown();
+    }
+
+    /**
+     * Method to build the graph of a single process group whose processors are named by their number
+     * @param edges source and destination of every connection
+     */
+    private static ProcessorGraph graph(int processors, int[][] edges) {
+        FlowSnapshot snapshot = new FlowSnapshot("root");
+        snapshot.getProcessGroups().put("root", new ProcessGroupNodeEntity("root", "root"));
+        List<ProcessorNodeEntity> nodes = new ArrayList<>();
+        for (int p = 0; p < processors; p++) nodes.add(new ProcessorNodeEntity(String.valueOf(p), "P" + p, "type"));
+        List<ConnectionEntity> connections = new ArrayList<>();
+        for (int[] e : edges) connections.add(new ConnectionEntity("c" + connections.size(), String.valueOf(e[0]), String.valueOf(e[1])));
+        snapshot.getProcessorsByGroup().put("root", nodes);
+        snapshot.getConnectionsByGroup().put("root", connections);
+        return ProcessorGraph.of(snapshot, "root");
+    }
+
+    private static ProcessorGraph path(int n) {
+        int[][] edges = new int[n - 1][];
+        for (int p = 0; p + 1 < n; p++) edges[p] = new int[]{p, p + 1};
+        return graph(n, edges);
+    }
+
+    /**
+     * @return the scores by processor number rather than vertex number
+     */
+    private static double[] byProcessor(ProcessorGraph graph, double[] scores) {
+        double[] byProcessor = new double[graph.size()];
+        for (int v = 0; v < graph.size(); v++) byProcessor[Integer.parseInt(graph.id(v))] = scores[v];
+        return byProcessor;
+    }
+
+    @Test
+    void scoresAPath() {
+        int n = 10;
+        ProcessorGraph graph = path(n);
+        double[] scores = byProcessor(graph, Betweenness.compute(graph, 0, 42, pool));
+        for (int p = 0; p < n; p++) {
+            // the paths from each of the p processors before it to each of the n - 1 - p after it
+            assertEquals((double) p * (n - 1 - p) / ((n - 1) * (n - 2)), scores[p], 1e-12, "processor " + p);
+        }
+    }
+
+    @Test
+    void scoresAStar() {
+        // processors 1..3 feed hub 0, which feeds 4..7
+        int[][] edges = {{1, 0}, {2, 0}, {3, 0}, {0, 4}, {0, 5}, {0, 6}, {0, 7}};
+        ProcessorGraph graph = graph(8, edges);
+        double[] scores = byProcessor(graph, Betweenness.compute(graph, 0, 42, pool));
+        assertEquals(3.0 * 4 / (7 * 6), scores[0], 1e-12);
+        for (int p = 1; p < 8; p++) assertEquals(0.0, scores[p], "processor " + p);
+    }
+
+    @Test
+    void samplingEverySourceIsExact() {
+        ProcessorGraph graph = path(40);
+        double[] exact = Betweenness.compute(graph, 0, 42, pool);
+        assertArrayEquals(exact, Betweenness.compute(graph, graph.size(), 7, pool), 1e-12);
+        assertArrayEquals(exact, Betweenness.compute(graph, graph.size() * 2, 7, pool), 1e-12);
+    }
+
+    @Test
+    void sampledScoresAverageToTheExactOnes() {
+        ProcessorGraph graph = path(40);
+        double[] exact = Betweenness.compute(graph, 0, 42, pool);
+        double[] mean = new double[graph.size()];
+        int runs = 400;
+        for (int seed = 0; seed < runs; seed++) {
+            double[] sampled = Betweenness.compute(graph, 10, seed, pool);
+            for (int v = 0; v < mean.length; v++) mean[v] += sampled[v] / runs;
+        }
+        for (int v = 0; v < mean.length; v++) {
+            assertEquals(exact[v], mean[v], 0.1 * exact[v] + 1e-12, "vertex " + graph.id(v));
+        }
+    }
+
+    @Test
+    void forkJoinSlicesAddUpToOneSlice() {
+        // a path with shortcuts, so vertices have several shortest paths between them
+        List<int[]> edges = new ArrayList<>();
+        int n = 200;
+        for (int p = 0; p + 1 < n; p++) edges.add(new int[]{p, p + 1});
+        for (int p = 0; p + 3 < n; p += 3) edges.add(new int[]{p, p + 3});
+        edges.add(new int[]{n - 1, 0});
+        ProcessorGraph graph = graph(n, edges.toArray(int[][]::new));
+        int[] sources = Betweenness.sources(n, 0, 42);
+        double[] oneSlice = Betweenness.compute(graph, sources, sources.length, pool);
+        double[] slices = Betweenness.compute(graph, sources, 1, pool);
+        assertArrayEquals(oneSlice, slices, 1e-12);
+        assertArrayEquals(oneSlice, Betweenness.compute(graph, 0, 42, pool), 1e-12);
+    }
+}
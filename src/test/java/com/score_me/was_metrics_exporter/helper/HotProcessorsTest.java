@@ -0,0 +1,89 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HotProcessorsTest {
+
+    // root: a -> b twice, a -> out (output port); child: c -> d, c -> d2, and d -> in (input port) with a huge queue
+    private static final String STATUS = """
+            {"processGroupStatus": {"aggregateSnapshot": {
+              "processorStatusSnapshots": [
+                {"processorStatusSnapshot": {"id": "a", "name": "A", "activeThreadCount": 2, "tasksDurationNanos": 3000000000}},
+                {"processorStatusSnapshot": {"id": "b", "name": "B", "activeThreadCount": 0, "tasksDurationNanos": 1000000000}}
+              ],
+              "connectionStatusSnapshots": [
+                {"connectionStatusSnapshot": {"sourceId": "a", "destinationId": "b", "destinationName": "B", "flowFilesQueued": 40}},
+                {"connectionStatusSnapshot": {"sourceId": "a", "destinationId": "b", "destinationName": "B", "flowFilesQueued": 25}},
+                {"connectionStatusSnapshot": {"sourceId": "a", "destinationId": "out", "destinationName": "Out", "flowFilesQueued": 500}}
+              ],
+              "processGroupStatusSnapshots": [
+                {"processGroupStatusSnapshot": {
+                  "processorStatusSnapshots": [
+                    {"processorStatusSnapshot": {"id": "c", "name": "C", "activeThreadCount": 5, "tasksDurationNanos": 500000000}},
+                    {"processorStatusSnapshot": {"id": "d", "name": "D", "activeThreadCount": 1, "tasksDurationNanos": 8000000000}},
+                    {"processorStatusSnapshot": {"id": "d2", "name": "D2", "activeThreadCount": 0, "tasksDurationNanos": 0}}
+                  ],
+                  "connectionStatusSnapshots": [
+                    {"connectionStatusSnapshot": {"sourceId": "c", "destinationId": "d", "destinationName": "D", "flowFilesQueued": 50}},
+                    {"connectionStatusSnapshot": {"sourceId": "c", "destinationId": "d2", "destinationName": "D2", "flowFilesQueued": 7}},
+                    {"connectionStatusSnapshot": {"sourceId": "d", "destinationId": "in", "destinationName": "In", "flowFilesQueued": 900}}
+                  ]
+                }}
+              ]
+            }}}
+            """;
+
+    /**
+     * Method to feed every group snapshot of a recursive status response, as MethodHelper#computeActiveThreads walks it
+     */
+    private static HotProcessors feed(int k) throws Exception {
+        HotProcessors hot = new HotProcessors(k);
+        Deque<JsonNode> stack = new ArrayDeque<>();
+        stack.push(new ObjectMapper().readTree(STATUS).path("processGroupStatus").path("aggregateSnapshot"));
+        while (!stack.isEmpty()) {
+            JsonNode pg = stack.pop();
+            hot.group(pg);
+            for (JsonNode child : pg.path("processGroupStatusSnapshots")) {
+                stack.push(child.path("processGroupStatusSnapshot"));
+            }
+        }
+        return hot;
+    }
+
+    private static List<String> ids(TopK top) {
+        return top.top().stream().map(TopK.Entry::id).toList();
+    }
+
+    @Test
+    void ranksEveryValueAcrossChildGroups() throws Exception {
+        HotProcessors hot = feed(3);
+        // processors without threads or queued input are not ranked
+        assertEquals(List.of("c", "a", "d"), ids(hot.getThreads()));
+        assertEquals(List.of("d", "a", "b"), ids(hot.getTaskNanos()));
+        assertEquals(List.of(8e9, 3e9, 1e9), hot.getTaskNanos().top().stream().map(TopK.Entry::value).toList());
+        assertEquals(List.of("b", "d", "d2"), ids(hot.getQueued()));
+    }
+
+    @Test
+    void sumsQueuedInputExactlyAndLeavesOutPorts() throws Exception {
+        List<TopK.Entry> queued = feed(10).getQueued().top();
+        assertEquals(List.of(new TopK.Entry("b", "B", 65), new TopK.Entry("d", "D", 50), new TopK.Entry("d2", "D2", 7)), queued);
+    }
+
+    @Test
+    void keepsOnlyTheHighestK() throws Exception {
+        HotProcessors hot = feed(1);
+        assertEquals(List.of("c"), ids(hot.getThreads()));
+        assertEquals(List.of("d"), ids(hot.getTaskNanos()));
+        assertEquals(List.of("b"), ids(hot.getQueued()));
+        assertTrue(feed(0).getQueued().top().isEmpty());
+    }
+}
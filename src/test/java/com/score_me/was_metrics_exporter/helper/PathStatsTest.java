@@ -0,0 +1,111 @@
+package com.score_me.was_metrics_exporter.helper;
+
+import com.score_me.was_metrics_exporter.entities.ConnectionEntity;
+import com.score_me.was_metrics_exporter.entities.FlowSnapshot;
+import com.score_me.was_metrics_exporter.entities.ProcessGroupNodeEntity;
+import com.score_me.was_metrics_exporter.entities.ProcessorNodeEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathStatsTest {
+
+    /**
+     * A connection of the test flow, from and to a processor or a port placeholder
+     */
+    private record Edge(String source, String destination, int queued) {
+    }
+
+    private static Edge edge(String source, String destination, int queued) {
+        return new Edge(source, destination, queued);
+    }
+
+    /**
+     * Method to build the graph of a single process group; endpoints of connections that are not listed as processors
+     * become placeholders, as ports and funnels do
+     */
+    private static ProcessorGraph graph(List<String> processors, Edge... edges) {
+        FlowSnapshot snapshot = new FlowSnapshot("root");
+        snapshot.getProcessGroups().put("root", new ProcessGroupNodeEntity("root", "root"));
+        List<ProcessorNodeEntity> nodes = new ArrayList<>();
+        for (String id : processors) nodes.add(new ProcessorNodeEntity(id, id.toUpperCase(), "type"));
+        List<ConnectionEntity> connections = new ArrayList<>();
+        for (Edge e : edges) connections.add(new ConnectionEntity("c" + connections.size(), e.source(), e.destination(), e.queued()));
+        snapshot.getProcessorsByGroup().put("root", nodes);
+        snapshot.getConnectionsByGroup().put("root", connections);
+        return ProcessorGraph.of(snapshot, "root");
+    }
+
+    private static void assertStats(PathStats stats, int components, int cycles, int largestCycle, int longestPath, long queued) {
+        assertAll(
+                () -> assertEquals(components, stats.getComponents(), "components"),
+                () -> assertEquals(cycles, stats.getCycles(), "cycles"),
+                () -> assertEquals(largestCycle, stats.getLargestCycle(), "largest cycle"),
+                () -> assertEquals(longestPath, stats.getLongestPath(), "longest path"),
+                () -> assertEquals(queued, stats.getCriticalPathQueued(), "critical path queued"));
+    }
+
+    @Test
+    void measuresAnEmptyGraph() {
+        assertStats(PathStats.of(graph(List.of())), 0, 0, 0, 0, 0);
+    }
+
+    @Test
+    void measuresAChain() {
+        ProcessorGraph graph = graph(List.of("a", "b", "c", "d"), edge("a", "b", 1), edge("b", "c", 2), edge("c", "d", 3));
+        assertStats(PathStats.of(graph), 4, 0, 0, 4, 6);
+    }
+
+    @Test
+    void countsACycleAsOneStage() {
+        ProcessorGraph graph = graph(List.of("a", "b", "c", "d"),
+                edge("a", "b", 5), edge("b", "c", 5), edge("c", "a", 5), edge("c", "d", 2));
+        assertStats(PathStats.of(graph), 2, 1, 3, 2, 17);
+    }
+
+    @Test
+    void countsASelfLoopAsACycle() {
+        ProcessorGraph graph = graph(List.of("a", "b"), edge("a", "a", 4), edge("a", "b", 1));
+        assertStats(PathStats.of(graph), 2, 1, 1, 2, 5);
+    }
+
+    @Test
+    void leavesPortPlaceholdersOutOfStagesAndCycleSizes() {
+        // a -> port -> b, then b and c loop through a funnel
+        ProcessorGraph graph = graph(List.of("a", "b", "c"),
+                edge("a", "port", 3), edge("port", "b", 4), edge("b", "funnel", 1), edge("funnel", "c", 1), edge("c", "b", 1));
+        assertEquals(5, graph.size());
+        assertNull(graph.processor(3));
+        assertStats(PathStats.of(graph), 3, 1, 2, 2, 10);
+    }
+
+    @Test
+    void takesTheFullerOfParallelConnections() {
+        ProcessorGraph graph = graph(List.of("a", "b", "c"), edge("a", "b", 10), edge("a", "b", 3), edge("b", "c", 1));
+        assertEquals(3, graph.edgeCount());
+        assertStats(PathStats.of(graph), 3, 0, 0, 3, 11);
+    }
+
+    @Test
+    void countsTheQueuesOfACycleOnceOnTheCriticalPath() {
+        // the path enters the cycle at a and leaves it at b: its two connections are counted once each
+        ProcessorGraph graph = graph(List.of("x", "a", "b", "y"),
+                edge("x", "a", 1), edge("a", "b", 5), edge("b", "a", 6), edge("b", "y", 2));
+        assertStats(PathStats.of(graph), 3, 1, 2, 3, 14);
+    }
+
+    @Test
+    void replacesTheQueueCountsOfTheCrawl() {
+        ProcessorGraph graph = graph(List.of("a", "b", "c"), edge("a", "b", 10), edge("b", "c", 1), edge("a", "c", 2));
+        assertEquals(11, PathStats.of(graph).getCriticalPathQueued());
+        // connections missing from the status count as empty
+        ProcessorGraph live = graph.withQueued(Map.of("c1", 7, "c2", 30));
+        assertStats(PathStats.of(live), 3, 0, 0, 3, 30);
+        assertEquals(graph.fingerprint(), live.fingerprint());
+        assertEquals(11, PathStats.of(graph).getCriticalPathQueued());
+    }
+}
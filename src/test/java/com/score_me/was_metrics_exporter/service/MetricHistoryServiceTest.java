@@ -0,0 +1,80 @@
+package com.score_me.was_metrics_exporter.service;
+
+import com.score_me.was_metrics_exporter.utils.RollupTier;
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MetricHistoryServiceTest {
+
+    private static final long DAY_MS = 86_400_000L;
+    // an hour boundary, so the coarse buckets line up with the start of the samples
+    private static final long BASE = 1_700_002_800_000L;
+
+    /**
+     * Method to record one sample per second of metric 'm' for 'seconds' seconds from BASE
+     * @return the sample values, by second
+     */
+    private static double[] record(MetricHistoryService history, int seconds) {
+        double[] values = new double[seconds];
+        for (int s = 0; s < seconds; s++) {
+            values[s] = (s * 37) % 101 - 50;
+            history.record(BASE + s * 1000L, Map.of("m", values[s]));
+        }
+        return values;
+    }
+
+    private static RollupTier.Aggregate expected(double[] values, int fromSecond, int toSecond) {
+        RollupTier.Aggregate acc = RollupTier.Aggregate.EMPTY;
+        for (int s = Math.max(0, fromSecond); s <= toSecond && s < values.length; s++) acc = acc.plus(values[s]);
+        return acc;
+    }
+
+    private static void assertAggregate(RollupTier.Aggregate expected, RollupTier.Aggregate actual, String range) {
+        assertEquals(expected.count(), actual.count(), "count of " + range);
+        assertEquals(expected.sum(), actual.sum(), 1e-9, "sum of " + range);
+        assertEquals(expected.min(), actual.min(), "min of " + range);
+        assertEquals(expected.max(), actual.max(), "max of " + range);
+    }
+
+    @Test
+    void coversAnyRangeLikeTheRawSamples() {
+        MetricHistoryService history = new MetricHistoryService(DAY_MS, 600_000, "1000:10000,10000:1000,60000:200", "", 0);
+        double[] values = record(history, 7200);
+        Random random = new Random(42);
+        for (int i = 0; i < 500; i++) {
+            int from = random.nextInt(7400) - 100;
+            int to = from + random.nextInt(7400 - from);
+            String range = from + "s.." + to + "s";
+            assertAggregate(expected(values, from, to),
+                    history.aggregate("m", BASE + from * 1000L, BASE + to * 1000L + 999), range);
+        }
+        assertAggregate(expected(values, 0, 7199), history.aggregate("m", BASE, BASE + 7_200_000 - 1), "all");
+        assertAggregate(expected(values, 59, 60), history.aggregate("m", BASE + 59_000, BASE + 60_999), "minute edge");
+    }
+
+    @Test
+    void readsOldRangesFromCoarserTiers() {
+        // the finest tier holds the last minute only, the minute tier the whole hour
+        MetricHistoryService history = new MetricHistoryService(DAY_MS, 600_000, "1000:60,60000:100", "", 0);
+        double[] values = record(history, 3600);
+        assertAggregate(expected(values, 0, 3599), history.aggregate("m", BASE, BASE + 3_600_000 - 1), "hour");
+        assertAggregate(expected(values, 600, 1199), history.aggregate("m", BASE + 600_000, BASE + 1_200_000 - 1), "old minutes");
+        // edges within the last minute are still resolved to the second
+        assertAggregate(expected(values, 1200, 3580), history.aggregate("m", BASE + 1_200_000, BASE + 3_580_999), "recent edge");
+        assertEquals(RollupTier.Aggregate.EMPTY, history.aggregate("missing", BASE, BASE + 1000));
+    }
+
+    @Test
+    void rejectsInvalidTiers() {
+        for (String rollups : new String[]{"", "0:10", "-1000:10", "1000:0", "1000:3000000000", "1000", "1000:10:5",
+                "x:10", "1000:10,1500:10", "1000:10,1000:20", "10000:10,4000:10"}) {
+            assertThrows(IllegalArgumentException.class, () -> new MetricHistoryService(DAY_MS, 600_000, rollups, "", 0), rollups);
+        }
+        // tiers may be listed in any order
+        assertDoesNotThrow(() -> new MetricHistoryService(DAY_MS, 600_000, "60000:10, 1000:10,3600000:10", "", 0));
+    }
+}
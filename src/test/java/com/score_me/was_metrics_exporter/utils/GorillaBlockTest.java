@@ -0,0 +1,164 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GorillaBlockTest {
+
+    /**
+     * Method to append the samples to a new block and check they decode to the same bits, before and after sealing
+     */
+    private static GorillaBlock roundTrip(long[] timestamps, double[] values) {
+        GorillaBlock block = new GorillaBlock();
+        for (int i = 0; i < timestamps.length; i++) {
+            block.append(timestamps[i], values[i]);
+        }
+        assertDecodes(block, timestamps, values);
+        long size = block.sizeBytes();
+        block.seal();
+        assertTrue(block.isSealed());
+        assertEquals(size, block.sizeBytes());
+        assertDecodes(block, timestamps, values);
+        return block;
+    }
+
+    private static void assertDecodes(GorillaBlock block, long[] timestamps, double[] values) {
+        List<Long> decodedTimestamps = new ArrayList<>();
+        List<Double> decodedValues = new ArrayList<>();
+        block.decode(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> {
+            decodedTimestamps.add(t);
+            decodedValues.add(v);
+        });
+        assertEquals(timestamps.length, decodedTimestamps.size());
+        for (int i = 0; i < timestamps.length; i++) {
+            assertEquals(timestamps[i], decodedTimestamps.get(i), "timestamp " + i);
+            assertEquals(Double.doubleToRawLongBits(values[i]), Double.doubleToRawLongBits(decodedValues.get(i)),
+                    "value " + i + ": expected " + values[i] + " but was " + decodedValues.get(i));
+        }
+    }
+
+    private static long[] regular(int n) {
+        long[] timestamps = new long[n];
+        for (int i = 0; i < n; i++) timestamps[i] = 1_700_000_000_000L + i * 1000L;
+        return timestamps;
+    }
+
+    @Test
+    void roundTripsNaNAndSignedZeros() {
+        double[] values = {0.0, -0.0, 0.0, Double.NaN, Double.longBitsToDouble(0x7FF8_0000_0000_0001L), Double.NaN,
+                -0.0, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY, -0.0, Double.MIN_VALUE, -Double.MAX_VALUE};
+        roundTrip(regular(values.length), values);
+    }
+
+    @Test
+    void roundTripsXorOfAll64Bits() {
+        // 0x0000...0001 ^ 0x8000...0000 has meaningful bits from the first to the last, stored with a length of 0
+        double[] values = {Double.longBitsToDouble(1L), Double.longBitsToDouble(0x8000_0000_0000_0000L),
+                Double.longBitsToDouble(-1L), Double.longBitsToDouble(0x8000_0000_0000_0001L), 1.0};
+        roundTrip(regular(values.length), values);
+    }
+
+    @Test
+    void roundTripsLeadingZerosAbove31() {
+        // XORs of a few low bits have up to 63 leading zeros, more than the 5 bits of the leading zero count hold
+        double[] values = new double[70];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = Double.longBitsToDouble(0x4000_0000_0000_0000L | (1L << (i % 40)) | (i & 1));
+        }
+        roundTrip(regular(values.length), values);
+    }
+
+    @Test
+    void roundTripsXorsReusingThePreviousWindow() {
+        // the first XOR sets a wide window; the following ones fit inside it and are written without control values
+        double[] values = {0.0, Double.longBitsToDouble(0x00FF_FFFF_FFFF_FF00L), Double.longBitsToDouble(0x0010_0000_0000_0100L),
+                Double.longBitsToDouble(0x0000_0F00_0000_0000L), Double.longBitsToDouble(0x0000_0F00_0000_0000L),
+                Double.longBitsToDouble(0x00F0_0000_0000_0100L), Double.longBitsToDouble(0x7FF0_0000_0000_0001L),
+                Double.longBitsToDouble(0x7FF0_0000_0000_0003L)};
+        roundTrip(regular(values.length), values);
+
+        GorillaBlock block = new GorillaBlock();
+        block.append(0, values[0]);
+        block.append(1000, values[1]);
+        long bytesAfterWindow = block.sizeBytes();
+        for (int i = 0; i < 8; i++) block.append(2000 + i * 1000L, i % 2 == 0 ? values[2] : values[1]);
+        // a reused window costs 2 control bits and its 48 bits, plus 1 bit of delta-of-delta; a new one 13 bits more
+        assertTrue(block.sizeBytes() - bytesAfterWindow <= (8 * 51 + 7) / 8 + 1);
+    }
+
+    @Test
+    void roundTripsDeltaOfDeltaBucketEdges() {
+        long[] dods = {0, -1, 1, -64, 63, -65, 64, -256, 255, -257, 256, -2048, 2047, -2049, 2048,
+                Integer.MAX_VALUE / 2, Integer.MIN_VALUE / 2};
+        List<Long> timestamps = new ArrayList<>();
+        long timestamp = 1_700_000_000_000L;
+        long delta = 1_100_000_000L;
+        timestamps.add(timestamp);
+        timestamp += delta;
+        timestamps.add(timestamp);
+        for (long dod : dods) {
+            delta += dod;
+            timestamp += delta;
+            timestamps.add(timestamp);
+            // back to the base interval, so every delta stays positive
+            delta = 1_100_000_000L;
+            timestamp += delta;
+            timestamps.add(timestamp);
+        }
+        long[] ts = timestamps.stream().mapToLong(Long::longValue).toArray();
+        double[] values = new double[ts.length];
+        for (int i = 0; i < values.length; i++) values[i] = i * 0.5;
+        roundTrip(ts, values);
+    }
+
+    @Test
+    void roundTripsLargestDeltaOfDelta() {
+        long[] ts = {0L, 0L, Integer.MAX_VALUE, Integer.MAX_VALUE, 0L + Integer.MAX_VALUE + Integer.MAX_VALUE};
+        roundTrip(ts, new double[]{1, 2, 3, 4, 5});
+    }
+
+    @Test
+    void decodesOnlyTheRequestedRange() {
+        long[] ts = regular(100);
+        double[] values = new double[ts.length];
+        for (int i = 0; i < values.length; i++) values[i] = Math.sin(i);
+        GorillaBlock block = roundTrip(ts, values);
+
+        List<Long> decoded = new ArrayList<>();
+        block.decode(ts[10], ts[20], (t, v) -> decoded.add(t));
+        assertEquals(11, decoded.size());
+        assertEquals(ts[10], decoded.getFirst());
+        assertEquals(ts[20], decoded.getLast());
+
+        decoded.clear();
+        block.decode(ts[99] + 1, Long.MAX_VALUE, (t, v) -> decoded.add(t));
+        assertTrue(decoded.isEmpty());
+    }
+
+    @Test
+    void rejectsAppendsAfterSealAndDecreasingTimestamps() {
+        GorillaBlock block = new GorillaBlock();
+        block.append(1000, 1.0);
+        assertThrows(IllegalArgumentException.class, () -> block.append(999, 1.0));
+        block.seal();
+        assertThrows(IllegalStateException.class, () -> block.append(2000, 1.0));
+    }
+
+    @Test
+    void sealsAnEmptyBlockAndBlocksEndingOnAWordBoundary() {
+        GorillaBlock empty = new GorillaBlock();
+        empty.seal();
+        empty.decode(Long.MIN_VALUE, Long.MAX_VALUE, (t, v) -> fail("empty block decoded a sample"));
+
+        // the first sample takes exactly two words; identical samples then add 2 bits each
+        for (int n = 1; n <= 70; n++) {
+            long[] ts = regular(n);
+            double[] values = new double[n];
+            roundTrip(ts, values);
+        }
+    }
+}
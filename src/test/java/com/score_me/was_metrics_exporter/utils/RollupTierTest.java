@@ -0,0 +1,76 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollupTierTest {
+
+    private static List<Long> starts(RollupTier tier, long from, long to) {
+        List<Long> starts = new ArrayList<>();
+        tier.forEach(from, to, (start, a) -> starts.add(start));
+        return starts;
+    }
+
+    @Test
+    void aggregatesTheSamplesOfABucket() {
+        RollupTier tier = new RollupTier(1000, 4);
+        tier.add(0, 3.0);
+        tier.add(500, -1.0);
+        tier.add(999, 4.0);
+        tier.add(1000, 10.0);
+        assertEquals(new RollupTier.Aggregate(-1.0, 4.0, 6.0, 3), tier.aggregate(0, 0));
+        assertEquals(2.0, tier.aggregate(0, 0).avg());
+        assertEquals(new RollupTier.Aggregate(-1.0, 10.0, 16.0, 4), tier.aggregate(0, 1000));
+        assertEquals(List.of(0L, 1000L), starts(tier, 0, 3000));
+    }
+
+    @Test
+    void reusesBucketsOnceTheRingWraps() {
+        RollupTier tier = new RollupTier(1000, 4);
+        for (int s = 0; s < 8; s++) tier.add(s * 1000L + 1, s);
+        assertEquals(List.of(4000L, 5000L, 6000L, 7000L), starts(tier, 0, 7999));
+        assertEquals(RollupTier.Aggregate.EMPTY, tier.aggregate(0, 3000));
+        // a sample of a bucket that rolled out of the ring does not overwrite the newer bucket in its slot
+        tier.add(1500, 100.0);
+        assertEquals(new RollupTier.Aggregate(5.0, 5.0, 5.0, 1), tier.aggregate(5000, 5000));
+        // a later bucket replaces the oldest one
+        tier.add(8000, 8.0);
+        assertEquals(List.of(5000L, 6000L, 7000L, 8000L), starts(tier, 0, 8999));
+        assertEquals(new RollupTier.Aggregate(8.0, 8.0, 8.0, 1), tier.aggregate(8000, 8000));
+    }
+
+    @Test
+    void visitsAtMostCapacityBucketsOfAnyRange() {
+        RollupTier tier = new RollupTier(1000, 4);
+        for (int s = 0; s < 4; s++) tier.add(s * 1000L, s);
+        assertEquals(List.of(0L, 1000L, 2000L, 3000L), starts(tier, Long.MIN_VALUE, 3000));
+        assertEquals(List.of(2000L, 3000L), starts(tier, 2000, 3999));
+        assertTrue(starts(tier, Long.MIN_VALUE, Long.MAX_VALUE).isEmpty());
+        assertTrue(starts(tier, 3000, 2000).isEmpty());
+    }
+
+    @Test
+    void floorsNegativeTimestamps() {
+        RollupTier tier = new RollupTier(1000, 4);
+        tier.add(-1, 1.0);
+        tier.add(-1000, 2.0);
+        tier.add(0, 3.0);
+        assertEquals(-1000, tier.bucketStart(-1));
+        assertEquals(new RollupTier.Aggregate(1.0, 2.0, 3.0, 2), tier.aggregate(-1000, -1000));
+        assertEquals(List.of(-1000L, 0L), starts(tier, -5000, 0));
+    }
+
+    @Test
+    void mergesAggregates() {
+        assertTrue(Double.isNaN(RollupTier.Aggregate.EMPTY.avg()));
+        RollupTier.Aggregate a = RollupTier.Aggregate.EMPTY.plus(2.0).plus(-3.0);
+        assertEquals(new RollupTier.Aggregate(-3.0, 2.0, -1.0, 2), a);
+        assertSame(a, a.merge(RollupTier.Aggregate.EMPTY));
+        assertSame(a, RollupTier.Aggregate.EMPTY.merge(a));
+        assertEquals(4000L * 1000, new RollupTier(1000, 4000).getRetentionMs());
+    }
+}
@@ -0,0 +1,183 @@
+package com.score_me.was_metrics_exporter.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SampleRingFileTest {
+
+    // layout of the file, see SampleRingFile
+    private static final int COMMIT_OFFSET = 32;
+    private static final int RECORDS_OFFSET = 8192;
+    private static final int RECORD_BYTES = 32;
+
+    @TempDir
+    Path dir;
+
+    private record Sample(String metric, long timestamp, double value) {
+    }
+
+    private static List<Sample> replay(SampleRingFile ring) {
+        List<Sample> samples = new ArrayList<>();
+        ring.replay((metric, timestamp, value) -> samples.add(new Sample(metric, timestamp, value)));
+        return samples;
+    }
+
+    private static List<Sample> samples(int from, int to) {
+        List<Sample> samples = new ArrayList<>();
+        for (int i = from; i < to; i++) samples.add(new Sample(i % 2 == 0 ? "heap" : "cpu", 1000L * i, i * 1.5));
+        return samples;
+    }
+
+    private static void append(SampleRingFile ring, List<Sample> samples) {
+        for (Sample s : samples) assertTrue(ring.append(s.metric(), s.timestamp(), s.value()));
+    }
+
+    /**
+     * Method to overwrite a long of a closed ring file, as a crash in the middle of a write would leave it
+     */
+    private static void putLong(Path file, long position, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            ByteBuffer bytes = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).putLong(0, value);
+            channel.write(bytes, position);
+        }
+    }
+
+    @Test
+    void replaysSamplesAfterReopening() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 16)) {
+            append(ring, samples(0, 10));
+            assertEquals(samples(0, 10), replay(ring));
+        }
+        try (SampleRingFile ring = SampleRingFile.open(file, 16)) {
+            assertEquals(10, ring.size());
+            assertEquals(List.of("heap", "cpu"), ring.getNames());
+            assertEquals(samples(0, 10), replay(ring));
+        }
+    }
+
+    @Test
+    void keepsTheLatestSamplesWhenItWraps() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            append(ring, samples(0, 21));
+            assertEquals(8, ring.size());
+            assertEquals(samples(13, 21), replay(ring));
+        }
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            assertEquals(samples(13, 21), replay(ring));
+            append(ring, samples(21, 24));
+            assertEquals(samples(16, 24), replay(ring));
+        }
+    }
+
+    @Test
+    void startsANewRingWhenTheCapacityChanges() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            append(ring, samples(0, 5));
+        }
+        try (SampleRingFile ring = SampleRingFile.open(file, 16)) {
+            assertEquals(0, ring.size());
+            assertTrue(replay(ring).isEmpty());
+        }
+    }
+
+    @Test
+    void skipsACommittedRecordWithAClearedSequence() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            append(ring, samples(0, 6));
+        }
+        putLong(file, RECORDS_OFFSET + 3 * RECORD_BYTES, 0L);
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            List<Sample> expected = new ArrayList<>(samples(0, 6));
+            expected.remove(3);
+            assertEquals(expected, replay(ring));
+        }
+    }
+
+    @Test
+    void stopsAtATornRecordAfterTheLastCommit() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            append(ring, samples(0, 6));
+        }
+        // as if only the first two records had been committed and the third was torn by a crash
+        putLong(file, COMMIT_OFFSET, 2L);
+        putLong(file, COMMIT_OFFSET + 8, Long.rotateLeft(2L, 17) ^ 0x5DEECE66DL);
+        putLong(file, COMMIT_OFFSET + 16, 0L);
+        putLong(file, RECORDS_OFFSET + 2 * RECORD_BYTES, 0L);
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            assertEquals(samples(0, 2), replay(ring));
+            // the next record overwrites the torn one
+            append(ring, samples(2, 3));
+            assertEquals(samples(0, 3), replay(ring));
+        }
+    }
+
+    @Test
+    void recoversFromEitherCommitSlotBeingTorn() throws IOException {
+        for (int slot = 0; slot < 2; slot++) {
+            Path file = dir.resolve("ring" + slot);
+            try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+                append(ring, samples(0, 5));
+                ring.commit();
+                // wraps, but less than a full ring after the commit
+                append(ring, samples(5, 11));
+            }
+            // a check word that does not match its count invalidates the slot
+            putLong(file, COMMIT_OFFSET + slot * 16 + 8, 42L);
+            try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+                assertEquals(samples(3, 11), replay(ring), "slot " + slot);
+            }
+        }
+    }
+
+    @Test
+    void scansFromTheStartWithoutAValidCommitSlot() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            append(ring, samples(0, 4));
+        }
+        putLong(file, COMMIT_OFFSET + 8, 7L);
+        putLong(file, COMMIT_OFFSET + 24, 7L);
+        try (SampleRingFile ring = SampleRingFile.open(file, 8)) {
+            assertEquals(samples(0, 4), replay(ring));
+        }
+    }
+
+    @Test
+    void refusesMetricsOnceTheNameTableIsFull() throws IOException {
+        Path file = dir.resolve("ring");
+        try (SampleRingFile ring = SampleRingFile.open(file, 256)) {
+            // a name that does not fit its entry takes no entry
+            assertFalse(ring.append("x".repeat(48), 0, 0));
+            for (int i = 0; i < 128; i++) {
+                assertTrue(ring.append("metric" + i, i, i));
+            }
+            assertFalse(ring.append("metric128", 128, 128));
+            assertTrue(ring.append("metric0", 130, 130));
+            assertEquals(129, replay(ring).size());
+        }
+        try (SampleRingFile ring = SampleRingFile.open(file, 256)) {
+            assertEquals(128, ring.getNames().size());
+            assertEquals("metric127", ring.getNames().get(127));
+            List<Sample> samples = replay(ring);
+            assertEquals(129, samples.size());
+            assertEquals(new Sample("metric0", 130, 130), samples.getLast());
+            assertFalse(ring.append("metric128", 131, 131));
+        }
+    }
+}